@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2016-2020 David Rubio Escares / Kodehawa
+ *
+ *  Mantaro is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  Mantaro is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro.  If not, see http://www.gnu.org/licenses/
+ */
+
+package net.kodehawa.mantarobot.core.command.argument.split;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Compares the old split (regex split, then a substring per token and per remainder) with the current one.
+ * Run with {@code ./gradlew jmh}, allocations per parse show up as gc.alloc.rate.norm.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StringSplitterBenchmark {
+    private static final Pattern PATTERN = Pattern.compile("\\s+");
+    private final StringSplitter splitter = new StringSplitter();
+
+    //Short command, a few arguments, and something like a custom command body.
+    @Param({"8", "64", "1024"})
+    public int tokens;
+
+    private String content;
+
+    @Setup
+    public void setup() {
+        var builder = new StringBuilder();
+        for (int i = 0; i < tokens; i++) {
+            builder.append(i % 3 == 0 ? "word" : "$(event.author)").append(i % 5 == 0 ? "  " : " ");
+        }
+
+        content = builder.toString();
+    }
+
+    //Split only: what every command pays, even if it only reads a couple of arguments.
+    @Benchmark
+    public void legacySplit(Blackhole blackhole) {
+        blackhole.consume(legacy(content));
+    }
+
+    @Benchmark
+    public void split(Blackhole blackhole) {
+        blackhole.consume(splitter.split(content));
+    }
+
+    //Split and read the first argument, the common case for commands.
+    @Benchmark
+    public void legacySplitFirst(Blackhole blackhole) {
+        blackhole.consume(legacy(content)[0].getValue());
+    }
+
+    @Benchmark
+    public void splitFirst(Blackhole blackhole) {
+        blackhole.consume(splitter.split(content)[0].getValue());
+    }
+
+    //How StringSplitter#split used to work.
+    private static SplitString[] legacy(String string) {
+        String[] values = PATTERN.split(string);
+        int remove = values.length > 0 && values[0].isEmpty() ? 1 : 0;
+        SplitString[] strings = new SplitString[values.length - remove];
+        String lookup = string;
+        int consumed = 0;
+        for (int i = remove; i < values.length; i++) {
+            String value = values[i];
+            int startIdx = lookup.indexOf(value);
+            String whitespace = lookup.substring(0, startIdx);
+            strings[i - remove] = new SplitString(string, consumed, consumed + whitespace.length(), consumed + whitespace.length() + value.length());
+            //The old SplitString held the copies, so make them like it used to.
+            strings[i - remove].getValue();
+            lookup = lookup.substring(startIdx + value.length());
+            consumed += startIdx + value.length();
+        }
+
+        return strings;
+    }
+}
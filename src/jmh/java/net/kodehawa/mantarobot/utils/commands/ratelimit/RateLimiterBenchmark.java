@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2016-2020 David Rubio Escares / Kodehawa
+ *
+ *  Mantaro is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  Mantaro is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro.  If not, see http://www.gnu.org/licenses/
+ */
+
+package net.kodehawa.mantarobot.utils.commands.ratelimit;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Compares the old limiter (a counter per key, plus a scheduled decrement for every call that went through)
+ * with the current one. Run with {@code ./gradlew jmh}, allocations per call show up as gc.alloc.rate.norm.
+ * <br>With a max of 1 nearly every call is rejected, with a huge one every call goes through.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RateLimiterBenchmark {
+    private static final int KEYS = 65536;
+
+    @Param({"1", "1000000000"})
+    public int max;
+
+    private String[] keys;
+    private RateLimiter limiter;
+    private LegacyRateLimiter legacy;
+
+    @Setup
+    public void setup() {
+        keys = new String[KEYS];
+        for (int i = 0; i < KEYS; i++) {
+            keys[i] = String.valueOf(100000000000000000L + i);
+        }
+
+        limiter = new RateLimiter(TimeUnit.SECONDS, max, 5);
+        legacy = new LegacyRateLimiter(max, TimeUnit.SECONDS.toMillis(5));
+    }
+
+    @TearDown
+    public void tearDown() {
+        legacy.ses.shutdownNow();
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+
+        String key(String[] keys) {
+            return keys[next++ & (KEYS - 1)];
+        }
+    }
+
+    @Benchmark
+    @Threads(4)
+    public boolean legacyProcess(Cursor cursor) {
+        return legacy.process(cursor.key(keys));
+    }
+
+    @Benchmark
+    @Threads(4)
+    public boolean process(Cursor cursor) {
+        return limiter.process(cursor.key(keys));
+    }
+
+    //How RateLimiter#process used to work, minus the premium check.
+    private static class LegacyRateLimiter {
+        private final ScheduledExecutorService ses = Executors.newScheduledThreadPool(1);
+        private final ConcurrentHashMap<String, Pair> usersRateLimited = new ConcurrentHashMap<>();
+        private final long max;
+        private final long timeout;
+
+        private LegacyRateLimiter(long max, long timeout) {
+            this.max = max;
+            this.timeout = timeout;
+        }
+
+        private boolean process(String key) {
+            Pair p = usersRateLimited.get(key);
+            if (p == null) {
+                usersRateLimited.put(key, p = new Pair());
+            }
+
+            AtomicInteger a = p.first;
+            if (a.get() >= max) return false;
+
+            a.incrementAndGet();
+            long now = System.currentTimeMillis();
+            Long tryAgain = p.second;
+            if (tryAgain == null || tryAgain < now) {
+                p.second = now + timeout;
+            }
+
+            ses.schedule(a::decrementAndGet, timeout, TimeUnit.MILLISECONDS);
+            return true;
+        }
+    }
+
+    private static class Pair {
+        final AtomicInteger first = new AtomicInteger();
+        Long second;
+    }
+}
@@ -55,6 +55,7 @@ import java.net.URI;
 import java.time.Duration;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Random;
 import java.util.concurrent.Executors;
@@ -149,6 +150,11 @@ public class MantaroBot {
         // Choose the server with the lowest player amount
         lavaLink.getLoadBalancer().addPenalty(LavalinkLoadBalancer.Penalties::getPlayerPenalty);
 
+        // Before anything can run a query that needs them. Only slow the first time, while they're being built.
+        log.info("Checking database indexes...");
+        MantaroData.db().ensureIndexes();
+        log.info("Database indexes are ready");
+
         core = new MantaroCore(config, ExtraRuntimeOptions.DEBUG);
 
         audioManager = new MantaroAudioManager();
@@ -208,7 +214,17 @@ public class MantaroBot {
                 players.getValue().getLavaLink().destroy();
             }
 
-            log.info("Destroyed all players. Not aware of anything holding off shutdown now");
+            log.info("Destroyed all players. Waiting for guild tasks to finish...");
+            //Anything they save still has to make it to the flush below.
+            if (!core.getGuildExecutor().shutdown(10, TimeUnit.SECONDS)) {
+                log.warn("Guild tasks didn't finish in time, flushing anyway");
+            }
+
+            log.info("Flushing chat experience and queued database writes...");
+            core.getExperienceAccumulator().flush();
+            MantaroData.db().flush();
+
+            log.info("Flushed queued writes. Not aware of anything holding off shutdown now");
         }));
     }
 
@@ -321,31 +337,41 @@ public class MantaroBot {
     }
 
     private void postStats(ShardManager manager) {
+        //All shards go in a single write.
+        var stats = new HashMap<String, String>();
         for(var jda : manager.getShardCache()) {
+            //Only skip the shard that's not up, the rest still get written.
             if (jda.getStatus() == JDA.Status.INITIALIZED || jda.getStatus() == JDA.Status.SHUTDOWN) {
-                return;
+                continue;
             }
 
-            try(var jedis = MantaroData.getDefaultJedisPool().getResource()) {
-                var json = new JSONObject()
-                        .put("guild_count", jda.getGuildCache().size())
-                        .put("cached_users", jda.getUserCache().size())
-                        .put("gateway_ping", jda.getGatewayPing())
-                        .put("shard_status", jda.getStatus())
-                        .put("last_ping_diff",
-                                ((MantaroEventManager) jda.getEventManager()).lastJDAEventDiff()
-                        )
-                        .put("node_number", MantaroBot.getInstance().getNodeNumber())
-                        .toString();
-
-                jedis.hset("shardstats-" + config.getClientId(),
-                        String.valueOf(jda.getShardInfo().getShardId()), json
-                );
-
-                log.debug("Sent process shard stats to Redis (Global) [Running Shards: {}] -> {}",
-                        manager.getShardsRunning(), json
-                );
-            }
+            var json = new JSONObject()
+                    .put("guild_count", jda.getGuildCache().size())
+                    .put("cached_users", jda.getUserCache().size())
+                    .put("gateway_ping", jda.getGatewayPing())
+                    .put("shard_status", jda.getStatus())
+                    .put("last_ping_diff",
+                            ((MantaroEventManager) jda.getEventManager()).lastJDAEventDiff()
+                    )
+                    .put("node_number", MantaroBot.getInstance().getNodeNumber())
+                    .toString();
+
+            stats.put(String.valueOf(jda.getShardInfo().getShardId()), json);
+        }
+
+        //HSET needs at least one field.
+        if (stats.isEmpty()) {
+            return;
+        }
+
+        try {
+            MantaroData.redis().hset("shard_stats_write", "shardstats-" + config.getClientId(), stats);
+            log.debug("Sent process shard stats to Redis (Global) [Running Shards: {}] -> {}",
+                    manager.getShardsRunning(), stats
+            );
+        } catch (Exception e) {
+            //Don't let this kill the schedule.
+            log.warn("Couldn't send shard stats to Redis", e);
         }
     }
 
@@ -66,7 +66,7 @@ public class CurrencyActionCmds {
                     .maxCooldown(5, TimeUnit.MINUTES)
                     .incrementDivider(10)
                     .premiumAware(true)
-                    .pool(MantaroData.getDefaultJedisPool())
+                    .redis(MantaroData.redis())
                     .prefix("mine")
                     .build();
 
@@ -322,7 +322,7 @@ public class CurrencyActionCmds {
                 .cooldown(4, TimeUnit.MINUTES)
                 .maxCooldown(4, TimeUnit.MINUTES)
                 .incrementDivider(10)
-                .pool(MantaroData.getDefaultJedisPool())
+                .redis(MantaroData.redis())
                 .prefix("fish")
                 .premiumAware(true)
                 .build();
@@ -601,7 +601,7 @@ public class CurrencyActionCmds {
                 .maxCooldown(4, TimeUnit.MINUTES)
                 .incrementDivider(10)
                 .premiumAware(true)
-                .pool(MantaroData.getDefaultJedisPool())
+                .redis(MantaroData.redis())
                 .prefix("chop")
                 .build();
 
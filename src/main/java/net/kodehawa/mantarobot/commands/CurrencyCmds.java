@@ -282,7 +282,7 @@ public class CurrencyCmds {
                 .cooldown(24, TimeUnit.HOURS)
                 .maxCooldown(24, TimeUnit.HOURS)
                 .randomIncrement(false)
-                .pool(MantaroData.getDefaultJedisPool())
+                .redis(MantaroData.redis())
                 .prefix("dailycrate")
                 .build();
 
@@ -42,8 +42,8 @@ import net.kodehawa.mantarobot.core.modules.commands.i18n.I18nContext;
 import net.kodehawa.mantarobot.data.MantaroData;
 import net.kodehawa.mantarobot.db.ManagedDatabase;
 import net.kodehawa.mantarobot.db.entities.CustomCommand;
+import net.kodehawa.mantarobot.db.entities.GuildCommandGate;
 import net.kodehawa.mantarobot.db.entities.helpers.CustomCommandData;
-import net.kodehawa.mantarobot.db.entities.helpers.GuildData;
 import net.kodehawa.mantarobot.utils.DiscordUtils;
 import net.kodehawa.mantarobot.utils.RatelimitUtils;
 import net.kodehawa.mantarobot.utils.StringUtils;
@@ -77,25 +77,21 @@ public class CustomCmds {
 
     public static void handle(String prefix, String cmdName, Context ctx, String args) {
         CustomCommand customCommand = getCustomCommand(ctx.getGuild().getId(), cmdName);
-        GuildData guildData = ctx.getDBGuild().getData();
-
         if (customCommand == null) {
             return;
         }
 
         //CCS disable check start.
-        if (guildData.getDisabledCommands().contains(cmdName)) {
+        GuildCommandGate gate = ctx.getEntitySession().getGuildCommandGate(ctx.getGuild().getId());
+        if (gate.isCommandDisabled(cmdName)) {
             return;
         }
 
-        List<String> channelDisabledCommands = guildData.getChannelSpecificDisabledCommands().get(ctx.getChannel().getId());
-        if (channelDisabledCommands != null && channelDisabledCommands.contains(cmdName)) {
+        if (gate.isCommandDisabledIn(ctx.getChannel().getId(), cmdName)) {
             return;
         }
 
-        HashMap<String, List<String>> roleSpecificDisabledCommands = guildData.getRoleSpecificDisabledCommands();
-        if (ctx.getMember().getRoles().stream().anyMatch(r -> roleSpecificDisabledCommands.computeIfAbsent(r.getId(),
-                s -> new ArrayList<>()).contains(cmdName)) && !CommandPermission.ADMIN.test(ctx.getMember())) {
+        if (gate.isCommandDisabledFor(ctx.getMember(), cmdName) && !CommandPermission.ADMIN.test(ctx.getMember())) {
             return;
         }
         //CCS disable check end.
@@ -169,7 +165,7 @@ public class CustomCmds {
                 .cooldown(4, TimeUnit.SECONDS)
                 .cooldownPenaltyIncrease(4, TimeUnit.SECONDS)
                 .maxCooldown(2, TimeUnit.MINUTES)
-                .pool(MantaroData.getDefaultJedisPool())
+                .redis(MantaroData.redis())
                 .prefix("custom")
                 .build();
 
@@ -459,7 +455,7 @@ public class CustomCmds {
                         .collect(Collectors.toMap(ISnowflake::getId, g -> g));
 
                 List<Pair<Guild, CustomCommand>> filtered = db
-                        .getCustomCommandsByName(("*" + content + "*").replace("*", any)).stream()
+                        .getCustomCommandsByName(mapped.keySet(), ("*" + content + "*").replace("*", any)).stream()
                         .map(customCommand -> {
                             Guild guild = mapped.get(customCommand.getGuildId());
                             return guild == null ? null : Pair.of(guild, customCommand);
@@ -880,7 +876,7 @@ public class CustomCmds {
                     custom.getValues().addAll(c.getValues());
                 } else {
                     // Are the first two checks redundant?
-                    if (!ctx.getConfig().isPremiumBot() && !ctx.getDBGuild().isPremium() && db.getCustomCommands(ctx.getGuild()).size() > 100) {
+                    if (!ctx.getConfig().isPremiumBot() && !ctx.getDBGuild().isPremium() && db.getCustomCommandCount(ctx.getGuild()) > 100) {
                         ctx.sendLocalized("commands.custom.add.too_many_commands", EmoteReference.ERROR);
                         return;
                     }
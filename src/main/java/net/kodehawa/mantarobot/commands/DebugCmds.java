@@ -42,7 +42,6 @@ import net.kodehawa.mantarobot.utils.commands.EmoteReference;
 import net.kodehawa.mantarobot.utils.commands.ratelimit.IncreasingRateLimiter;
 import org.json.JSONException;
 import org.json.JSONObject;
-import redis.clients.jedis.Jedis;
 
 import java.io.IOException;
 import java.util.Comparator;
@@ -72,30 +71,36 @@ public class DebugCmds {
                 var totalCommandCount = 0L;
 
                 String nodeData;
-                try (Jedis jedis = ctx.getJedisPool().getResource()) {
-                    nodeData = jedis.hget("node-stats-" + config.getClientId(), "node-" + bot.getNodeNumber());
-                }
+                //Both hashes in a single round-trip, this node's stats are in the node one.
+                var statsKey = "shardstats-" + config.getClientId();
+                var nodesKey = "node-stats-" + config.getClientId();
+                var replies = ctx.getRedis().pipelined("stats_read", pipeline -> {
+                    pipeline.hgetAll(statsKey);
+                    pipeline.hgetAll(nodesKey);
+                });
 
-                try(Jedis jedis = ctx.getJedisPool().getResource()) {
-                    var stats = jedis.hgetAll("shardstats-" + config.getClientId());
-                    for (var shards : stats.entrySet()) {
-                        var json = new JSONObject(shards.getValue());
-                        guilds += json.getLong("guild_count");
-                        users += json.getLong("cached_users");
-                    }
+                @SuppressWarnings("unchecked")
+                var stats = (Map<String, String>) replies.get(0);
+                @SuppressWarnings("unchecked")
+                var clusters = (Map<String, String>) replies.get(1);
+                nodeData = clusters.get("node-" + bot.getNodeNumber());
 
-                    var clusters = jedis.hgetAll("node-stats-" + config.getClientId());
-                    for (var cluster : clusters.entrySet()) {
-                        var json = new JSONObject(cluster.getValue());
-                        totalMemory += json.getLong("used_memory");
-                        queueSize += json.getLong("queue_size");
-                        totalThreadCount += json.getLong("thread_count");
-                        totalCommandCount += json.getLong("commands_ran");
-                    }
+                for (var shards : stats.entrySet()) {
+                    var json = new JSONObject(shards.getValue());
+                    guilds += json.getLong("guild_count");
+                    users += json.getLong("cached_users");
+                }
 
-                    clusterTotal = clusters.size();
+                for (var cluster : clusters.entrySet()) {
+                    var json = new JSONObject(cluster.getValue());
+                    totalMemory += json.getLong("used_memory");
+                    queueSize += json.getLong("queue_size");
+                    totalThreadCount += json.getLong("thread_count");
+                    totalCommandCount += json.getLong("commands_ran");
                 }
 
+                clusterTotal = clusters.size();
+
                 // We don't need to account for node stats delay here
                 if (config.isPremiumBot()) {
                     queueSize = ctx.getBot().getAudioManager().getTotalQueueSize();
@@ -167,10 +172,7 @@ public class DebugCmds {
         cr.register("shard", new SimpleCommand(CommandCategory.INFO) {
             @Override
             protected void call(Context ctx, String content, String[] args) {
-                long nodeAmount;
-                try(Jedis jedis = MantaroData.getDefaultJedisPool().getResource()) {
-                    nodeAmount = jedis.hlen("node-stats-" + ctx.getConfig().getClientId());
-                }
+                long nodeAmount = ctx.getRedis().call("node_stats_count", jedis -> jedis.hlen("node-stats-" + ctx.getConfig().getClientId()));
 
                 final var jda = ctx.getJDA();
                 final var guildCache = jda.getGuildCache();
@@ -201,7 +203,7 @@ public class DebugCmds {
                 .cooldown(2, TimeUnit.SECONDS)
                 .maxCooldown(30, TimeUnit.SECONDS)
                 .randomIncrement(true)
-                .pool(MantaroData.getDefaultJedisPool())
+                .redis(MantaroData.redis())
                 .prefix("ping")
                 .build();
 
@@ -239,11 +241,7 @@ public class DebugCmds {
             @Override
             protected void call(Context ctx, String content, String[] args) {
                 StringBuilder builder = new StringBuilder();
-                Map<String, String> stats;
-
-                try(Jedis jedis = ctx.getJedisPool().getResource()) {
-                    stats = jedis.hgetAll("shardstats-" + ctx.getConfig().getClientId());
-                }
+                Map<String, String> stats = ctx.getRedis().hgetAll("shard_stats_read", "shardstats-" + ctx.getConfig().getClientId());
 
                 //id, shard_status, cached_users, guild_count, last_ping_diff, gateway_ping
                 stats.entrySet().stream().sorted(
@@ -132,7 +132,7 @@ public class FunCmds {
                 .cooldown(4, TimeUnit.SECONDS)
                 .maxCooldown(1, TimeUnit.MINUTES)
                 .randomIncrement(true)
-                .pool(MantaroData.getDefaultJedisPool())
+                .redis(MantaroData.redis())
                 .prefix("roll")
                 .build();
 
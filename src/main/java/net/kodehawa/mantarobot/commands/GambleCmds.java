@@ -65,7 +65,7 @@ public class GambleCmds {
                     .cooldown(2, TimeUnit.MINUTES)
                     .cooldownPenaltyIncrease(5, TimeUnit.SECONDS)
                     .maxCooldown(10, TimeUnit.MINUTES)
-                    .pool(MantaroData.getDefaultJedisPool())
+                    .redis(MantaroData.redis())
                     .prefix("gamble")
                     .premiumAware(true)
                     .build();
@@ -180,7 +180,7 @@ public class GambleCmds {
                 .cooldown(1, TimeUnit.MINUTES)
                 .cooldownPenaltyIncrease(5, TimeUnit.SECONDS)
                 .maxCooldown(5, TimeUnit.MINUTES)
-                .pool(MantaroData.getDefaultJedisPool())
+                .redis(MantaroData.redis())
                 .premiumAware(true)
                 .prefix("slots")
                 .build();
@@ -58,7 +58,7 @@ public class GameCmds {
                 .cooldown(7, TimeUnit.SECONDS)
                 .cooldownPenaltyIncrease(5, TimeUnit.SECONDS)
                 .maxCooldown(10, TimeUnit.MINUTES)
-                .pool(MantaroData.getDefaultJedisPool())
+                .redis(MantaroData.redis())
                 .premiumAware(true)
                 .prefix("game")
                 .build();
@@ -312,7 +312,7 @@ public class GameCmds {
                 .cooldown(16, TimeUnit.SECONDS)
                 .cooldownPenaltyIncrease(5, TimeUnit.SECONDS)
                 .maxCooldown(15, TimeUnit.MINUTES)
-                .pool(MantaroData.getDefaultJedisPool())
+                .redis(MantaroData.redis())
                 .prefix("trivia")
                 .build();
 
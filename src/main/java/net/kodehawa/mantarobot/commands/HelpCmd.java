@@ -126,7 +126,7 @@ public class HelpCmd {
                 .cooldown(2, TimeUnit.SECONDS)
                 .maxCooldown(3, TimeUnit.SECONDS)
                 .randomIncrement(true)
-                .pool(MantaroData.getDefaultJedisPool())
+                .redis(MantaroData.redis())
                 .prefix("help")
                 .build();
 
@@ -64,7 +64,7 @@ public class ItemCmds {
                 .cooldown(5, TimeUnit.SECONDS)
                 .cooldownPenaltyIncrease(2, TimeUnit.SECONDS)
                 .maxCooldown(2, TimeUnit.MINUTES)
-                .pool(MantaroData.getDefaultJedisPool())
+                .redis(MantaroData.redis())
                 .prefix("cast")
                 .build();
 
@@ -361,7 +361,7 @@ public class ItemCmds {
                 .cooldown(5, TimeUnit.SECONDS)
                 .cooldownPenaltyIncrease(2, TimeUnit.SECONDS)
                 .maxCooldown(2, TimeUnit.MINUTES)
-                .pool(MantaroData.getDefaultJedisPool())
+                .redis(MantaroData.redis())
                 .prefix("repair")
                 .build();
 
@@ -601,7 +601,7 @@ public class ItemCmds {
                 .cooldown(5, TimeUnit.SECONDS)
                 .cooldownPenaltyIncrease(2, TimeUnit.SECONDS)
                 .maxCooldown(2, TimeUnit.MINUTES)
-                .pool(MantaroData.getDefaultJedisPool())
+                .redis(MantaroData.redis())
                 .prefix("repair")
                 .build();
 
@@ -43,7 +43,6 @@ import net.kodehawa.mantarobot.utils.commands.ratelimit.IncreasingRateLimiter;
 import net.kodehawa.mantarobot.utils.data.JsonDataManager;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.tuple.Pair;
-import redis.clients.jedis.Jedis;
 
 import java.util.List;
 import java.util.Map;
@@ -67,7 +66,7 @@ public class LeaderboardCmd {
                 .cooldown(2, TimeUnit.SECONDS)
                 .cooldownPenaltyIncrease(20, TimeUnit.SECONDS)
                 .maxCooldown(5, TimeUnit.MINUTES)
-                .pool(MantaroData.getDefaultJedisPool())
+                .redis(MantaroData.redis())
                 .prefix("leaderboard")
                 .build();
 
@@ -485,14 +484,16 @@ public class LeaderboardCmd {
      * This can either be retrieved from Redis or cached on the spot if the cache didn't exist for it.
      */
     private CachedLeaderboardMember getMember(Context ctx, String id) {
-        try(Jedis jedis = MantaroData.getDefaultJedisPool().getResource()) {
-            var savedTo = "cachedlbuser:" + id;
-            var missed = "lbmiss:" + id;
+        var savedTo = "cachedlbuser:" + id;
+        var missed = "lbmiss:" + id;
 
-            var json = jedis.get(savedTo);
+        // Both in one go. The connection isn't held while we ask Discord, it could take a while.
+        var cachedData = ctx.getRedis().mget("leaderboard_member_read", List.of(savedTo, missed));
+        var json = cachedData.get(0);
+        try {
             if (json == null) {
                 // No need to keep trying missed entries for a while. Entry should have a TTL of 12 hours.
-                if (jedis.get(missed) != null) {
+                if (cachedData.get(1) != null) {
                     return null;
                 }
 
@@ -504,18 +505,17 @@ public class LeaderboardCmd {
 
                 // If no user was found, we need to return null. This is later handled on generateLeaderboardEmbed.
                 if (user == null) {
-                    jedis.set(missed, "1");
-                    jedis.expire(missed, (int) TimeUnit.HOURS.toSeconds(12));
+                    ctx.getRedis().run("leaderboard_member_write", jedis -> jedis.setex(missed, (int) TimeUnit.HOURS.toSeconds(12), "1"));
                     return null;
                 }
 
                 CachedLeaderboardMember cached = new CachedLeaderboardMember(
                         user.getIdLong(), user.getName(), user.getDiscriminator(), System.currentTimeMillis()
                 );
-                jedis.set(savedTo, JsonDataManager.toJson(cached));
 
                 // Set the value to expire in 48 hours.
-                jedis.expire(savedTo, (int) TimeUnit.HOURS.toSeconds(48));
+                var cachedJson = JsonDataManager.toJson(cached);
+                ctx.getRedis().run("leaderboard_member_write", jedis -> jedis.setex(savedTo, (int) TimeUnit.HOURS.toSeconds(48), cachedJson));
                 return cached;
             } else {
                 return JsonDataManager.fromJson(json, CachedLeaderboardMember.class);
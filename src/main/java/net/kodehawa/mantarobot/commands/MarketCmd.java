@@ -58,7 +58,7 @@ public class MarketCmd {
                 .cooldown(3, TimeUnit.SECONDS)
                 .maxCooldown(3, TimeUnit.SECONDS)
                 .randomIncrement(true)
-                .pool(MantaroData.getDefaultJedisPool())
+                .redis(MantaroData.redis())
                 .prefix("market")
                 .premiumAware(true)
                 .build();
@@ -50,6 +50,9 @@ import net.kodehawa.mantarobot.utils.commands.ratelimit.IncreasingRateLimiter;
 
 import java.awt.Color;
 import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.TimeUnit;
 import java.util.regex.Pattern;
@@ -94,8 +97,12 @@ public class MarryCmd {
                             return;
                         }
 
-                        final Marriage proposingMarriage = proposingUserData.getMarriage();
-                        final Marriage proposedToMarriage = proposedToUserData.getMarriage();
+                        // Both marriages in one go.
+                        final var marriages = ctx.db().getMarriages(
+                                Arrays.asList(proposingUserData.getMarriageId(), proposedToUserData.getMarriageId())
+                        );
+                        final Marriage proposingMarriage = marriageOf(proposingUserData, marriages);
+                        final Marriage proposedToMarriage = marriageOf(proposedToUserData, marriages);
 
                         // We need to conduct a bunch of checks here.
                         // You CANNOT marry bots, yourself, people already married, or engage on another marriage if you're married.
@@ -111,7 +118,7 @@ public class MarryCmd {
 
                         // Already married to the same person you're proposing to.
                         if ((proposingMarriage != null && proposedToMarriage != null) &&
-                                proposedToUserData.getMarriage().getId().equals(proposingMarriage.getId())) {
+                                proposedToMarriage.getId().equals(proposingMarriage.getId())) {
                             ctx.sendLocalized("commands.marry.already_married_receipt", EmoteReference.ERROR);
                             return;
                         }
@@ -165,13 +172,20 @@ public class MarryCmd {
                                 // to avoid race conditions or changes on those that might have happened on the 120 seconds that this lasted for.
                                 // We need to check if the marriage is empty once again before continuing, also if we have enough rings!
                                 // Else we end up with really annoying to debug bugs, lol.
-                                Player proposingPlayer = ctx.getPlayer(proposingUser);
-                                Player proposedToPlayer = ctx.getPlayer(proposedToUser);
-                                DBUser proposingUserDB = ctx.getDBUser(proposingUser);
-                                DBUser proposedToUserDB = ctx.getDBUser(proposedToUser);
+                                final var ids = List.of(proposingUser.getId(), proposedToUser.getId());
+                                final var players = ctx.db().getPlayers(ids);
+                                final var users = ctx.db().getUsers(ids);
+
+                                Player proposingPlayer = players.get(proposingUser.getId());
+                                Player proposedToPlayer = players.get(proposedToUser.getId());
+                                DBUser proposingUserDB = users.get(proposingUser.getId());
+                                DBUser proposedToUserDB = users.get(proposedToUser.getId());
 
-                                final Marriage proposingMarriageFinal = proposingUserDB.getData().getMarriage();
-                                final Marriage proposedToMarriageFinal = proposedToUserDB.getData().getMarriage();
+                                final var marriagesFinal = ctx.db().getMarriages(
+                                        Arrays.asList(proposingUserDB.getData().getMarriageId(), proposedToUserDB.getData().getMarriageId())
+                                );
+                                final Marriage proposingMarriageFinal = marriageOf(proposingUserDB.getData(), marriagesFinal);
+                                final Marriage proposedToMarriageFinal = marriageOf(proposedToUserDB.getData(), marriagesFinal);
 
                                 if (proposingMarriageFinal != null) {
                                     ctx.sendLocalized("commands.marry.already_married", EmoteReference.ERROR);
@@ -552,7 +566,7 @@ public class MarryCmd {
                 .maxCooldown(2, TimeUnit.DAYS)
                 .randomIncrement(false)
                 .premiumAware(false)
-                .pool(MantaroData.getDefaultJedisPool())
+                .redis(MantaroData.redis())
                 .prefix("marriage-tz")
                 .build();
 
@@ -765,4 +779,9 @@ public class MarryCmd {
             }
         });
     }
+
+    private static Marriage marriageOf(UserData userData, Map<String, Marriage> marriages) {
+        var marriageId = userData.getMarriageId();
+        return marriageId == null ? null : marriages.get(marriageId);
+    }
 }
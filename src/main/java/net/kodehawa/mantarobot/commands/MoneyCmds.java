@@ -57,7 +57,7 @@ public class MoneyCmds {
                 .cooldown(24, TimeUnit.HOURS)
                 .maxCooldown(24, TimeUnit.HOURS)
                 .randomIncrement(false)
-                .pool(MantaroData.getDefaultJedisPool())
+                .redis(MantaroData.redis())
                 .prefix("daily")
                 .build();
 
@@ -308,7 +308,7 @@ public class MoneyCmds {
                 .maxCooldown(5, TimeUnit.MINUTES)
                 .randomIncrement(false)
                 .premiumAware(true)
-                .pool(MantaroData.getDefaultJedisPool())
+                .redis(MantaroData.redis())
                 .prefix("loot")
                 .build();
 
@@ -196,7 +196,7 @@ public class MusicUtilCmds {
                     .cooldown(15, TimeUnit.SECONDS)
                     .maxCooldown(40, TimeUnit.SECONDS)
                     .randomIncrement(true)
-                    .pool(MantaroData.getDefaultJedisPool())
+                    .redis(MantaroData.redis())
                     .prefix("move")
                     .build();
 
@@ -199,14 +199,12 @@ public class OwnerCmd {
 
                 if (e.getMessage().getContentRaw().equalsIgnoreCase("yes")) {
                     transferToPlayer.setCurrentMoney(transferredPlayer.getCurrentMoney());
-                    transferToPlayer.setLevel(transferredPlayer.getLevel());
                     transferToPlayer.setReputation(transferredPlayer.getReputation());
                     transferToPlayer.getInventory().merge(transferredPlayer.getInventory().asList());
 
                     var transferredData = transferredPlayer.getData();
                     var transferToData = transferToPlayer.getData();
 
-                    transferToData.setExperience(transferredData.getExperience());
                     transferToData.setBadges(transferredData.getBadges());
                     transferToData.setShowBadge(transferredData.isShowBadge());
                     transferToData.setMarketUsed(transferredData.getMarketUsed());
@@ -223,6 +221,11 @@ public class OwnerCmd {
                     var reset = Player.of(transferred);
                     reset.save();
 
+                    //Saves don't write level and experience.
+                    var db = MantaroData.db();
+                    db.setPlayerProgress(transferTo, transferredPlayer.getLevel(), transferredData.getExperience());
+                    db.setPlayerProgress(transferred, 0, 0);
+
                     ctx.send("%sTransfer from %s %s completed.".formatted(
                             EmoteReference.CORRECT, transferred, transferTo
                     ));
@@ -59,7 +59,7 @@ public class PetCmds {
                 .cooldown(2, TimeUnit.SECONDS)
                 .maxCooldown(5, TimeUnit.SECONDS)
                 .randomIncrement(true)
-                .pool(MantaroData.getDefaultJedisPool())
+                .redis(MantaroData.redis())
                 .prefix("pet")
                 .build();
 
@@ -69,7 +69,7 @@ public class PetCmds {
                 .cooldown(40, TimeUnit.SECONDS)
                 .maxCooldown(3, TimeUnit.MINUTES)
                 .randomIncrement(true)
-                .pool(MantaroData.getDefaultJedisPool())
+                .redis(MantaroData.redis())
                 .prefix("pet-pat")
                 .build();
 
@@ -79,7 +79,7 @@ public class PetCmds {
                 .cooldown(1, TimeUnit.HOURS)
                 .maxCooldown(2, TimeUnit.HOURS)
                 .randomIncrement(false)
-                .pool(MantaroData.getDefaultJedisPool())
+                .redis(MantaroData.redis())
                 .prefix("pet-remove")
                 .build();
 
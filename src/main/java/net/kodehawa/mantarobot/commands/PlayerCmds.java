@@ -71,7 +71,7 @@ public class PlayerCmds {
                     .limit(1)
                     .cooldown(12, TimeUnit.HOURS)
                     .maxCooldown(12, TimeUnit.HOURS)
-                    .pool(MantaroData.getDefaultJedisPool())
+                    .redis(MantaroData.redis())
                     .randomIncrement(false)
                     .prefix("rep")
                     .build();
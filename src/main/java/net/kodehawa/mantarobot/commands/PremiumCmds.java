@@ -112,6 +112,7 @@ public class PremiumCmds {
                     key.activate(180);
                     ctx.sendLocalized("commands.activatekey.guild_successful", EmoteReference.POPPER, key.getDurationDays());
                     guild.getData().setPremiumKey(key.getId());
+                    //Drops the guild from the premium cache (on every node) once it's written.
                     guild.saveAsync();
 
                     return;
@@ -164,7 +165,7 @@ public class PremiumCmds {
                 .limit(2)
                 .cooldown(1, TimeUnit.MINUTES)
                 .maxCooldown(5, TimeUnit.MINUTES)
-                .pool(MantaroData.getDefaultJedisPool())
+                .redis(MantaroData.redis())
                 .prefix("claimkey")
                 .build();
 
@@ -438,6 +439,8 @@ public class PremiumCmds {
                 keysClaimed.remove(Utils.getKeyByValue(keysClaimed, key.getId()));
                 dbUser.save();
                 key.delete();
+                //Whoever had it could be anyone.
+                MantaroData.db().getPremiumResolver().invalidateAll();
 
                 ctx.send("Invalidated key " + args[0]);
             }
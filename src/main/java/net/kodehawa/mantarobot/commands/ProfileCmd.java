@@ -84,7 +84,7 @@ public class ProfileCmd {
                 .cooldown(10, TimeUnit.MINUTES)
                 .cooldownPenaltyIncrease(10, TimeUnit.SECONDS)
                 .maxCooldown(15, TimeUnit.MINUTES)
-                .pool(MantaroData.getDefaultJedisPool())
+                .redis(MantaroData.redis())
                 .prefix("profile")
                 .build();
 
@@ -139,7 +139,7 @@ public class ProfileCmd {
                             var inv = player.getInventory();
 
                             // Cache waifu value.
-                            playerData.setWaifuCachedValue(WaifuCmd.calculateWaifuValue(userLooked).getFinalValue());
+                            playerData.setWaifuCachedValue(WaifuCmd.calculateWaifuValue(player, dbUser).getFinalValue());
 
                             // start of badge assigning
                             var mh = MantaroBot.getInstance().getShardManager().getGuildById("213468583252983809");
@@ -36,7 +36,6 @@ import net.kodehawa.mantarobot.core.modules.commands.i18n.I18nContext;
 import net.kodehawa.mantarobot.utils.DiscordUtils;
 import net.kodehawa.mantarobot.utils.Utils;
 import org.json.JSONObject;
-import redis.clients.jedis.Jedis;
 
 import java.awt.*;
 import java.util.Comparator;
@@ -102,10 +101,7 @@ public class StatsCmd {
 
             @Override
             protected void call(Context ctx, I18nContext languageContext, String content) {
-                Map<String, String> nodeMap;
-                try (Jedis jedis = ctx.getJedisPool().getResource()) {
-                    nodeMap = jedis.hgetAll("node-stats-" + ctx.getConfig().getClientId());
-                }
+                Map<String, String> nodeMap = ctx.getRedis().hgetAll("node_stats_read", "node-stats-" + ctx.getConfig().getClientId());
 
                 var embed = new EmbedBuilder().setTitle("Mantaro Node Statistics")
                         .setDescription("This shows the current status of the online nodes. " +
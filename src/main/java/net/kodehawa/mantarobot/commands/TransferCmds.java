@@ -55,7 +55,7 @@ public class TransferCmds {
                     .cooldown(45, TimeUnit.SECONDS)
                     .cooldownPenaltyIncrease(10, TimeUnit.SECONDS)
                     .maxCooldown(10, TimeUnit.MINUTES)
-                    .pool(MantaroData.getDefaultJedisPool())
+                    .redis(MantaroData.redis())
                     .prefix("transfer")
                     .build();
 
@@ -188,7 +188,7 @@ public class TransferCmds {
                     .cooldown(15, TimeUnit.SECONDS)
                     .cooldownPenaltyIncrease(5, TimeUnit.SECONDS)
                     .maxCooldown(20, TimeUnit.MINUTES)
-                    .pool(MantaroData.getDefaultJedisPool())
+                    .redis(MantaroData.redis())
                     .premiumAware(true)
                     .prefix("itemtransfer")
                     .build();
@@ -43,7 +43,6 @@ import net.kodehawa.mantarobot.utils.data.JsonDataManager;
 import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import redis.clients.jedis.Jedis;
 
 import java.awt.Color;
 import java.net.URLEncoder;
@@ -240,25 +239,25 @@ public class UtilsCmds {
     }
 
     private List<ReminderObject> getReminders(List<String> reminders) {
-        try (Jedis j = MantaroData.getDefaultJedisPool().getResource()) {
-            List<ReminderObject> rems = new ArrayList<>();
-            for (String s : reminders) {
-                var rem = j.hget("reminder", s);
-                if (rem != null) {
-                    var json = new JSONObject(rem);
-                    rems.add(ReminderObject.builder()
-                            .id(s.split(":")[0])
-                            .userId(json.getString("user"))
-                            .guildId(json.getString("guild"))
-                            .scheduledAtMillis(json.getLong("scheduledAt"))
-                            .time(json.getLong("at"))
-                            .reminder(json.getString("reminder"))
-                            .build());
-                }
+        //All of them in a single round-trip.
+        var data = MantaroData.redis().hmget("reminders_read", "reminder", reminders);
+        List<ReminderObject> rems = new ArrayList<>();
+        for (int i = 0; i < reminders.size(); i++) {
+            var rem = data.get(i);
+            if (rem != null) {
+                var json = new JSONObject(rem);
+                rems.add(ReminderObject.builder()
+                        .id(reminders.get(i).split(":")[0])
+                        .userId(json.getString("user"))
+                        .guildId(json.getString("guild"))
+                        .scheduledAtMillis(json.getLong("scheduledAt"))
+                        .time(json.getLong("at"))
+                        .reminder(json.getString("reminder"))
+                        .build());
             }
-
-            return rems;
         }
+
+        return rems;
     }
 
     @Subscribe
@@ -64,7 +64,7 @@ public class WaifuCmd {
                 .cooldown(5, TimeUnit.SECONDS)
                 .maxCooldown(5, TimeUnit.SECONDS)
                 .randomIncrement(true)
-                .pool(MantaroData.getDefaultJedisPool())
+                .redis(MantaroData.redis())
                 .prefix("waifu")
                 .build();
 
@@ -127,8 +127,13 @@ public class WaifuCmd {
                         boolean id = opts.containsKey("id");
                         java.util.List<String> toRemove = new ArrayList<>();
 
+                        //Get all of them at once, instead of going back and forth for every single waifu.
+                        var waifuIds = userData.getWaifus().keySet();
+                        var waifuPlayers = ctx.db().getPlayers(waifuIds);
+                        var waifuUsers = ctx.db().getUsers(waifuIds);
+
                         List<MessageEmbed.Field> fields = new LinkedList<>();
-                        for (String waifu : userData.getWaifus().keySet()) {
+                        for (String waifu : waifuIds) {
                             //This fixes the issue of cross-node waifus not appearing.
                             User user = ctx.retrieveUserById(waifu);
                             if (user == null) {
@@ -139,7 +144,7 @@ public class WaifuCmd {
                                                 languageContext.get("commands.waifu.credits_format"), false)
                                 );
                             } else {
-                                Player waifuClaimed = ctx.getPlayer(user);
+                                Player waifuClaimed = waifuPlayers.get(waifu);
                                 if (waifuClaimed.getData().isWaifuout()) {
                                     toRemove.add(waifu);
                                     continue;
@@ -150,7 +155,7 @@ public class WaifuCmd {
                                                 (!userData.isPrivateTag() ? "#" + user.getDiscriminator() : ""),
                                         (id ? languageContext.get("commands.waifu.id") + " " + user.getId() + "\n" : "") +
                                                 languageContext.get("commands.waifu.value_format") + " " +
-                                                calculateWaifuValue(user).getFinalValue() + " " +
+                                                calculateWaifuValue(waifuClaimed, waifuUsers.get(waifu)).getFinalValue() + " " +
                                                 languageContext.get("commands.waifu.credits_format") + "\n" +
                                                 languageContext.get("commands.waifu.value_b_format") + " " + userData.getWaifus().get(waifu) +
                                                 languageContext.get("commands.waifu.credits_format"), false)
@@ -319,7 +324,7 @@ public class WaifuCmd {
 
 
                 //Waifu object declaration.
-                final Waifu waifuToClaim = calculateWaifuValue(toLookup);
+                final Waifu waifuToClaim = calculateWaifuValue(claimedPlayer, claimedUser);
                 final long waifuFinalValue = waifuToClaim.getFinalValue();
 
                 //Checks.
@@ -556,9 +561,12 @@ public class WaifuCmd {
 
     static Waifu calculateWaifuValue(final User user) {
         final var db = MantaroData.db();
-        var waifuPlayer = db.getPlayer(user);
+        return calculateWaifuValue(db.getPlayer(user), db.getUser(user));
+    }
+
+    static Waifu calculateWaifuValue(final Player waifuPlayer, final DBUser waifuUser) {
         var waifuPlayerData = waifuPlayer.getData();
-        var waifuUserData = db.getUser(user).getData();
+        var waifuUserData = waifuUser.getData();
 
         var waifuValue = WAIFU_BASE_VALUE;
         long performance;
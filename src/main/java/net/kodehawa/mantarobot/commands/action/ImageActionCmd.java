@@ -99,7 +99,7 @@ public class ImageActionCmd extends NoArgsCommand {
                 .cooldown(4, TimeUnit.SECONDS)
                 .maxCooldown(4, TimeUnit.MINUTES)
                 .randomIncrement(true)
-                .pool(MantaroData.getDefaultJedisPool())
+                .redis(MantaroData.redis())
                 .prefix(name)
                 .build();
     }
@@ -41,13 +41,13 @@ public class TextChannelGround {
 
     public static Ground of(String id) {
         final var identifier =  "textchannelground:" + id;
-        try (var jedis = MantaroData.getDefaultJedisPool().getResource()) {
-            final var json = jedis.get(identifier);
+        final var json = MantaroData.redis().call("ground_read", jedis -> jedis.get(identifier));
+        try {
             if (json == null) {
                 // No ground found, create new one.
                 var ground = new Ground(new HashMap<>(), 0, id);
                 var newJson = JsonDataManager.toJson(ground);
-                jedis.set(identifier, newJson);
+                MantaroData.redis().run("ground_write", jedis -> jedis.set(identifier, newJson));
 
                 return ground;
             } else {
@@ -65,11 +65,9 @@ public class TextChannelGround {
 
     public static void delete(TextChannel ch) {
         final var identifier = "textchannelground:" + ch.getId();
-        try (var jedis = MantaroData.getDefaultJedisPool().getResource()) {
-            // We don't need to check whether it exists or not
-            // Redis will happily run it anyway, so we can save one query.
-            jedis.del(identifier);
-        }
+        // We don't need to check whether it exists or not
+        // Redis will happily run it anyway, so we can save one query.
+        MantaroData.redis().run("ground_delete", jedis -> jedis.del(identifier));
     }
 
     public static Ground of(GuildMessageReceivedEvent event) {
@@ -195,8 +193,9 @@ public class TextChannelGround {
         @JsonIgnore
         public void save() {
             final var identifier =  "textchannelground:" + channel;
-            try (var jedis = MantaroData.getDefaultJedisPool().getResource()) {
-                jedis.set(identifier, JsonDataManager.toJson(this));
+            try {
+                final var json = JsonDataManager.toJson(this);
+                MantaroData.redis().run("ground_write", jedis -> jedis.set(identifier, json));
             } catch (JsonProcessingException e) {
                 e.printStackTrace();
             }
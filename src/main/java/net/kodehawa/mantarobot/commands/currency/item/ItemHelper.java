@@ -52,7 +52,7 @@ public class ItemHelper {
             .cooldown(20, TimeUnit.SECONDS)
             .maxCooldown(2, TimeUnit.MINUTES)
             .randomIncrement(false)
-            .pool(MantaroData.getDefaultJedisPool())
+            .redis(MantaroData.redis())
             .prefix("lootcrate")
             .premiumAware(true)
             .build();
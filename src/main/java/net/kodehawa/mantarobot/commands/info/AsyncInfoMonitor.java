@@ -118,29 +118,31 @@ public class AsyncInfoMonitor {
             maxMemory = Runtime.getRuntime().maxMemory();
             totalMemory = Runtime.getRuntime().totalMemory();
 
-            try(var jedis = MantaroData.getDefaultJedisPool().getResource()) {
-                jedis.hset(nodeSetName,
-                        "node-" + bot.getNodeNumber(),
-                        new JSONObject()
-                                .put("uptime", ManagementFactory.getRuntimeMXBean().getUptime())
-                                .put("thread_count", threadCount)
-                                .put("available_processors", availableProcessors)
-                                .put("free_memory", freeMemory)
-                                .put("max_memory", maxMemory)
-                                .put("total_memory", totalMemory)
-                                .put("used_memory", totalMemory - freeMemory)
-                                .put("cpu_usage", processCpuUsage)
-                                .put("machine_cpu_usage", vpsCPUUsage)
-                                .put("machine_free_memory", vpsFreeMemory)
-                                .put("machine_total_memory", vpsMaxMemory)
-                                .put("machine_used_memory", vpsMaxMemory - vpsFreeMemory)
-                                .put("guild_count", bot.getShardManager().getGuildCache().size())
-                                .put("user_count", bot.getShardManager().getUserCache().size())
-                                .put("shard_slice", bot.getShardSlice())
-                                .put("queue_size", bot.getAudioManager().getTotalQueueSize())
-                                .put("commands_ran", CommandListener.getCommandTotal())
-                                .toString()
-                );
+            var stats = new JSONObject()
+                    .put("uptime", ManagementFactory.getRuntimeMXBean().getUptime())
+                    .put("thread_count", threadCount)
+                    .put("available_processors", availableProcessors)
+                    .put("free_memory", freeMemory)
+                    .put("max_memory", maxMemory)
+                    .put("total_memory", totalMemory)
+                    .put("used_memory", totalMemory - freeMemory)
+                    .put("cpu_usage", processCpuUsage)
+                    .put("machine_cpu_usage", vpsCPUUsage)
+                    .put("machine_free_memory", vpsFreeMemory)
+                    .put("machine_total_memory", vpsMaxMemory)
+                    .put("machine_used_memory", vpsMaxMemory - vpsFreeMemory)
+                    .put("guild_count", bot.getShardManager().getGuildCache().size())
+                    .put("user_count", bot.getShardManager().getUserCache().size())
+                    .put("shard_slice", bot.getShardSlice())
+                    .put("queue_size", bot.getAudioManager().getTotalQueueSize())
+                    .put("commands_ran", CommandListener.getCommandTotal())
+                    .toString();
+
+            try {
+                MantaroData.redis().run("node_stats_write", jedis -> jedis.hset(nodeSetName, "node-" + bot.getNodeNumber(), stats));
+            } catch (Exception e) {
+                //Don't let this kill the schedule.
+                log.warn("Couldn't post node stats to redis", e);
             }
         }, 15, 30, TimeUnit.SECONDS);
 
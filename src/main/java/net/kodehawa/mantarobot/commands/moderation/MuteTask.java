@@ -24,6 +24,8 @@ import net.kodehawa.mantarobot.utils.Pair;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
 public class MuteTask {
@@ -31,8 +33,9 @@ public class MuteTask {
 
     public static void handle() {
         try {
-            MantaroObj data = MantaroData.db().getMantaroData();
-            Map<Long, Pair<String, Long>> mutes = data.getMutes();
+            //Read-only view: whatever has to go is collected and removed in a single save at the end.
+            Map<Long, Pair<String, Long>> mutes = MantaroData.db().getMantaroReplica().getMutes();
+            List<Long> toRemove = new ArrayList<>();
             log.debug("Checking mutes... data size {}", mutes.size());
             for (var entry : mutes.entrySet()) {
                 try {
@@ -57,14 +60,12 @@ public class MuteTask {
                     //What in the name of real fuck.
                     //Please hold me.
                     if (guild.getRoleById(guildData.getMutedRole()) == null) {
-                        data.getMutes().remove(id);
-                        data.saveAsync();
+                        toRemove.add(id);
                         log.debug("Removed {} because role == null", id);
                     } else {
                         if (System.currentTimeMillis() > maxTime) {
                             log.debug("Unmuted {} because time ran out", id);
-                            data.getMutes().remove(id);
-                            data.save();
+                            toRemove.add(id);
                             var roleById = guild.getRoleById(guildData.getMutedRole());
 
                             Member member = null;
@@ -73,8 +74,6 @@ public class MuteTask {
                             } catch (Exception ignored) { }
 
                             if (member == null) {
-                                data.getMutes().remove(id);
-                                data.saveAsync();
                                 log.debug("Removed {} because member == null", id);
                                 continue;
                             }
@@ -96,6 +95,15 @@ public class MuteTask {
                 } catch (Exception ignored) {
                 }
             }
+
+            if (!toRemove.isEmpty()) {
+                MantaroObj data = MantaroData.db().getMantaroData();
+                for (var id : toRemove) {
+                    data.getMutes().remove(id);
+                }
+
+                data.save();
+            }
         } catch (Exception ignored) {
         }
     }
@@ -43,7 +43,6 @@ public class TrackScheduler extends PlayerEventListenerAdapter {
     private final ConcurrentLinkedDeque<AudioTrack> queue;
     private final List<String> voteSkips;
     private final List<String> voteStop;
-    private final I18n language;
     private Link audioPlayer;
     private long lastMessageSentAt;
     private long lastErrorSentAt;
@@ -58,9 +57,6 @@ public class TrackScheduler extends PlayerEventListenerAdapter {
         this.guildId = guildId;
         this.voteSkips = new ArrayList<>();
         this.voteStop = new ArrayList<>();
-
-        //Only take guild language settings into consideration for announcement messages.
-        this.language = I18n.of(guildId);
     }
 
     public void queue(AudioTrack track, boolean addFirst) {
@@ -138,7 +134,7 @@ public class TrackScheduler extends PlayerEventListenerAdapter {
             //Force it in case it keeps going all the time?
             if (errorCount > 20) {
                 getRequestedTextChannel().sendMessageFormat(
-                        language.get("commands.music_general.too_many_errors"),
+                        getLanguage().get("commands.music_general.too_many_errors"),
                         EmoteReference.ERROR
                 ).queue();
 
@@ -166,11 +162,11 @@ public class TrackScheduler extends PlayerEventListenerAdapter {
                     getRequestedTextChannel().sendMessage(
                             new MessageBuilder()
                                     .append(String.format(
-                                            language.get("commands.music_general.np_message"),
+                                            getLanguage().get("commands.music_general.np_message"),
                                             "\uD83D\uDCE3", title,
                                             AudioCmdUtils.getDurationMinutes(trackLength),
                                             voiceChannel.getName(), user != null ?
-                                                    String.format(language.get("general.requested_by"),
+                                                    String.format(getLanguage().get("general.requested_by"),
                                                             String.format("**%s**", user.getUser().getAsTag())) : "")
                                     )
                                     .build()
@@ -198,7 +194,7 @@ public class TrackScheduler extends PlayerEventListenerAdapter {
             if ((lastErrorSentAt == 0 || lastErrorSentAt + 60000 < System.currentTimeMillis()) && errorCount < 10) {
                 lastErrorSentAt = System.currentTimeMillis();
                 getRequestedTextChannel().sendMessageFormat(
-                        language.get("commands.music_general.track_error"), EmoteReference.SAD
+                        getLanguage().get("commands.music_general.track_error"), EmoteReference.SAD
                 ).queue();
             }
 
@@ -271,9 +267,9 @@ public class TrackScheduler extends PlayerEventListenerAdapter {
             var ch = getRequestedTextChannel();
             if (ch != null && ch.canTalk()) {
                 ch.sendMessageFormat(
-                        language.get("commands.music_general.queue_finished"),
+                        getLanguage().get("commands.music_general.queue_finished"),
                         EmoteReference.MEGA, premium ? "" :
-                                String.format(language.get("commands.music_general.premium_beg"),
+                                String.format(getLanguage().get("commands.music_general.premium_beg"),
                                         EmoteReference.HEART
                                 )
                 ).queue(message -> message.delete().queueAfter(30, TimeUnit.SECONDS));
@@ -323,8 +319,10 @@ public class TrackScheduler extends PlayerEventListenerAdapter {
         this.repeatMode = repeatMode;
     }
 
+    //Only take guild language settings into consideration for announcement messages.
+    //Resolved on every use (it's cached on the database side), so language changes apply to running players too.
     public I18n getLanguage() {
-        return this.language;
+        return I18n.of(guildId);
     }
 
     public void setRequestedChannel(long requestedChannel) {
@@ -16,16 +16,15 @@
 
 package net.kodehawa.mantarobot.commands.utils.birthday;
 
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
-import com.rethinkdb.model.OptArgs;
-import com.rethinkdb.utils.Types;
 import net.kodehawa.mantarobot.commands.BirthdayCmd;
 import net.kodehawa.mantarobot.data.MantaroData;
+import net.kodehawa.mantarobot.db.entities.DBUser;
 import net.kodehawa.mantarobot.utils.exporters.Metrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
@@ -41,7 +40,7 @@ public class BirthdayCacher {
     private static final Logger log = LoggerFactory.getLogger(BirthdayCacher.class);
     private final ExecutorService executorService =
             Executors.newFixedThreadPool(1, new ThreadFactoryBuilder().setNameFormat("Mantaro Birthday Assigner Executor").build());
-    private Map<String, BirthdayData> cachedBirthdays = new ConcurrentHashMap<>();
+    private volatile Map<String, BirthdayData> cachedBirthdays = new ConcurrentHashMap<>();
     public volatile boolean isDone;
 
     public BirthdayCacher() {
@@ -53,26 +52,24 @@ public class BirthdayCacher {
     public void cache() {
         executorService.submit(() -> {
             try {
-                List<Map<Object, Object>> m = r.table("users")
-                        .run(MantaroData.conn(), OptArgs.of("read_mode", "outdated"), Types.mapOf(Object.class, Object.class))
-                        .toList();
-                cachedBirthdays.clear();
-
-                for (Map<Object, Object> r : m) {
-                    var id = String.valueOf(r.get("id"));
+                //Only the birthday is needed, and the table is streamed so we never hold every user in memory.
+                Map<String, BirthdayData> birthdays = new ConcurrentHashMap<>();
+                MantaroData.db().forEach(DBUser.DB_TABLE, UserBirthday.class, r -> {
+                    var id = r.id;
                     // Why?
-                    if (cachedBirthdays.containsKey(id))
-                        continue;
+                    if (id == null || birthdays.containsKey(id))
+                        return;
 
-                    //Blame rethinkdb for the casting hell thx
-                    @SuppressWarnings("unchecked")
-                    var birthday = ((Map<String, String>) r.get("data")).get("birthday");
+                    var birthday = r.data == null ? null : r.data.birthday;
                     if (birthday != null && !birthday.isEmpty()) {
-                        log.debug("-> PROCESS: {}", r);
+                        log.debug("-> PROCESS: {}", id);
                         var bd = birthday.split("-");
-                        cachedBirthdays.put(id, new BirthdayData(birthday, bd[0], bd[1]));
+                        birthdays.put(id, new BirthdayData(birthday, bd[0], bd[1]));
                     }
-                }
+                }, "id", r.hashMap("data", r.hashMap("birthday", true)));
+
+                //Swap it in at once, so the task doesn't see a half-built cache.
+                cachedBirthdays = birthdays;
 
                 log.debug("-> [CACHE] Birthdays: {}", cachedBirthdays);
                 log.info("Clearing previous guild birthday cache...");
@@ -89,6 +86,18 @@ public class BirthdayCacher {
         return cachedBirthdays;
     }
 
+    //The part of a user we pluck when caching.
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    private static class UserBirthday {
+        public String id;
+        public Data data;
+
+        @JsonIgnoreProperties(ignoreUnknown = true)
+        private static class Data {
+            public String birthday;
+        }
+    }
+
     public static class BirthdayData {
         public String birthday;
         public String day;
@@ -18,15 +18,15 @@ package net.kodehawa.mantarobot.commands.utils.reminders;
 
 import net.kodehawa.mantarobot.data.MantaroData;
 import net.kodehawa.mantarobot.db.ManagedDatabase;
+import net.kodehawa.mantarobot.db.RedisClient;
 import org.json.JSONObject;
-import redis.clients.jedis.JedisPool;
 
 import java.util.UUID;
 
 public class Reminder {
     private static final String table = "reminder";
     private static final String ztable = "zreminder";
-    private static final JedisPool pool = MantaroData.getDefaultJedisPool();
+    private static final RedisClient redis = MantaroData.redis();
     private static final ManagedDatabase db = MantaroData.db();
 
     public final String id;
@@ -51,12 +51,11 @@ public class Reminder {
     //This is more useful now
     //Id here contains the full id aka UUID:userId, unlike in the other methods
     public static void cancel(String userId, String fullId, CancelReason reason) {
-        try (var redis = pool.getResource()) {
-            var data = redis.hget(table, fullId);
-
-            redis.zrem(ztable, data);
-            redis.hdel(table, fullId);
-        }
+        var saved = redis.call("reminders_read", jedis -> jedis.hget(table, fullId));
+        redis.pipelined("reminders_cancel", pipeline -> {
+            pipeline.zrem(ztable, saved);
+            pipeline.hdel(table, fullId);
+        });
 
         var user = db.getUser(userId);
         var data = user.getData();
@@ -78,11 +77,11 @@ public class Reminder {
                 .put("reminder", reminder)
                 .put("at", time);
 
-        try (var redis = pool.getResource()) {
-            redis.zadd(ztable, time, r.toString());
+        redis.pipelined("reminders_schedule", pipeline -> {
+            pipeline.zadd(ztable, time, r.toString());
             //Needed for removal.
-            redis.hset(table, id + ":" + userId, r.toString());
-        }
+            pipeline.hset(table, id + ":" + userId, r.toString());
+        });
 
         var user = db.getUser(userId);
         var data = user.getData();
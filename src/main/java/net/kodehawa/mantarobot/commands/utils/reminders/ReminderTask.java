@@ -24,7 +24,6 @@ import net.kodehawa.mantarobot.utils.commands.EmoteReference;
 import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import redis.clients.jedis.Jedis;
 
 import java.time.Instant;
 import java.time.OffsetDateTime;
@@ -37,56 +36,62 @@ public class ReminderTask {
 
     public static void handle() {
         log.debug("Checking reminder data...");
-        try (Jedis j = MantaroData.getDefaultJedisPool().getResource()) {
-            Set<String> reminders = j.zrange("zreminder", 0, 14);
-            var bot = MantaroBot.getInstance();
+        Set<String> reminders;
+        try {
+            reminders = MantaroData.redis().call("reminders_due", j -> j.zrange("zreminder", 0, 14));
+        } catch (Exception e) {
+            //Don't let this kill the schedule, we'll get them next time.
+            log.warn("Couldn't get reminders from redis", e);
+            return;
+        }
 
-            log.debug("Reminder check - remainder is: {}", reminders.size());
+        var bot = MantaroBot.getInstance();
 
-            for (var rem : reminders) {
-                try {
-                    var data = new JSONObject(rem);
-                    var fireAt = data.getLong("at");
+        log.debug("Reminder check - remainder is: {}", reminders.size());
 
-                    // If the time has passed...
-                    if (System.currentTimeMillis() >= fireAt) {
-                        log.debug("Reminder date has passed, remind accordingly.");
-                        var userId = data.getString("user");
-                        var fullId = data.getString("id") + ":" + userId;
-                        var guildId = data.getString("guild");
-                        var scheduledAt = data.getLong("scheduledAt");
+        for (var rem : reminders) {
+            try {
+                var data = new JSONObject(rem);
+                var fireAt = data.getLong("at");
 
-                        // 1 day passed already, assuming it's a stale reminder:
-                        // Done because ReminderTask wasn't working.
-                        if (System.currentTimeMillis() - fireAt > TimeUnit.DAYS.toMillis(1)) {
-                            Reminder.cancel(userId, fullId, Reminder.CancelReason.CANCEL);
-                            return;
-                        }
+                // If the time has passed...
+                if (System.currentTimeMillis() >= fireAt) {
+                    log.debug("Reminder date has passed, remind accordingly.");
+                    var userId = data.getString("user");
+                    var fullId = data.getString("id") + ":" + userId;
+                    var guildId = data.getString("guild");
+                    var scheduledAt = data.getLong("scheduledAt");
 
-                        var reminder = data.getString("reminder"); //The actual reminder data
-                        var guild = bot.getShardManager().getGuildById(guildId);
-                        var scheduledTime = OffsetDateTime.ofInstant(Instant.ofEpochMilli(scheduledAt), ZoneId.systemDefault());
-                        bot.getShardManager().retrieveUserById(userId)
-                                .flatMap(User::openPrivateChannel)
-                                .flatMap(privateChannel -> privateChannel
-                                        .sendMessageFormat("""
-                                                        %s**Reminder!**
-                                                        
-                                                        You asked me to remind you of: **%s**
-                                                        *Asked at:* %s%s""",
-                                                EmoteReference.POPPER,
-                                                reminder, Utils.formatDate(scheduledTime),
-                                                (guild != null ? "\n*Asked on: %s*".formatted(guild.getName()) : "")
-                                        )
-                                ).queue(success -> {
-                                    log.debug("Reminded {}. Removing from remind database", fullId);
-                                    Reminder.cancel(userId, fullId, Reminder.CancelReason.REMINDED);
-                                }, err -> Reminder.cancel(userId, fullId, Reminder.CancelReason.ERROR_DELIVERING)
-                        );
+                    // 1 day passed already, assuming it's a stale reminder:
+                    // Done because ReminderTask wasn't working.
+                    if (System.currentTimeMillis() - fireAt > TimeUnit.DAYS.toMillis(1)) {
+                        Reminder.cancel(userId, fullId, Reminder.CancelReason.CANCEL);
+                        return;
                     }
-                } catch (Exception e) {
-                    e.printStackTrace();
+
+                    var reminder = data.getString("reminder"); //The actual reminder data
+                    var guild = bot.getShardManager().getGuildById(guildId);
+                    var scheduledTime = OffsetDateTime.ofInstant(Instant.ofEpochMilli(scheduledAt), ZoneId.systemDefault());
+                    bot.getShardManager().retrieveUserById(userId)
+                            .flatMap(User::openPrivateChannel)
+                            .flatMap(privateChannel -> privateChannel
+                                    .sendMessageFormat("""
+                                                    %s**Reminder!**
+                                                    
+                                                    You asked me to remind you of: **%s**
+                                                    *Asked at:* %s%s""",
+                                            EmoteReference.POPPER,
+                                            reminder, Utils.formatDate(scheduledTime),
+                                            (guild != null ? "\n*Asked on: %s*".formatted(guild.getName()) : "")
+                                    )
+                            ).queue(success -> {
+                                log.debug("Reminded {}. Removing from remind database", fullId);
+                                Reminder.cancel(userId, fullId, Reminder.CancelReason.REMINDED);
+                            }, err -> Reminder.cancel(userId, fullId, Reminder.CancelReason.ERROR_DELIVERING)
+                    );
                 }
+            } catch (Exception e) {
+                e.printStackTrace();
             }
         }
     }
@@ -18,7 +18,6 @@ package net.kodehawa.mantarobot.core;
 
 import com.google.common.base.Preconditions;
 import net.dv8tion.jda.api.entities.Member;
-import net.dv8tion.jda.api.entities.Role;
 import net.dv8tion.jda.api.events.message.guild.GuildMessageReceivedEvent;
 import net.kodehawa.mantarobot.commands.CustomCmds;
 import net.kodehawa.mantarobot.commands.info.stats.CategoryStatsManager;
@@ -36,11 +35,13 @@ import net.kodehawa.mantarobot.core.modules.commands.help.HelpContent;
 import net.kodehawa.mantarobot.core.modules.commands.i18n.I18nContext;
 import net.kodehawa.mantarobot.data.Config;
 import net.kodehawa.mantarobot.data.MantaroData;
+import net.kodehawa.mantarobot.db.EntitySession;
 import net.kodehawa.mantarobot.db.ManagedDatabase;
-import net.kodehawa.mantarobot.db.entities.DBGuild;
+import net.kodehawa.mantarobot.db.PremiumResolver;
 import net.kodehawa.mantarobot.db.entities.DBUser;
+import net.kodehawa.mantarobot.db.entities.GuildCommandConfig;
+import net.kodehawa.mantarobot.db.entities.GuildCommandGate;
 import net.kodehawa.mantarobot.db.entities.PremiumKey;
-import net.kodehawa.mantarobot.db.entities.helpers.GuildData;
 import net.kodehawa.mantarobot.db.entities.helpers.UserData;
 import net.kodehawa.mantarobot.options.core.Option;
 import net.kodehawa.mantarobot.utils.Utils;
@@ -50,7 +51,6 @@ import net.kodehawa.mantarobot.utils.exporters.Metrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -87,23 +87,23 @@ public class CommandRegistry {
 
     //BEWARE OF INSTANCEOF CALLS
     //I know there are better approaches to this, THIS IS JUST A WORKAROUND, DON'T TRY TO REPLICATE THIS.
-    public void process(GuildMessageReceivedEvent event, String cmdName, String content, String prefix) {
-        final ManagedDatabase managedDatabase = MantaroData.db();
+    public void process(GuildMessageReceivedEvent event, EntitySession session, String cmdName, String content, String prefix) {
+        final ManagedDatabase managedDatabase = session.db();
         long start = System.currentTimeMillis();
 
         Command command = commands.get(cmdName.toLowerCase());
 
-        DBGuild dbg = managedDatabase.getGuild(event.getGuild());
-        DBUser dbUser = managedDatabase.getUser(event.getAuthor());
+        //Only what's needed to gate the command: the full guild is loaded later on if the command asks for it.
+        GuildCommandConfig guildData = session.getGuildCommandConfig(event.getGuild().getId());
+        DBUser dbUser = session.getUser(event.getAuthor().getId());
         UserData userData = dbUser.getData();
-        GuildData guildData = dbg.getData();
 
         if (command == null) {
-            CustomCmds.handle(prefix, cmdName, new Context(event, new I18nContext(guildData, userData), content), content);
+            CustomCmds.handle(prefix, cmdName, new Context(event, new I18nContext(guildData, userData), content, session), content);
             return;
         }
 
-        if (managedDatabase.getMantaroData().getBlackListedUsers().contains(event.getAuthor().getId())) {
+        if (managedDatabase.getMantaroReplica().isBlackListedUser(event.getAuthor().getId())) {
             if (rl.process(event.getAuthor())) {
                 event.getChannel().sendMessage(EmoteReference.ERROR + "You have been blacklisted from using all of Mantaro's functions. " +
                         "If you wish to get more details on why, don't hesitate to join the support server and ask, but be sincere."
@@ -115,70 +115,62 @@ public class CommandRegistry {
         //Variable used in lambda expression should be final or effectively final...
         final Command cmd = command;
 
-        if (guildData.getDisabledCommands().contains(name(cmd, cmdName))) {
-            sendDisabledNotice(event, guildData, CommandDisableLevel.COMMAND);
+        GuildCommandGate gate = session.getGuildCommandGate(event.getGuild().getId());
+        String name = name(cmd, cmdName);
+        CommandCategory category = root(cmd).category();
+        String channelId = event.getChannel().getId();
+
+        if (gate.isCommandDisabled(name)) {
+            sendDisabledNotice(event, gate, CommandDisableLevel.COMMAND);
             return;
         }
 
-        List<String> channelDisabledCommands = guildData.getChannelSpecificDisabledCommands().get(event.getChannel().getId());
-        if (channelDisabledCommands != null && channelDisabledCommands.contains(name(cmd, cmdName))) {
-            sendDisabledNotice(event, guildData, CommandDisableLevel.COMMAND_SPECIFIC);
+        if (gate.isCommandDisabledIn(channelId, name)) {
+            sendDisabledNotice(event, gate, CommandDisableLevel.COMMAND_SPECIFIC);
             return;
         }
 
-        if (guildData.getDisabledUsers().contains(event.getAuthor().getId()) && isNotAdmin(event.getMember())) {
-            sendDisabledNotice(event, guildData, CommandDisableLevel.USER);
+        if (gate.isUserDisabled(event.getAuthor().getId()) && isNotAdmin(event.getMember())) {
+            sendDisabledNotice(event, gate, CommandDisableLevel.USER);
             return;
         }
 
-        if (guildData.getDisabledChannels().contains(event.getChannel().getId()) && (root(cmd).category() != CommandCategory.MODERATION)) {
-            sendDisabledNotice(event, guildData, CommandDisableLevel.CHANNEL);
+        if (gate.isChannelDisabled(channelId) && (category != CommandCategory.MODERATION)) {
+            sendDisabledNotice(event, gate, CommandDisableLevel.CHANNEL);
             return;
         }
 
-        if (guildData.getDisabledCategories().contains(
-                root(cmd).category()
-        ) && !cmdName.equalsIgnoreCase("opts")) {
-            sendDisabledNotice(event, guildData, CommandDisableLevel.CATEGORY);
+        if (gate.isCategoryDisabled(category) && !cmdName.equalsIgnoreCase("opts")) {
+            sendDisabledNotice(event, gate, CommandDisableLevel.CATEGORY);
             return;
         }
 
-        if (guildData.getChannelSpecificDisabledCategories().computeIfAbsent(event.getChannel().getId(), c ->
-                new ArrayList<>()).contains(root(cmd).category())
-                && !cmdName.equalsIgnoreCase("opts")) {
-            sendDisabledNotice(event, guildData, CommandDisableLevel.SPECIFIC_CATEGORY);
+        if (gate.isCategoryDisabledIn(channelId, category) && !cmdName.equalsIgnoreCase("opts")) {
+            sendDisabledNotice(event, gate, CommandDisableLevel.SPECIFIC_CATEGORY);
             return;
         }
 
-        if (guildData.getWhitelistedRole() != null) {
-            Role whitelistedRole = event.getGuild().getRoleById(guildData.getWhitelistedRole());
-            if ((whitelistedRole != null && event.getMember().getRoles().stream().noneMatch(r -> whitelistedRole.getId().equalsIgnoreCase(r.getId())) && isNotAdmin(event.getMember()))) {
-                return;
-            }
-            //else continue.
+        if (gate.isMissingWhitelistedRole(event.getMember()) && isNotAdmin(event.getMember())) {
+            return;
         }
 
-        if (!guildData.getDisabledRoles().isEmpty() && event.getMember().getRoles().stream().anyMatch(r -> guildData.getDisabledRoles().contains(r.getId())) && isNotAdmin(event.getMember())) {
-            sendDisabledNotice(event, guildData, CommandDisableLevel.ROLE);
+        if (gate.hasDisabledRole(event.getMember()) && isNotAdmin(event.getMember())) {
+            sendDisabledNotice(event, gate, CommandDisableLevel.ROLE);
             return;
         }
 
-        HashMap<String, List<String>> roleSpecificDisabledCommands = guildData.getRoleSpecificDisabledCommands();
-        if (event.getMember().getRoles().stream().anyMatch(r -> roleSpecificDisabledCommands.computeIfAbsent(r.getId(), s -> new ArrayList<>())
-                .contains(name(cmd, cmdName))) && isNotAdmin(event.getMember())) {
-            sendDisabledNotice(event, guildData, CommandDisableLevel.SPECIFIC_ROLE);
+        if (gate.isCommandDisabledFor(event.getMember(), name) && isNotAdmin(event.getMember())) {
+            sendDisabledNotice(event, gate, CommandDisableLevel.SPECIFIC_ROLE);
             return;
         }
 
-        HashMap<String, List<CommandCategory>> roleSpecificDisabledCategories = guildData.getRoleSpecificDisabledCategories();
-        if (event.getMember().getRoles().stream().anyMatch(r -> roleSpecificDisabledCategories.computeIfAbsent(r.getId(), s -> new ArrayList<>())
-                .contains(root(cmd).category())) && isNotAdmin(event.getMember())) {
-            sendDisabledNotice(event, guildData, CommandDisableLevel.SPECIFIC_ROLE_CATEGORY);
+        if (gate.isCategoryDisabledFor(event.getMember(), category) && isNotAdmin(event.getMember())) {
+            sendDisabledNotice(event, gate, CommandDisableLevel.SPECIFIC_ROLE_CATEGORY);
             return;
         }
 
         //If we are in the patreon bot, deny all requests from unknown guilds.
-        if (conf.isPremiumBot() && !conf.isOwner(event.getAuthor()) && !dbg.isPremium()) {
+        if (conf.isPremiumBot() && !conf.isOwner(event.getAuthor()) && !session.getGuild(event.getGuild().getId()).isPremium()) {
             event.getChannel().sendMessage(EmoteReference.ERROR + "Seems like you're trying to use the Patreon bot when this guild is **not** marked as premium. " +
                     "**If you think this is an error please contact Kodehawa#3457 or poke me on #donators in the support guild**").queue();
             return;
@@ -189,14 +181,23 @@ public class CommandRegistry {
             return;
         }
 
-        PremiumKey currentKey = managedDatabase.getPremiumKey(userData.getPremiumKey());
-        PremiumKey guildKey = managedDatabase.getPremiumKey(guildData.getPremiumKey());
+        //Only load the keys when they're about to run out, going by the expiration we have cached.
+        PremiumResolver premium = managedDatabase.getPremiumResolver();
+        PremiumKey currentKey = userData.getPremiumKey() != null && isAboutToExpire(premium.getUser(dbUser)) ?
+                managedDatabase.getPremiumKey(userData.getPremiumKey()) : null;
+        PremiumKey guildKey = guildData.getPremiumKey() != null && isAboutToExpire(premium.getGuild(event.getGuild().getId())) ?
+                managedDatabase.getPremiumKey(guildData.getPremiumKey()) : null;
 
         if (currentKey != null) {
             //10 days before expiration or best fit.
             if (currentKey.validFor() <= 10 && currentKey.validFor() > 1) {
                 //Handling is done inside the PremiumKey#renew method. This only gets fired if the key has less than 10 days left.
-                if (!currentKey.renew() && !userData.hasReceivedExpirationWarning()) {
+                boolean renewed = currentKey.renew();
+                if (renewed) {
+                    premium.invalidateUser(dbUser.getId());
+                }
+
+                if (!renewed && !userData.hasReceivedExpirationWarning()) {
                     //Send message if the person can't be seen as a patron. Maybe they're still pledging, or wanna pledge again.
                     event.getAuthor().openPrivateChannel().queue(privateChannel ->
                             privateChannel.sendMessage(EmoteReference.WARNING + "Your premium key is about to run out in **" + Math.max(1, currentKey.validFor()) + " days**!\n" +
@@ -216,8 +217,8 @@ public class CommandRegistry {
 
         //Handling is done inside the PremiumKey#renew method. This only gets fired if the key has less than 10 days left.
         if (guildKey != null) {
-            if (guildKey.validFor() <= 10 && guildKey.validFor() > 1) {
-                guildKey.renew();
+            if (guildKey.validFor() <= 10 && guildKey.validFor() > 1 && guildKey.renew()) {
+                premium.invalidateGuild(event.getGuild().getId());
             }
         }
 
@@ -241,7 +242,7 @@ public class CommandRegistry {
         try {
             executedNew = newCommands.execute(new NewContext(event.getMessage(),
                     new I18nContext(guildData, userData),
-                    event.getMessage().getContentRaw().substring(prefix.length())));
+                    event.getMessage().getContentRaw().substring(prefix.length()), session));
         } catch (ArgumentParseError e) {
             if (e.getMessage() != null) {
                 event.getChannel().sendMessage(
@@ -256,7 +257,7 @@ public class CommandRegistry {
             return;
         }
         if (!executedNew) {
-            cmd.run(new Context(event, new I18nContext(guildData, userData), content), cmdName, content);
+            cmd.run(new Context(event, new I18nContext(guildData, userData), content, session), cmdName, content);
         }
 
         //Logging
@@ -303,7 +304,12 @@ public class CommandRegistry {
         return !CommandPermission.ADMIN.test(member);
     }
 
-    public void sendDisabledNotice(GuildMessageReceivedEvent event, GuildData data, CommandDisableLevel level) {
+    //10 days before expiration or best fit.
+    private static boolean isAboutToExpire(PremiumResolver.Entitlement entitlement) {
+        return entitlement.keyValidFor() <= 10 && entitlement.keyValidFor() > 1;
+    }
+
+    public void sendDisabledNotice(GuildMessageReceivedEvent event, GuildCommandGate data, CommandDisableLevel level) {
         if (data.isCommandWarningDisplay() && level != CommandDisableLevel.NONE) {
             event.getChannel().sendMessageFormat("%sThis command is disabled on this server. Reason: %s",
                     EmoteReference.ERROR, Utils.capitalize(level.getName())
@@ -0,0 +1,284 @@
+/*
+ * Copyright (C) 2016-2020 David Rubio Escares / Kodehawa
+ *
+ *  Mantaro is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  Mantaro is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro.  If not, see http://www.gnu.org/licenses/
+ */
+
+package net.kodehawa.mantarobot.core;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import net.kodehawa.mantarobot.utils.exporters.Metrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded executor for work coming from guilds (commands, experience, join/leave handlers).
+ * <br>A fixed amount of workers take tasks from per-guild queues, going round-robin across guilds, so a few huge guilds
+ * can't take every worker. Each guild can only have so many tasks running at once, and each user so many tasks
+ * queued or running. Tasks past any of those limits (or past the overall queue size) are rejected right away instead
+ * of piling up, and it's up to the caller to tell the user about it.
+ * <br>Work that can't be dropped goes through {@link #execute(int, long, Runnable)} instead, which only keeps the
+ * per-guild fairness. It still counts towards the overall queue size, so commands are shed first when it piles up.
+ * <br>Workers are daemon threads, and {@link #shutdown(long, TimeUnit)} lets them finish what's queued and stop.
+ */
+public class GuildExecutor {
+    private static final Logger log = LoggerFactory.getLogger(GuildExecutor.class);
+    //User of tasks that aren't limited per user.
+    private static final long NO_USER = -1;
+
+    private final int maxQueued;
+    private final int guildQueueSize;
+    private final int guildConcurrency;
+    private final int userInFlight;
+
+    //Everything below is guarded by this.
+    private final Map<Long, GuildQueue> guilds = new HashMap<>();
+    //Guilds with queued tasks that can run another one right now, in the order they'll get a worker.
+    private final ArrayDeque<GuildQueue> ready = new ArrayDeque<>();
+    private final Map<Long, Integer> users = new HashMap<>();
+    private int queued;
+    private int running;
+    private boolean shutdown;
+
+    /**
+     * @param workers How many tasks can run at once overall.
+     * @param maxQueued How many tasks can be waiting overall.
+     * @param guildQueueSize How many tasks can be waiting per guild.
+     * @param guildConcurrency How many tasks of the same guild can run at once.
+     * @param userInFlight How many tasks of the same user can be waiting or running at once.
+     */
+    public GuildExecutor(int workers, int maxQueued, int guildQueueSize, int guildConcurrency, int userInFlight) {
+        this.maxQueued = maxQueued;
+        this.guildQueueSize = guildQueueSize;
+        this.guildConcurrency = guildConcurrency;
+        this.userInFlight = userInFlight;
+
+        ThreadFactory factory = new ThreadFactoryBuilder().setNameFormat("Mantaro Worker-%d").setDaemon(true).build();
+        for (int i = 0; i < workers; i++) {
+            factory.newThread(this::work).start();
+        }
+    }
+
+    /**
+     * Queues a task.
+     *
+     * @param shardId The shard the task came from, only used for metrics.
+     * @param guildId The guild the task belongs to.
+     * @param userId The user that caused the task.
+     * @param task The task.
+     * @return Whether it was queued, or why it wasn't. Rejected tasks never run.
+     */
+    public Result submit(int shardId, long guildId, long userId, @Nonnull Runnable task) {
+        synchronized (this) {
+            if (shutdown) {
+                return reject(Result.SHUTDOWN);
+            }
+
+            if (users.getOrDefault(userId, 0) >= userInFlight) {
+                return reject(Result.USER_BUSY);
+            }
+
+            if (queued >= maxQueued) {
+                return reject(Result.BUSY);
+            }
+
+            var guild = guilds.computeIfAbsent(guildId, GuildQueue::new);
+            if (guild.tasks.size() >= guildQueueSize) {
+                return reject(Result.GUILD_BUSY);
+            }
+
+            users.merge(userId, 1, Integer::sum);
+            enqueue(guild, new Task(shardId, userId, task));
+        }
+
+        return Result.QUEUED;
+    }
+
+    //Has to hold the lock.
+    private void enqueue(GuildQueue guild, Task task) {
+        guild.tasks.add(task);
+        queued++;
+
+        if (!guild.ready && guild.running < guildConcurrency) {
+            guild.ready = true;
+            ready.add(guild);
+            notify();
+        }
+    }
+
+    /**
+     * Stops taking tasks and waits for the queued and running ones to finish. Workers stop once there's nothing left.
+     *
+     * @return Whether everything finished in time.
+     */
+    public synchronized boolean shutdown(long timeout, @Nonnull TimeUnit unit) {
+        shutdown = true;
+        notifyAll();
+
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (queued > 0 || running > 0) {
+            long left = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (left <= 0) {
+                return false;
+            }
+
+            try {
+                wait(left);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Queues a task that must not be dropped, ignoring the queue limits.
+     *
+     * @param shardId The shard the task came from, only used for metrics.
+     * @param guildId The guild the task belongs to.
+     * @param task The task.
+     * @return False if it wasn't queued because this is shutting down.
+     */
+    public boolean execute(int shardId, long guildId, @Nonnull Runnable task) {
+        synchronized (this) {
+            if (shutdown) {
+                reject(Result.SHUTDOWN);
+                return false;
+            }
+
+            enqueue(guilds.computeIfAbsent(guildId, GuildQueue::new), new Task(shardId, NO_USER, task));
+        }
+
+        return true;
+    }
+
+    private Result reject(Result result) {
+        Metrics.GUILD_EXECUTOR_REJECTIONS.labels(result.name().toLowerCase()).inc();
+        return result;
+    }
+
+    private void work() {
+        while (true) {
+            GuildQueue guild;
+            Task task;
+            synchronized (this) {
+                while (ready.isEmpty()) {
+                    if (shutdown) {
+                        return;
+                    }
+
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+
+                guild = ready.poll();
+                task = guild.tasks.poll();
+                queued--;
+                running++;
+                guild.running++;
+
+                //Back of the line, so every other ready guild gets a go first.
+                guild.ready = !guild.tasks.isEmpty() && guild.running < guildConcurrency;
+                if (guild.ready) {
+                    ready.add(guild);
+                }
+            }
+
+            Metrics.GUILD_EXECUTOR_QUEUE_WAIT.observe((System.nanoTime() - task.queuedAt) / 1_000_000D);
+            var active = Metrics.GUILD_EXECUTOR_ACTIVE.labels(String.valueOf(task.shardId));
+            active.inc();
+            try {
+                task.runnable.run();
+            } catch (Throwable t) {
+                log.error("Uncaught exception on guild {} task", guild.id, t);
+            } finally {
+                active.dec();
+                finish(guild, task);
+            }
+        }
+    }
+
+    private synchronized void finish(GuildQueue guild, Task task) {
+        running--;
+        guild.running--;
+        users.computeIfPresent(task.userId, (id, count) -> count > 1 ? count - 1 : null);
+
+        if (guild.tasks.isEmpty()) {
+            if (guild.running == 0) {
+                guilds.remove(guild.id);
+            }
+        } else if (!guild.ready) {
+            guild.ready = true;
+            ready.add(guild);
+            notify();
+        }
+
+        //Wakes up shutdown(), and makes sure a worker gets the notify above instead of it.
+        if (shutdown) {
+            notifyAll();
+        }
+    }
+
+    public enum Result {
+        QUEUED,
+        //Too much queued overall.
+        BUSY,
+        //Too much queued on this guild.
+        GUILD_BUSY,
+        //This user already has as many tasks as they can have.
+        USER_BUSY,
+        //Shutting down.
+        SHUTDOWN;
+
+        public boolean isQueued() {
+            return this == QUEUED;
+        }
+    }
+
+    private static class GuildQueue {
+        private final long id;
+        private final ArrayDeque<Task> tasks = new ArrayDeque<>();
+        private int running;
+        private boolean ready;
+
+        private GuildQueue(long id) {
+            this.id = id;
+        }
+    }
+
+    private static class Task {
+        private final int shardId;
+        private final long userId;
+        private final Runnable runnable;
+        private final long queuedAt = System.nanoTime();
+
+        private Task(int shardId, long userId, Runnable runnable) {
+            this.shardId = shardId;
+            this.userId = userId;
+            this.runnable = runnable;
+        }
+    }
+}
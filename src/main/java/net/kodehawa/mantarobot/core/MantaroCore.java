@@ -39,6 +39,7 @@ import net.kodehawa.mantarobot.core.cache.EvictingCachePolicy;
 import net.kodehawa.mantarobot.core.command.processor.CommandProcessor;
 import net.kodehawa.mantarobot.core.listeners.MantaroListener;
 import net.kodehawa.mantarobot.core.listeners.command.CommandListener;
+import net.kodehawa.mantarobot.core.listeners.command.ExperienceAccumulator;
 import net.kodehawa.mantarobot.core.listeners.events.PostLoadEvent;
 import net.kodehawa.mantarobot.core.listeners.events.PreLoadEvent;
 import net.kodehawa.mantarobot.core.listeners.operations.InteractiveOperations;
@@ -81,6 +82,8 @@ public class MantaroCore {
     private final ExecutorService threadPool = Executors.newCachedThreadPool(
             new ThreadFactoryBuilder().setNameFormat("Mantaro Thread-%d").build()
     );
+    private final GuildExecutor guildExecutor;
+    private final ExperienceAccumulator experienceAccumulator;
     private final Config config;
     private final boolean isDebug;
     private String commandsPackage;
@@ -92,6 +95,11 @@ public class MantaroCore {
     public MantaroCore(Config config, boolean isDebug) {
         this.config = config;
         this.isDebug = isDebug;
+        this.guildExecutor = new GuildExecutor(
+                config.getCommandWorkers(), config.getCommandQueueSize(), config.getGuildCommandQueueSize(),
+                config.getGuildCommandConcurrency(), config.getUserCommandsInFlight()
+        );
+        this.experienceAccumulator = new ExperienceAccumulator(config.getExperienceFlushIntervalMs());
         Metrics.THREAD_POOL_COLLECTOR.add("mantaro-executor", threadPool);
     }
 
@@ -213,8 +221,8 @@ public class MantaroCore {
                             shardStartListener
                     )
                     .addEventListenerProviders(List.of(
-                            id -> new CommandListener(commandProcessor, threadPool, getShard(id).getMessageCache()),
-                            id -> new MantaroListener(threadPool, getShard(id).getMessageCache()),
+                            id -> new CommandListener(commandProcessor, guildExecutor, experienceAccumulator, getShard(id).getMessageCache()),
+                            id -> new MantaroListener(guildExecutor, getShard(id).getMessageCache()),
                             id -> getShard(id).getListener()
                     ))
                     .setEventManagerProvider(id -> getShard(id).getManager())
@@ -384,6 +392,14 @@ public class MantaroCore {
         loadState = POSTLOAD;
     }
 
+    public ExperienceAccumulator getExperienceAccumulator() {
+        return experienceAccumulator;
+    }
+
+    public GuildExecutor getGuildExecutor() {
+        return guildExecutor;
+    }
+
     public ShardManager getShardManager() {
         return shardManager;
     }
@@ -417,9 +433,10 @@ public class MantaroCore {
 
         // Get the amount of clusters
         int clusterTotal = 1;
-        try(var jedis = MantaroData.getDefaultJedisPool().getResource()) {
-            var clusters = jedis.hgetAll("node-stats-" + config.getClientId());
-            clusterTotal = clusters.size();
+        try {
+            clusterTotal = MantaroData.redis().call("node_stats_count", jedis -> jedis.hlen("node-stats-" + config.getClientId())).intValue();
+        } catch (Exception e) {
+            log.warn("Couldn't get the amount of nodes from Redis", e);
         }
 
         log.info("Not aware of anything holding off boot now, considering bot as started up");
@@ -454,13 +471,10 @@ public class MantaroCore {
             try {
                 var serverCount = 0L;
                 //Fetch actual guild count.
-                try(var jedis = MantaroData.getDefaultJedisPool().getResource()) {
-                    var stats = jedis.hgetAll("shardstats-" + config.getClientId());
-
-                    for (var shards : stats.entrySet()) {
-                        var json = new JSONObject(shards.getValue());
-                        serverCount += json.getLong("guild_count");
-                    }
+                var stats = MantaroData.redis().hgetAll("shard_stats_read", "shardstats-" + config.getClientId());
+                for (var shards : stats.entrySet()) {
+                    var json = new JSONObject(shards.getValue());
+                    serverCount += json.getLong("guild_count");
                 }
 
                 // This will NOP if the token is null.
@@ -1,7 +1,10 @@
 package net.kodehawa.mantarobot.core.cache;
 
+import io.prometheus.client.Gauge;
+import net.dv8tion.jda.api.JDA;
 import net.dv8tion.jda.api.entities.Member;
 import net.dv8tion.jda.api.utils.MemberCachePolicy;
+import net.kodehawa.mantarobot.utils.exporters.Metrics;
 import org.jetbrains.annotations.NotNull;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -12,19 +15,24 @@ import java.util.function.Supplier;
 
 public class EvictingCachePolicy implements MemberCachePolicy {
     private static final Logger log = LoggerFactory.getLogger(EvictingCachePolicy.class);
-    
+
     private final EvictionStrategy[] strategies;
-    
+    private final Gauge.Child[] sizes;
+
     public EvictingCachePolicy(List<Integer> shardIds, Supplier<EvictionStrategy> strategySupplier) {
         var strategy = new EvictionStrategy[Collections.max(shardIds) + 1];
+        var size = new Gauge.Child[strategy.length];
 
         for (var id : shardIds) {
             strategy[id] = strategySupplier.get();
+            size[id] = Metrics.MEMBER_CACHE_SIZE.labels(String.valueOf(id));
+            Metrics.MEMBER_CACHE_CAPACITY.labels(String.valueOf(id)).set(strategy[id].capacity());
         }
 
         this.strategies = strategy;
+        this.sizes = size;
     }
-    
+
     @Override
     public boolean cacheMember(@NotNull Member member) {
         var voiceState = member.getVoiceState();
@@ -32,7 +40,6 @@ public class EvictingCachePolicy implements MemberCachePolicy {
             return true;
         }
 
-        long evict;
         // This can be called from ws threads or requester threads
         var shard = member.getJDA().getShardInfo().getShardId();
         var strategy = strategies[shard];
@@ -42,27 +49,36 @@ public class EvictingCachePolicy implements MemberCachePolicy {
             return true;
         }
 
-        //noinspection SynchronizationOnLocalVariableOrMethodParameter
-        synchronized(strategy) {
-            evict = strategy.cache(member.getIdLong());
-        }
+        // The strategy does its own (striped) locking
+        var evict = strategy.cache(member.getIdLong(), member.getGuild().getIdLong());
+        sizes[shard].set(strategy.size());
 
         // The strategy contains only members that were added to this shard
         // So removing shouldn't fail
-        if (evict != EvictionStrategy.NO_REMOVAL_NEEDED) {
-            member.getJDA().getGuildCache().forEach(g -> {
-                var evicted = g.getMemberById(evict);
-                if (evicted == null) {
-                    return;
-                }
-
-                // Only remove if voice state is null, or channel in the voice state is null.
-                if (evicted.getVoiceState() == null || evicted.getVoiceState().getChannel() == null) {
-                    g.unloadMember(evict);
-                }
-            });
+        if (evict != null) {
+            unload(member.getJDA(), evict);
         }
 
         return true;
     }
+
+    // Only the guilds the member was used on, instead of every guild on the shard.
+    private static void unload(JDA jda, EvictionStrategy.Eviction evict) {
+        for (var guildId : evict.getGuildIds()) {
+            var guild = jda.getGuildById(guildId);
+            if (guild == null) {
+                continue;
+            }
+
+            var evicted = guild.getMemberById(evict.getId());
+            if (evicted == null) {
+                continue;
+            }
+
+            // Only remove if voice state is null, or channel in the voice state is null.
+            if (evicted.getVoiceState() == null || evicted.getVoiceState().getChannel() == null) {
+                guild.unloadMember(evict.getId());
+            }
+        }
+    }
 }
@@ -3,43 +3,64 @@ package net.kodehawa.mantarobot.core.cache;
 import javax.annotation.CheckReturnValue;
 import javax.annotation.Nonnegative;
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
 public interface EvictionStrategy {
-    long NO_REMOVAL_NEEDED = 0;
-    
+    //Segments leastRecentlyUsed splits the members into, each with its own lock.
+    int DEFAULT_SEGMENTS = 16;
+
     /**
-     * Adds a member to the cache, returning the ID of the member that should
-     * be removed, or {@code 0} if not needed.
+     * Marks a member as just used on a guild, returning the member that should
+     * be removed to make room for it, or {@code null} if not needed.
      *
      * @param id ID to add.
+     * @param guildId ID of the guild the member was used on.
      *
-     * @return ID to remove.
+     * @return Member to remove, along with every guild it was used on.
+     */
+    @Nullable
+    @CheckReturnValue
+    Eviction cache(long id, long guildId);
+
+    /**
+     * @return Amount of members being tracked right now.
+     */
+    @CheckReturnValue
+    int size();
+
+    /**
+     * @return Max amount of members this tracks before evicting.
      */
     @CheckReturnValue
-    long cache(long id);
-    
+    int capacity();
+
     @Nonnull
     @CheckReturnValue
     static EvictionStrategy leastRecentlyUsed(@Nonnegative int size) {
         if (size < 1)
             throw new IllegalArgumentException("Size must be at least 1");
 
-        return new EvictionStrategy() {
-            private final long[] ids = new long[size];
-            private int index;
-            
-            @Override
-            public long cache(long id) {
-                var idx = (index = inc(index, size));
-                var old = ids[idx];
-                ids[idx] = id;
-                return old;
-            }
-        };
+        return new SegmentedLruStrategy(size, DEFAULT_SEGMENTS);
     }
-    
-    private static int inc(int i, int modulus) {
-        if (++i >= modulus) i = 0;
-        return i;
+
+    /**
+     * A member that has to be removed from the cache, and the guilds it has to be removed from.
+     */
+    final class Eviction {
+        private final long id;
+        private final long[] guildIds;
+
+        Eviction(long id, long[] guildIds) {
+            this.id = id;
+            this.guildIds = guildIds;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public long[] getGuildIds() {
+            return guildIds;
+        }
     }
 }
@@ -0,0 +1,163 @@
+package net.kodehawa.mantarobot.core.cache;
+
+import io.prometheus.client.Counter;
+import net.kodehawa.mantarobot.core.listeners.entities.CachedMessage;
+import net.kodehawa.mantarobot.utils.exporters.Metrics;
+
+import javax.annotation.CheckReturnValue;
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Last messages seen on a shard, for edit and delete logs.
+ * <br>Kept in flat arrays, with the content as UTF-8 bytes and an open addressing index of message ids, so an entry
+ * costs little more than its content. Once full, the oldest message makes room for the new one.
+ */
+public class MessageCache {
+    private static final Counter.Child HITS = Metrics.MESSAGE_CACHE_REQUESTS.labels("hit");
+    private static final Counter.Child MISSES = Metrics.MESSAGE_CACHE_REQUESTS.labels("miss");
+    //Message ids are never 0, so it marks free slots (on both the ring and the index).
+    private static final long EMPTY = 0;
+
+    //The ring: slot i holds a message, head is where the next one goes.
+    private final long[] ids;
+    private final long[] guildIds;
+    private final long[] authorIds;
+    private final byte[][] contents;
+    private int head;
+
+    //Message id -> slot on the ring. Twice the size of the ring (at least), so probes stay short.
+    private final long[] indexKeys;
+    private final int[] indexSlots;
+    private final int mask;
+
+    public MessageCache(@Nonnegative int size) {
+        if (size < 1)
+            throw new IllegalArgumentException("Size must be at least 1");
+
+        this.ids = new long[size];
+        this.guildIds = new long[size];
+        this.authorIds = new long[size];
+        this.contents = new byte[size][];
+
+        int indexSize = Integer.highestOneBit(size) << 2;
+        this.indexKeys = new long[indexSize];
+        this.indexSlots = new int[indexSize];
+        this.mask = indexSize - 1;
+    }
+
+    /**
+     * Adds a message, or replaces its content if it's already here.
+     */
+    public synchronized void put(long id, long guildId, long authorId, @Nonnull String content) {
+        var bytes = content.getBytes(StandardCharsets.UTF_8);
+        int position = find(id);
+        if (position >= 0) {
+            contents[indexSlots[position]] = bytes;
+            return;
+        }
+
+        int slot = head;
+        head = head + 1 == ids.length ? 0 : head + 1;
+        if (ids[slot] != EMPTY) {
+            remove(find(ids[slot]));
+        }
+
+        ids[slot] = id;
+        guildIds[slot] = guildId;
+        authorIds[slot] = authorId;
+        contents[slot] = bytes;
+        insert(id, slot);
+    }
+
+    /**
+     * @return The message, or null if it isn't here.
+     */
+    @Nullable
+    @CheckReturnValue
+    public CachedMessage get(long id) {
+        long guildId;
+        long authorId;
+        byte[] content;
+        synchronized (this) {
+            int position = find(id);
+            if (position < 0) {
+                MISSES.inc();
+                return null;
+            }
+
+            int slot = indexSlots[position];
+            guildId = guildIds[slot];
+            authorId = authorIds[slot];
+            content = contents[slot];
+        }
+
+        HITS.inc();
+        return new CachedMessage(guildId, authorId, new String(content, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Drops a message, if it's here.
+     */
+    public synchronized void invalidate(long id) {
+        int position = find(id);
+        if (position < 0) {
+            return;
+        }
+
+        int slot = indexSlots[position];
+        remove(position);
+        ids[slot] = EMPTY;
+        contents[slot] = null;
+    }
+
+    private int find(long id) {
+        for (int i = hash(id); indexKeys[i] != EMPTY; i = (i + 1) & mask) {
+            if (indexKeys[i] == id) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    private void insert(long id, int slot) {
+        int i = hash(id);
+        while (indexKeys[i] != EMPTY) {
+            i = (i + 1) & mask;
+        }
+
+        indexKeys[i] = id;
+        indexSlots[i] = slot;
+    }
+
+    //Linear probing can't leave holes in a run, so move back whatever would be unreachable after this one's gone.
+    private void remove(int position) {
+        int hole = position;
+        int i = position;
+        while (true) {
+            i = (i + 1) & mask;
+            var key = indexKeys[i];
+            if (key == EMPTY) {
+                break;
+            }
+
+            int home = hash(key);
+            //Stays if its home is cyclically in (hole, i].
+            boolean reachable = hole <= i ? (hole < home && home <= i) : (hole < home || home <= i);
+            if (!reachable) {
+                indexKeys[hole] = key;
+                indexSlots[hole] = indexSlots[i];
+                hole = i;
+            }
+        }
+
+        indexKeys[hole] = EMPTY;
+    }
+
+    private int hash(long id) {
+        return Snowflakes.hash(id) & mask;
+    }
+}
@@ -0,0 +1,103 @@
+package net.kodehawa.mantarobot.core.cache;
+
+import io.prometheus.client.Counter;
+import net.kodehawa.mantarobot.utils.exporters.Metrics;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Least recently used eviction, split in segments by member id so threads caching different members
+ * rarely wait on each other. Each segment is an exact LRU over its share of the capacity.
+ * <br>Every member keeps the guilds it was used on, so evicting it only has to look at those.
+ */
+class SegmentedLruStrategy implements EvictionStrategy {
+    private static final Counter.Child HITS = Metrics.MEMBER_CACHE_REQUESTS.labels("hit");
+    private static final Counter.Child MISSES = Metrics.MEMBER_CACHE_REQUESTS.labels("miss");
+
+    private final Segment[] segments;
+    private final AtomicInteger size = new AtomicInteger();
+    private final int capacity;
+
+    SegmentedLruStrategy(int capacity, int segments) {
+        //Every segment needs room for at least one member.
+        int count = Math.max(1, Math.min(segments, capacity));
+        this.segments = new Segment[count];
+        for (int i = 0; i < count; i++) {
+            this.segments[i] = new Segment(capacity / count + (i < capacity % count ? 1 : 0));
+        }
+
+        this.capacity = capacity;
+    }
+
+    @Override
+    public Eviction cache(long id, long guildId) {
+        var segment = segments[segmentFor(id)];
+        //noinspection SynchronizationOnLocalVariableOrMethodParameter
+        synchronized (segment) {
+            return segment.cache(id, guildId);
+        }
+    }
+
+    @Override
+    public int size() {
+        return size.get();
+    }
+
+    @Override
+    public int capacity() {
+        return capacity;
+    }
+
+    private int segmentFor(long id) {
+        return Math.floorMod(Snowflakes.hash(id), segments.length);
+    }
+
+    private class Segment {
+        //Access order: the first entry is the least recently used one.
+        private final LinkedHashMap<Long, long[]> members = new LinkedHashMap<>(16, 0.75f, true);
+        private final int capacity;
+
+        private Segment(int capacity) {
+            this.capacity = capacity;
+        }
+
+        private Eviction cache(long id, long guildId) {
+            var guilds = members.get(id);
+            if (guilds != null) {
+                HITS.inc();
+                if (!contains(guilds, guildId)) {
+                    guilds = Arrays.copyOf(guilds, guilds.length + 1);
+                    guilds[guilds.length - 1] = guildId;
+                    members.put(id, guilds);
+                }
+
+                return null;
+            }
+
+            MISSES.inc();
+            members.put(id, new long[] { guildId });
+            if (members.size() <= capacity) {
+                size.incrementAndGet();
+                return null;
+            }
+
+            var iterator = members.entrySet().iterator();
+            var eldest = iterator.next();
+            iterator.remove();
+            Metrics.MEMBER_CACHE_EVICTIONS.inc();
+            return new Eviction(eldest.getKey(), eldest.getValue());
+        }
+
+        private boolean contains(long[] guilds, long guildId) {
+            for (var guild : guilds) {
+                if (guild == guildId) {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+    }
+}
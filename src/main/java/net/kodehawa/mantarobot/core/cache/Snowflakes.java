@@ -0,0 +1,13 @@
+package net.kodehawa.mantarobot.core.cache;
+
+final class Snowflakes {
+    private Snowflakes() { }
+
+    /**
+     * Hashes a snowflake id, for spreading ids over buckets.
+     */
+    static int hash(long id) {
+        //The low bits of a snowflake are a per-process counter, mix them up a bit.
+        return (int) ((id * 0x9E3779B97F4A7C15L) >>> 32);
+    }
+}
@@ -13,10 +13,13 @@ import net.kodehawa.mantarobot.core.command.argument.split.StringSplitter;
 import net.kodehawa.mantarobot.core.modules.commands.i18n.I18nContext;
 import net.kodehawa.mantarobot.data.Config;
 import net.kodehawa.mantarobot.data.MantaroData;
-import net.kodehawa.mantarobot.db.ManagedDatabase;
+import net.kodehawa.mantarobot.db.EntitySession;
+import net.kodehawa.mantarobot.db.ManagedObject;
 import net.kodehawa.mantarobot.db.entities.DBGuild;
 import net.kodehawa.mantarobot.db.entities.DBUser;
+import net.kodehawa.mantarobot.db.entities.Marriage;
 import net.kodehawa.mantarobot.db.entities.Player;
+import net.kodehawa.mantarobot.db.entities.helpers.UserData;
 
 import javax.annotation.CheckReturnValue;
 import javax.annotation.Nonnull;
@@ -27,7 +30,6 @@ import java.util.List;
 import java.util.Optional;
 
 public class NewContext {
-    private final ManagedDatabase managedDatabase = MantaroData.db();
     private final Config config = MantaroData.config().get();
 
     private static final StringSplitter SPLITTER = new StringSplitter();
@@ -35,23 +37,33 @@ public class NewContext {
     private final Message message;
     private final I18nContext i18n;
     private final Arguments args;
+    private final EntitySession session;
 
-    private NewContext(@Nonnull Message message, @Nonnull I18nContext i18n, @Nonnull Arguments args) {
+    private NewContext(@Nonnull Message message, @Nonnull I18nContext i18n, @Nonnull Arguments args, @Nonnull EntitySession session) {
         this.message = message;
         this.i18n = i18n;
         this.args = args;
+        this.session = session;
     }
 
     public NewContext(@Nonnull Message message, @Nonnull I18nContext i18n, @Nonnull String contentAfterPrefix) {
-        this(message, i18n, new Arguments(SPLITTER.split(contentAfterPrefix), 0));
+        this(message, i18n, contentAfterPrefix, EntitySession.detached(MantaroData.db()));
+    }
+
+    public NewContext(@Nonnull Message message, @Nonnull I18nContext i18n, @Nonnull String contentAfterPrefix, @Nonnull EntitySession session) {
+        this(message, i18n, new Arguments(SPLITTER.split(contentAfterPrefix), 0), session);
     }
 
     public Arguments arguments() {
         return args;
     }
 
+    public EntitySession getEntitySession() {
+        return session;
+    }
+
     public NewContext snapshot() {
-        return new NewContext(message, i18n, args.snapshot());
+        return new NewContext(message, i18n, args.snapshot(), session);
     }
 
     /**
@@ -330,51 +342,65 @@ public class NewContext {
     }
 
     public DBGuild getDBGuild() {
-        return managedDatabase.getGuild(getGuild());
+        return session.getGuild(getGuild().getId());
     }
 
     public DBUser getDBUser() {
-        return managedDatabase.getUser(getUser());
+        return session.getUser(getUser().getId());
     }
 
     public DBUser getDBUser(User user) {
-        return managedDatabase.getUser(user);
+        return session.getUser(user.getId());
     }
 
     public DBUser getDBUser(Member member) {
-        return managedDatabase.getUser(member);
+        return session.getUser(member.getId());
     }
 
     public DBUser getDBUser(String id) {
-        return managedDatabase.getUser(id);
+        return session.getUser(id);
     }
 
     public Player getPlayer() {
-        return managedDatabase.getPlayer(getUser());
+        return session.getPlayer(getUser().getId());
     }
 
     public Player getPlayer(User user) {
-        return managedDatabase.getPlayer(user);
+        return session.getPlayer(user.getId());
     }
 
     public Player getPlayer(Member member) {
-        return managedDatabase.getPlayer(member);
+        return session.getPlayer(member.getId());
     }
 
     public Player getPlayer(String id) {
-        return managedDatabase.getPlayer(id);
+        return session.getPlayer(id);
     }
 
     public SeasonPlayer getSeasonPlayer() {
-        return managedDatabase.getPlayerForSeason(getUser(), config.getCurrentSeason());
+        return session.getPlayerForSeason(getUser().getId(), config.getCurrentSeason());
     }
 
     public SeasonPlayer getSeasonPlayer(User user) {
-        return managedDatabase.getPlayerForSeason(user, config.getCurrentSeason());
+        return session.getPlayerForSeason(user.getId(), config.getCurrentSeason());
     }
 
     public SeasonPlayer getSeasonPlayer(Member member) {
-        return managedDatabase.getPlayerForSeason(member, config.getCurrentSeason());
+        return session.getPlayerForSeason(member.getId(), config.getCurrentSeason());
+    }
+
+    public Marriage getMarriage(UserData userData) {
+        return session.getMarriage(userData.getMarriageId());
+    }
+
+    /**
+     * Makes the next lookup of this entity load it again, instead of handing out the copy this command already got.
+     * Only needed if something else might have changed it, saving it from here already takes care of that.
+     *
+     * @param object The entity to refresh.
+     */
+    public void refresh(ManagedObject object) {
+        session.refresh(object);
     }
 
     public MantaroBot getBot() {
@@ -6,14 +6,21 @@ import javax.annotation.Nonnull;
 /**
  * Represents a part of the result of splitting a string.
  * <br>Stores both the value and the previous whitespace, useful to rebuild the original string.
+ * <br>It's only a view over the original string: the value is copied out the first time it's asked for,
+ * so tokens nobody looks at cost nothing.
  */
 public final class SplitString {
-    private final String value;
-    private final String previousWhitespace;
+    private final String source;
+    private final int whitespaceStart;
+    private final int start;
+    private final int end;
+    private String value;
 
-    SplitString(String value, String previousWhitespace) {
-        this.value = value;
-        this.previousWhitespace = previousWhitespace;
+    SplitString(String source, int whitespaceStart, int start, int end) {
+        this.source = source;
+        this.whitespaceStart = whitespaceStart;
+        this.start = start;
+        this.end = end;
     }
 
     /**
@@ -25,7 +32,11 @@ public final class SplitString {
     @Nonnull
     @CheckReturnValue
     public String getValue() {
-        return value;
+        var v = value;
+        if (v == null) {
+            value = v = source.substring(start, end);
+        }
+        return v;
     }
 
     /**
@@ -36,7 +47,7 @@ public final class SplitString {
     @Nonnull
     @CheckReturnValue
     public String getPreviousWhitespace() {
-        return previousWhitespace;
+        return source.substring(whitespaceStart, start);
     }
 
     /**
@@ -47,17 +58,32 @@ public final class SplitString {
     @Nonnull
     @CheckReturnValue
     public String getRawValue() {
-        return previousWhitespace + value;
+        return source.substring(whitespaceStart, end);
+    }
+
+    /**
+     * The length of the value, without copying it.
+     *
+     * @return The length of the value.
+     */
+    @CheckReturnValue
+    public int length() {
+        return end - start;
     }
 
     @Override
     public int hashCode() {
-        return value.hashCode();
+        return getValue().hashCode();
     }
 
     @Override
     public boolean equals(Object obj) {
-        return obj instanceof SplitString && ((SplitString) obj).value.equals(value);
+        if (!(obj instanceof SplitString)) {
+            return false;
+        }
+
+        var other = (SplitString) obj;
+        return length() == other.length() && source.regionMatches(start, other.source, other.start, length());
     }
 
     @Override
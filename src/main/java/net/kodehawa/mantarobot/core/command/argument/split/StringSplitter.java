@@ -3,7 +3,10 @@ package net.kodehawa.mantarobot.core.command.argument.split;
 import javax.annotation.CheckReturnValue;
 import javax.annotation.Nonnegative;
 import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Objects;
+import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 /**
@@ -52,6 +55,7 @@ public class StringSplitter {
     /**
      * Splits a string, returning an array of {@link SplitString split strings}, which allow
      * getting the previous delimiter on each string.
+     * <br>The split strings are views over the original one, nothing is copied until a value is asked for.
      *
      * @param string String to split.
      *
@@ -60,18 +64,62 @@ public class StringSplitter {
     @Nonnull
     @CheckReturnValue
     public SplitString[] split(@Nonnull String string) {
-        String[] values = pattern.split(string);
-        int remove = values.length > 0 && values[0].isEmpty() ? 1 : 0; //1 if first string is empty
-        int effectiveLength = values.length - remove;
-        SplitString[] strings = new SplitString[effectiveLength];
-        String lookup = string;
-        for(int i = remove; i < values.length; i++) {
-            String value = values[i];
-            int startIdx = lookup.indexOf(value);
-            strings[i - remove] = new SplitString(value, lookup.substring(0, startIdx));
-            lookup = lookup.substring(startIdx + value.length());
+        List<SplitString> strings = new ArrayList<>();
+        //End of the last value, everything between it and the next value is its delimiter.
+        int lastEnd = 0;
+        int start = 0;
+        if (pattern == DEFAULT_PATTERN) {
+            //Same as \s+, without going through the regex engine.
+            int length = string.length();
+            int i = 0;
+            while (i < length) {
+                if (!isWhitespace(string.charAt(i))) {
+                    i++;
+                    continue;
+                }
+
+                lastEnd = add(strings, string, lastEnd, start, i);
+                while (i < length && isWhitespace(string.charAt(i))) {
+                    i++;
+                }
+                start = i;
+            }
+        } else {
+            Matcher matcher = pattern.matcher(string);
+            while (matcher.find()) {
+                //Like Pattern#split, a zero-width match at the beginning doesn't split anything.
+                if (matcher.end() == 0) {
+                    continue;
+                }
+
+                lastEnd = add(strings, string, lastEnd, start, matcher.start());
+                start = matcher.end();
+            }
+        }
+
+        add(strings, string, lastEnd, start, string.length());
+
+        //Like Pattern#split, trailing empty strings are dropped.
+        int size = strings.size();
+        while (size > 0 && strings.get(size - 1).length() == 0) {
+            size--;
+        }
+
+        return strings.subList(0, size).toArray(new SplitString[0]);
+    }
+
+    private static int add(List<SplitString> strings, String string, int lastEnd, int start, int end) {
+        //A leading empty string (when the string starts with a delimiter) is dropped, its delimiter goes to the next value.
+        if (start == 0 && end == 0) {
+            return lastEnd;
         }
-        return strings;
+
+        strings.add(new SplitString(string, lastEnd, start, end));
+        return end;
+    }
+
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
     }
 
     /**
@@ -20,56 +20,80 @@ import io.prometheus.client.Histogram;
 import net.dv8tion.jda.api.events.message.guild.GuildMessageReceivedEvent;
 import net.kodehawa.mantarobot.core.CommandRegistry;
 import net.kodehawa.mantarobot.data.MantaroData;
+import net.kodehawa.mantarobot.db.EntitySession;
+import net.kodehawa.mantarobot.db.QueryMetrics;
 
-import static net.kodehawa.mantarobot.utils.StringUtils.splitArgs;
+import static net.kodehawa.mantarobot.utils.StringUtils.splitFirst;
 
 public class CommandProcessor {
     public static final CommandRegistry REGISTRY = new CommandRegistry();
+    //Users running a command on this node, so experience isn't given in the middle of one.
+    public static final InFlightCommands IN_FLIGHT = new InFlightCommands();
     private static final Histogram commandTime = Histogram.build()
             .name("command_time").help("Time it takes for a command to be ran.")
             .register();
 
+    /**
+     * Checks whether a message could be a command, without copying the message or going to the database, so it can run
+     * on the gateway thread. Guilds whose custom prefix isn't known on this node yet always pass: loading the config
+     * when the message gets to {@link #run(GuildMessageReceivedEvent)} makes it known.
+     *
+     * @param event The message.
+     * @return False if the message surely isn't a command.
+     */
+    public boolean isCandidate(GuildMessageReceivedEvent event) {
+        String content = event.getMessage().getContentRaw();
+        if (PrefixMatcher.match(content, MantaroData.config().get().prefix) != null) {
+            return true;
+        }
+
+        String customPrefix = MantaroData.db().peekGuildCustomPrefix(event.getGuild().getIdLong());
+        return customPrefix == null || PrefixMatcher.startsWith(content, customPrefix);
+    }
+
     public boolean run(GuildMessageReceivedEvent event) {
+        //Entities loaded while handling this message are shared until we're done with it.
+        try (var session = EntitySession.open(MantaroData.db())) {
+            return run(event, session);
+        } finally {
+            QueryMetrics.clearCommand();
+        }
+    }
+
+    private boolean run(GuildMessageReceivedEvent event, EntitySession session) {
         //When did we start processing this command?...
         long start = System.currentTimeMillis();
         //The command executed, in raw form.
         String rawCmd = event.getMessage().getContentRaw();
-        //Mantaro prefixes.
-        String[] prefix = MantaroData.config().get().prefix;
-        //Guild-specific prefix.
-        String customPrefix = MantaroData.db().getGuild(event.getGuild()).getData().getGuildCustomPrefix();
-        //What prefix did this person use.
-        String usedPrefix = null;
-        //Lower-case raw cmd check, only used for prefix checking.
-        String lowerRawCmd = rawCmd.toLowerCase();
+        //What prefix did this person use. Mantaro prefixes go first.
+        String usedPrefix = PrefixMatcher.match(rawCmd, MantaroData.config().get().prefix);
 
-        for (String s : prefix) {
-            if (lowerRawCmd.startsWith(s)) {
-                usedPrefix = s;
+        if (usedPrefix == null) {
+            //Guild-specific prefix.
+            String customPrefix = session.getGuildCommandConfig(event.getGuild().getId()).getGuildCustomPrefix();
+            if (!PrefixMatcher.startsWith(rawCmd, customPrefix)) {
+                return false;
             }
-        }
 
-        if (usedPrefix != null && lowerRawCmd.startsWith(usedPrefix.toLowerCase())) {
-            rawCmd = rawCmd.substring(usedPrefix.length());
-        } else if (customPrefix != null && lowerRawCmd.startsWith(customPrefix.toLowerCase())) {
-            rawCmd = rawCmd.substring(customPrefix.length());
             usedPrefix = customPrefix;
-        } else if (usedPrefix == null) {
-            return false;
         }
 
+        String[] parts = splitFirst(rawCmd, usedPrefix.length());
+        String cmdName = parts[0], content = parts[1];
+        //So slow queries can be traced back to the command that ran them.
+        QueryMetrics.setCommand(cmdName);
+
         // This could be done using a lock
         // But that would be a little too blocking IMO.
         // So just set a flag.
-        try (var jedis = MantaroData.getDefaultJedisPool().getResource()) {
-            jedis.set("commands-running-" + event.getAuthor().getId(), String.valueOf(1));
+        var userId = event.getAuthor().getIdLong();
+        IN_FLIGHT.start(userId);
+        try {
+            REGISTRY.process(event, session, cmdName, content, usedPrefix);
+        } finally {
+            IN_FLIGHT.finish(userId);
         }
 
-        String[] parts = splitArgs(rawCmd, 2);
-        String cmdName = parts[0], content = parts[1];
-
-        REGISTRY.process(event, cmdName, content, usedPrefix);
-
         long end = System.currentTimeMillis();
         commandTime.observe(end - start);
 
@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2016-2020 David Rubio Escares / Kodehawa
+ *
+ *  Mantaro is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  Mantaro is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro.  If not, see http://www.gnu.org/licenses/
+ */
+
+package net.kodehawa.mantarobot.core.command.processor;
+
+import net.kodehawa.mantarobot.utils.exporters.Metrics;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps track of which users are running a command on this node.
+ * <br>A user's messages on a guild are always handled by the node running that guild's shard, so this doesn't need
+ * to be shared between nodes. Entries older than the expiry are treated as gone, in case something never finished.
+ */
+public class InFlightCommands {
+    private static final long EXPIRY_NANOS = TimeUnit.MINUTES.toNanos(5);
+
+    private final Map<Long, InFlight> running = new ConcurrentHashMap<>();
+
+    /**
+     * Marks a command as running for this user. Every call has to be followed by a {@link #finish(long)}.
+     */
+    public void start(long userId) {
+        long now = System.nanoTime();
+        running.compute(userId, (id, current) ->
+                current == null || current.isExpired(now) ? new InFlight(1, now) : new InFlight(current.count + 1, now)
+        );
+    }
+
+    public void finish(long userId) {
+        running.computeIfPresent(userId, (id, current) -> current.count > 1 ? new InFlight(current.count - 1, current.since) : null);
+    }
+
+    /**
+     * @return Whether this user has a command running.
+     */
+    public boolean isRunning(long userId) {
+        var current = running.get(userId);
+        if (current == null) {
+            return false;
+        }
+
+        if (current.isExpired(System.nanoTime())) {
+            running.remove(userId, current);
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Checks whether something can run for this user alongside their commands, counting it as rejected if not.
+     *
+     * @param userId The user.
+     * @param what What wanted to run, for metrics.
+     * @return True if no command is running for this user.
+     */
+    public boolean tryRunAlongside(long userId, String what) {
+        if (isRunning(userId)) {
+            Metrics.IN_FLIGHT_REJECTIONS.labels(what).inc();
+            return false;
+        }
+
+        return true;
+    }
+
+    private static class InFlight {
+        private final int count;
+        //Last time a command started, the entry expires counting from it.
+        private final long since;
+
+        private InFlight(int count, long since) {
+            this.count = count;
+            this.since = since;
+        }
+
+        private boolean isExpired(long now) {
+            return now - since > EXPIRY_NANOS;
+        }
+    }
+}
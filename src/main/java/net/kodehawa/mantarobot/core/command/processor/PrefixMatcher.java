@@ -0,0 +1,49 @@
+/*
+ * Copyright (C) 2016-2020 David Rubio Escares / Kodehawa
+ *
+ *  Mantaro is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  Mantaro is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro.  If not, see http://www.gnu.org/licenses/
+ */
+
+package net.kodehawa.mantarobot.core.command.processor;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Checks messages for command prefixes without copying or lower-casing them, so it's fine to run for every message
+ * straight on the gateway thread. Prefixes are matched ignoring case.
+ */
+public final class PrefixMatcher {
+    private PrefixMatcher() { }
+
+    /**
+     * @param content The raw message content.
+     * @param prefixes The prefixes to look for.
+     * @return The last of the prefixes the content starts with, or null if it starts with none.
+     */
+    @Nullable
+    public static String match(@Nonnull String content, @Nonnull String[] prefixes) {
+        String matched = null;
+        for (String prefix : prefixes) {
+            if (startsWith(content, prefix)) {
+                matched = prefix;
+            }
+        }
+
+        return matched;
+    }
+
+    public static boolean startsWith(@Nonnull String content, @Nullable String prefix) {
+        return prefix != null && !prefix.isEmpty() && content.regionMatches(true, 0, prefix, 0, prefix.length());
+    }
+}
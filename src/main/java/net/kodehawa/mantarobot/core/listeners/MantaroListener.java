@@ -16,13 +16,13 @@
 
 package net.kodehawa.mantarobot.core.listeners;
 
-import com.google.common.cache.Cache;
 import com.google.common.cache.CacheLoader;
 import net.dv8tion.jda.api.EmbedBuilder;
 import net.dv8tion.jda.api.JDA;
 import net.dv8tion.jda.api.MessageBuilder;
 import net.dv8tion.jda.api.entities.*;
 import net.dv8tion.jda.api.events.*;
+import net.dv8tion.jda.api.events.guild.GenericGuildEvent;
 import net.dv8tion.jda.api.events.guild.GuildJoinEvent;
 import net.dv8tion.jda.api.events.guild.GuildLeaveEvent;
 import net.dv8tion.jda.api.events.guild.member.GuildMemberJoinEvent;
@@ -41,9 +41,10 @@ import net.kodehawa.mantarobot.commands.BirthdayCmd;
 import net.kodehawa.mantarobot.commands.currency.TextChannelGround;
 import net.kodehawa.mantarobot.commands.custom.EmbedJSON;
 import net.kodehawa.mantarobot.commands.custom.legacy.DynamicModifiers;
+import net.kodehawa.mantarobot.core.GuildExecutor;
 import net.kodehawa.mantarobot.core.MantaroCore;
 import net.kodehawa.mantarobot.core.MantaroEventManager;
-import net.kodehawa.mantarobot.core.listeners.entities.CachedMessage;
+import net.kodehawa.mantarobot.core.cache.MessageCache;
 import net.kodehawa.mantarobot.data.Config;
 import net.kodehawa.mantarobot.data.MantaroData;
 import net.kodehawa.mantarobot.db.ManagedDatabase;
@@ -66,8 +67,6 @@ import java.time.OffsetDateTime;
 import java.util.Arrays;
 import java.util.EnumSet;
 import java.util.List;
-import java.util.Optional;
-import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.regex.Pattern;
 
@@ -79,8 +78,8 @@ public class MantaroListener implements EventListener {
     private final ManagedDatabase db = MantaroData.db();
     private final DateFormat df = new SimpleDateFormat("HH:mm:ss");
     private final SecureRandom rand = new SecureRandom();
-    private final ExecutorService threadPool;
-    private final Cache<Long, Optional<CachedMessage>> messageCache;
+    private final GuildExecutor executor;
+    private final MessageCache messageCache;
 
     private final Pattern modifierPattern = Pattern.compile("\\b\\p{L}*:\\b");
 
@@ -89,9 +88,9 @@ public class MantaroListener implements EventListener {
             List.of("general", "general-chat", "chat", "lounge", "main-chat", "main");
     private final Config config = MantaroData.config().get();
 
-    public MantaroListener(ExecutorService threadPool,
-                           Cache<Long, Optional<CachedMessage>> messageCache) {
-        this.threadPool = threadPool;
+    public MantaroListener(GuildExecutor executor,
+                           MessageCache messageCache) {
+        this.executor = executor;
         this.messageCache = messageCache;
     }
 
@@ -112,19 +111,21 @@ public class MantaroListener implements EventListener {
         }
 
         if (event instanceof GuildMemberJoinEvent) {
-            threadPool.execute(() -> onUserJoin((GuildMemberJoinEvent) event));
+            var join = (GuildMemberJoinEvent) event;
+            execute(join, () -> onUserJoin(join));
             return;
         }
 
         if (event instanceof GuildMemberRemoveEvent) {
-            threadPool.execute(() -> onUserLeave((GuildMemberRemoveEvent) event));
+            var leave = (GuildMemberRemoveEvent) event;
+            execute(leave, () -> onUserLeave(leave));
             return;
         }
 
         //Log intensifies
         //Doesn't run on the thread pool as there's no need for it.
         if (event instanceof GuildMemberRoleAddEvent) {
-            //It only runs on the thread pool if needed.
+            //Only goes off the gateway thread if needed.
             handleNewPatron((GuildMemberRoleAddEvent) event);
             return;
         }
@@ -226,54 +227,68 @@ public class MantaroListener implements EventListener {
     private void handleNewPatron(GuildMemberRoleAddEvent event) {
         //Only in mantaro's guild...
         if (event.getGuild().getIdLong() == 213468583252983809L && !MantaroData.config().get().isPremiumBot()) {
-            threadPool.execute(() -> {
-                var user = event.getUser();
-                var dbUser = db.getUser(user);
-                var currentKey = MantaroData.db().getPremiumKey(dbUser.getData().getPremiumKey());
-
-                if (event.getMember().getRoles().stream().anyMatch(r -> r.getId().equals("290257037072531466"))) {
-                    if (!dbUser.getData().hasReceivedFirstKey() && (currentKey == null || currentKey.validFor() < 20)) {
-                        //Attempt to open a PM and send a key!
-                        user.openPrivateChannel().queue(channel -> {
-                            //Sellout message :^)
-                            channel.sendMessage(EmoteReference.EYES +
-                                    "Thanks you for donating, we'll deliver your premium key shortly! :heart:")
-                                    .queue(message -> {
-                                        message.editMessage(EmoteReference.POPPER +
-                                                "You received a premium key due to your donation to mantaro. " +
-                                                "If any doubts, please contact Kodehawa#3457.\n" +
-                                                "Instructions: **Apply this key to yourself!**. " +
-                                                "This key is a subscription to Mantaro Premium. " +
-                                                "This will last as long as you pledge. If you want more keys (>$2 donation) " +
-                                                "or want to enable the patreon bot (>$4 donation)" +
-                                                " you need to contact Kodehawa to deliver your keys.\n" +
-                                                "To apply this key, run the following command in any channel `~>activatekey " +
-                                                PremiumKey.generatePremiumKey(user.getId(), PremiumKey.Type.USER, false).getId()
-                                                + "`\nThanks you soo much for donating and helping to keep Mantaro alive! :heart:"
-                                        ).queue(sent -> {
-                                            dbUser.getData().setHasReceivedFirstKey(true);
-                                            dbUser.saveUpdating();
-                                        }
-                                );
-
-                                Metrics.PATRON_COUNTER.inc();
-                                //Celebrate internally! \ o /
-                                LogUtils.log(
-                                        "Delivered premium key to " + user.getAsTag() + "(" + user.getId() + ")"
-                                );
-                            });
-                        }, failure -> LogUtils.log(
-                                String.format("User: %s (%s) couldn't receive the key, apply manually when asked!", user.getId(), user.getAsTag()))
-                        );
-                    }
+            //Not through the guild executor: it can drop tasks when busy, and a key grant can't be dropped.
+            MantaroData.queue(() -> {
+                try {
+                    deliverPatronKey(event);
+                } catch (Exception e) {
+                    log.error("Couldn't deliver premium key to new patron {}", event.getUser().getId(), e);
                 }
             });
         }
     }
 
+    private void deliverPatronKey(GuildMemberRoleAddEvent event) {
+        var user = event.getUser();
+        var dbUser = db.getUser(user);
+        var currentKey = MantaroData.db().getPremiumKey(dbUser.getData().getPremiumKey());
+
+        if (event.getMember().getRoles().stream().anyMatch(r -> r.getId().equals("290257037072531466"))) {
+            if (!dbUser.getData().hasReceivedFirstKey() && (currentKey == null || currentKey.validFor() < 20)) {
+                //Attempt to open a PM and send a key!
+                user.openPrivateChannel().queue(channel -> {
+                    //Sellout message :^)
+                    channel.sendMessage(EmoteReference.EYES +
+                            "Thanks you for donating, we'll deliver your premium key shortly! :heart:")
+                            .queue(message -> {
+                                message.editMessage(EmoteReference.POPPER +
+                                        "You received a premium key due to your donation to mantaro. " +
+                                        "If any doubts, please contact Kodehawa#3457.\n" +
+                                        "Instructions: **Apply this key to yourself!**. " +
+                                        "This key is a subscription to Mantaro Premium. " +
+                                        "This will last as long as you pledge. If you want more keys (>$2 donation) " +
+                                        "or want to enable the patreon bot (>$4 donation)" +
+                                        " you need to contact Kodehawa to deliver your keys.\n" +
+                                        "To apply this key, run the following command in any channel `~>activatekey " +
+                                        PremiumKey.generatePremiumKey(user.getId(), PremiumKey.Type.USER, false).getId()
+                                        + "`\nThanks you soo much for donating and helping to keep Mantaro alive! :heart:"
+                                ).queue(sent -> {
+                                    dbUser.getData().setHasReceivedFirstKey(true);
+                                    dbUser.saveUpdating();
+                                }
+                        );
+
+                        Metrics.PATRON_COUNTER.inc();
+                        //Celebrate internally! \ o /
+                        LogUtils.log(
+                                "Delivered premium key to " + user.getAsTag() + "(" + user.getId() + ")"
+                        );
+                    });
+                }, failure -> LogUtils.log(
+                        String.format("User: %s (%s) couldn't receive the key, apply manually when asked!", user.getId(), user.getAsTag()))
+                );
+            }
+        }
+    }
+
     private void logDelete(GuildMessageDeleteEvent event) {
         try {
             final var db = MantaroData.db();
+            //Known to not log anything, no need to load the guild.
+            if ("".equals(db.peekGuildLogChannel(event.getGuild().getIdLong()))) {
+                return;
+            }
+
             final var dbGuild = db.getGuild(event.getGuild());
             final var data = dbGuild.getData();
             final var logChannel = data.getGuildLogChannel();
@@ -285,12 +300,16 @@ public class MantaroListener implements EventListener {
                     return;
                 }
 
-                var deletedMessage =
-                        messageCache.get(event.getMessageIdLong(), Optional::empty).orElse(null);
+                var deletedMessage = messageCache.get(event.getMessageIdLong());
+                if (deletedMessage == null) {
+                    return;
+                }
 
+                //It's gone, it won't be edited or deleted again.
+                messageCache.invalidate(event.getMessageIdLong());
                 final var author = deletedMessage.getAuthor();
 
-                if (deletedMessage != null &&
+                if (author != null &&
                         !deletedMessage.getContent().isEmpty() && !event.getChannel().getId().equals(logChannel)
                         && !author.getId().equals(event.getJDA().getSelfUser().getId())) {
                     if (data.getModlogBlacklistedPeople().contains(author.getId())) {
@@ -345,6 +364,10 @@ public class MantaroListener implements EventListener {
     private void logEdit(GuildMessageUpdateEvent event) {
         try {
             final var db = MantaroData.db();
+            if ("".equals(db.peekGuildLogChannel(event.getGuild().getIdLong()))) {
+                return;
+            }
+
             final var guildData = db.getGuild(event.getGuild()).getData();
 
             var logChannel = guildData.getGuildLogChannel();
@@ -357,16 +380,17 @@ public class MantaroListener implements EventListener {
                 }
 
                 var author = event.getAuthor();
-                var editedMessage = messageCache.get(event.getMessage().getIdLong(), Optional::empty).orElse(null);
-                var content = editedMessage.getContent();
+                var editedMessage = messageCache.get(event.getMessage().getIdLong());
+                if (editedMessage == null) {
+                    return;
+                }
 
-                if (editedMessage != null && !content.isEmpty() && !event.getChannel().getId().equals(logChannel)) {
+                var content = editedMessage.getContent();
+                if (!content.isEmpty() && !event.getChannel().getId().equals(logChannel)) {
                     //Update message in cache in any case.
                     Message originalMessage = event.getMessage();
-                    messageCache.put(originalMessage.getIdLong(), Optional.of(
-                            new CachedMessage(event.getGuild().getIdLong(),
-                                    event.getAuthor().getIdLong(), originalMessage.getContentDisplay())
-                            )
+                    messageCache.put(originalMessage.getIdLong(), event.getGuild().getIdLong(),
+                            event.getAuthor().getIdLong(), originalMessage.getContentDisplay()
                     );
 
                     if (guildData.getLogExcludedChannels().contains(event.getChannel().getId())) {
@@ -462,11 +486,11 @@ public class MantaroListener implements EventListener {
     private void onJoin(GuildJoinEvent event) {
         final var guild = event.getGuild();
         final var jda = event.getJDA();
-        final var mantaroData = MantaroData.db().getMantaroData();
+        final var mantaroData = MantaroData.db().getMantaroReplica();
 
         try {
-            if (mantaroData.getBlackListedGuilds().contains(guild.getId()) ||
-                    mantaroData.getBlackListedUsers().contains(guild.getOwner().getUser().getId())) {
+            if (mantaroData.isBlackListedGuild(guild.getId()) ||
+                    mantaroData.isBlackListedUser(guild.getOwner().getUser().getId())) {
                 guild.leave().queue();
                 return;
             }
@@ -537,7 +561,7 @@ public class MantaroListener implements EventListener {
     private void onLeave(GuildLeaveEvent event) {
         try {
             final var jda = event.getJDA();
-            final var mantaroData = MantaroData.db().getMantaroData();
+            final var mantaroData = MantaroData.db().getMantaroReplica();
             final var guild = event.getGuild();
             final var guildBirthdayCache = BirthdayCmd.getGuildBirthdayCache();
 
@@ -547,8 +571,8 @@ public class MantaroListener implements EventListener {
             guildBirthdayCache.invalidate(guild.getId());
             guildBirthdayCache.cleanUp();
 
-            if (mantaroData.getBlackListedGuilds().contains(event.getGuild().getId()) ||
-                    mantaroData.getBlackListedUsers().contains(event.getGuild().getOwner().getUser().getId())) {
+            if (mantaroData.isBlackListedGuild(event.getGuild().getId()) ||
+                    mantaroData.isBlackListedUser(event.getGuild().getOwner().getUser().getId())) {
                 log.info("Left {} because of a blacklist entry. (Owner ID: {})", event.getGuild(), event.getGuild().getOwner().getId());
                 return;
             }
@@ -565,6 +589,12 @@ public class MantaroListener implements EventListener {
         }
     }
 
+    //Join/leave handlers post the greet/leave messages and give autoroles, so they're never shed, even during a raid.
+    //They still go through the guild queues, so a raided guild can't take every worker.
+    private void execute(GenericGuildEvent event, Runnable task) {
+        executor.execute(event.getJDA().getShardInfo().getShardId(), event.getGuild().getIdLong(), task);
+    }
+
     private void onUserJoin(GuildMemberJoinEvent event) {
         final var guild = event.getGuild();
         final var dbGuild = MantaroData.db().getGuild(guild);
@@ -776,21 +806,19 @@ public class MantaroListener implements EventListener {
             return;
         }
 
-        try(var jedis = MantaroData.getDefaultJedisPool().getResource()) {
-            var json = new JSONObject()
-                    .put("guild_count", jda.getGuildCache().size())
-                    .put("cached_users", jda.getUserCache().size())
-                    .put("gateway_ping", jda.getGatewayPing())
-                    .put("shard_status", jda.getStatus())
-                    .put("last_ping_diff", ((MantaroEventManager) jda.getEventManager()).lastJDAEventDiff())
-                    .put("node_number", MantaroBot.getInstance().getNodeNumber())
-                    .toString();
-
-            jedis.hset("shardstats-" + config.getClientId(),
-                    String.valueOf(jda.getShardInfo().getShardId()), json
-            );
+        var json = new JSONObject()
+                .put("guild_count", jda.getGuildCache().size())
+                .put("cached_users", jda.getUserCache().size())
+                .put("gateway_ping", jda.getGatewayPing())
+                .put("shard_status", jda.getStatus())
+                .put("last_ping_diff", ((MantaroEventManager) jda.getEventManager()).lastJDAEventDiff())
+                .put("node_number", MantaroBot.getInstance().getNodeNumber())
+                .toString();
 
-            log.debug("Sent process shard stats to redis -> {}", json);
-        }
+        MantaroData.redis().run("shard_stats_write", jedis -> jedis.hset("shardstats-" + config.getClientId(),
+                String.valueOf(jda.getShardInfo().getShardId()), json
+        ));
+
+        log.debug("Sent process shard stats to redis -> {}", json);
     }
 }
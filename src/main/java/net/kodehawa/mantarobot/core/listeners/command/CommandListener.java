@@ -16,7 +16,6 @@
 
 package net.kodehawa.mantarobot.core.listeners.command;
 
-import com.google.common.cache.Cache;
 import com.rethinkdb.gen.exc.ReqlError;
 import net.dv8tion.jda.api.Permission;
 import net.dv8tion.jda.api.events.GenericEvent;
@@ -24,10 +23,10 @@ import net.dv8tion.jda.api.events.message.guild.GuildMessageReceivedEvent;
 import net.dv8tion.jda.api.exceptions.PermissionException;
 import net.dv8tion.jda.api.hooks.EventListener;
 import net.kodehawa.mantarobot.commands.currency.profile.Badge;
-import net.kodehawa.mantarobot.commands.custom.EmbedJSON;
-import net.kodehawa.mantarobot.commands.custom.legacy.DynamicModifiers;
+import net.kodehawa.mantarobot.core.GuildExecutor;
+import net.kodehawa.mantarobot.core.cache.MessageCache;
 import net.kodehawa.mantarobot.core.command.processor.CommandProcessor;
-import net.kodehawa.mantarobot.core.listeners.entities.CachedMessage;
+import net.kodehawa.mantarobot.core.command.processor.PrefixMatcher;
 import net.kodehawa.mantarobot.core.listeners.operations.InteractiveOperations;
 import net.kodehawa.mantarobot.data.I18n;
 import net.kodehawa.mantarobot.data.MantaroData;
@@ -35,29 +34,31 @@ import net.kodehawa.mantarobot.utils.LanguageKeyNotFoundException;
 import net.kodehawa.mantarobot.utils.Snow64;
 import net.kodehawa.mantarobot.utils.commands.EmoteReference;
 import net.kodehawa.mantarobot.utils.commands.ratelimit.RateLimiter;
-import net.kodehawa.mantarobot.utils.data.JsonDataManager;
 import org.jetbrains.annotations.NotNull;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Optional;
 import java.util.Random;
-import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
 
 public class CommandListener implements EventListener {
     private static final RateLimiter experienceRatelimiter = new RateLimiter(TimeUnit.SECONDS, 18);
+    //One busy notice per guild every so often, or they'd add to the load they're complaining about.
+    private static final RateLimiter busyNoticeRatelimiter = new RateLimiter(TimeUnit.SECONDS, 30);
     private static final Logger log = LoggerFactory.getLogger(CommandListener.class);
     //Commands ran this session.
     private static int commandTotal = 0;
     private final Random random = new Random();
     private final CommandProcessor commandProcessor;
-    private final ExecutorService threadPool;
-    private final Cache<Long, Optional<CachedMessage>> messageCache;
+    private final GuildExecutor executor;
+    private final ExperienceAccumulator experience;
+    private final MessageCache messageCache;
 
-    public CommandListener(CommandProcessor processor, ExecutorService threadPool, Cache<Long, Optional<CachedMessage>> messageCache) {
+    public CommandListener(CommandProcessor processor, GuildExecutor executor, ExperienceAccumulator experience,
+                           MessageCache messageCache) {
         this.commandProcessor = processor;
-        this.threadPool = threadPool;
+        this.executor = executor;
+        this.experience = experience;
         this.messageCache = messageCache;
     }
 
@@ -69,35 +70,73 @@ public class CommandListener implements EventListener {
     public void onEvent(@NotNull GenericEvent event) {
         if (event instanceof GuildMessageReceivedEvent) {
             var msg = (GuildMessageReceivedEvent) event;
-            //Inserts a cached message into the cache. This only holds the id and the content, and is way lighter than saving the entire jda object.
-            messageCache.put(msg.getMessage().getIdLong(), Optional.of(
-                    new CachedMessage(msg.getGuild().getIdLong(), msg.getAuthor().getIdLong(), msg.getMessage().getContentDisplay()))
-            );
+            //Only the messages edit and delete logs could need. This only holds the ids and the content, and is way lighter than saving the entire jda object.
+            if (shouldCache(msg)) {
+                messageCache.put(msg.getMessage().getIdLong(), msg.getGuild().getIdLong(),
+                        msg.getAuthor().getIdLong(), msg.getMessage().getContentDisplay()
+                );
+            }
 
             //Ignore myself and bots.
             if (msg.getAuthor().isBot() || msg.isWebhookMessage() || msg.getAuthor().equals(msg.getJDA().getSelfUser())) {
                 return;
             }
 
-            threadPool.execute(() -> onCommand(msg));
+            //Most messages are just chatter: only hand them to the executor if they could be a command or would give experience.
+            var candidate = commandProcessor.isCandidate(msg);
+            if (!candidate && !rollExperience()) {
+                return;
+            }
+
+            var result = executor.submit(msg.getJDA().getShardInfo().getShardId(), msg.getGuild().getIdLong(),
+                    msg.getAuthor().getIdLong(), () -> onCommand(msg, candidate)
+            );
+
+            //Users over their own limit are just spamming, don't answer those.
+            if (candidate && (result == GuildExecutor.Result.BUSY || result == GuildExecutor.Result.GUILD_BUSY)) {
+                sendBusyNotice(msg);
+            }
+        }
+    }
+
+    //Runs on the gateway thread, so it can't go to the database: guilds we don't know yet might have a log channel, so those get cached too.
+    //Messages on the log channel itself are never logged.
+    private static boolean shouldCache(GuildMessageReceivedEvent event) {
+        var logChannel = MantaroData.db().peekGuildLogChannel(event.getGuild().getIdLong());
+        return logChannel == null || (!logChannel.isEmpty() && !logChannel.equals(event.getChannel().getId()));
+    }
+
+    //Runs on the gateway thread, so it can't go to the database: uses the guild language only if it's already known.
+    private void sendBusyNotice(GuildMessageReceivedEvent event) {
+        var content = event.getMessage().getContentRaw();
+        var db = MantaroData.db();
+        var guildId = event.getGuild().getIdLong();
+        var isCommand = PrefixMatcher.match(content, MantaroData.config().get().prefix) != null ||
+                PrefixMatcher.startsWith(content, db.peekGuildCustomPrefix(guildId));
+
+        if (!isCommand || !event.getGuild().getSelfMember().hasPermission(event.getChannel(), Permission.MESSAGE_WRITE) ||
+                !busyNoticeRatelimiter.process(event.getGuild().getId())) {
+            return;
         }
+
+        var lang = db.peekGuildLanguage(guildId);
+        var i18n = I18n.getForLanguage(lang == null ? "en_US" : lang);
+        event.getChannel().sendMessage(EmoteReference.STOPWATCH + i18n.get("general.busy")).queue();
     }
 
-    private void onCommand(GuildMessageReceivedEvent event) {
+    private boolean rollExperience() {
+        return random.nextInt(15) > 7;
+    }
+
+    private void onCommand(GuildMessageReceivedEvent event, boolean candidate) {
         try {
             var self = event.getGuild().getSelfMember();
             if (!self.getPermissions(event.getChannel()).contains(Permission.MESSAGE_WRITE) && !self.hasPermission(Permission.ADMINISTRATOR)) {
                 return;
             }
 
-            if (commandProcessor.run(event)) {
+            if (candidate && commandProcessor.run(event)) {
                 commandTotal++;
-
-                // Remove running flag
-                try (var jedis = MantaroData.getDefaultJedisPool().getResource()) {
-                    jedis.del("commands-running-" + event.getAuthor().getId());
-                }
-
             } else {
                 // Only run experience if no command has been executed, avoids weird race conditions when saving player status.
                 // With nodes, this could still be a little cursed. Maybe a redis lock?
@@ -105,15 +144,13 @@ public class CommandListener implements EventListener {
                     // Only run experience if the user is not rate limited (clears every 30 seconds)
                     // And don't run it if it's a webhook message, if the user is not a bot, if the message is not a webhook message
                     // and if the member is not null.
-                    if (random.nextInt(15) > 7 && !event.getAuthor().isBot() &&
+                    // Messages that couldn't be a command already rolled for it before getting here.
+                    if ((!candidate || rollExperience()) && !event.getAuthor().isBot() &&
                             !event.isWebhookMessage() && event.getMember() != null && experienceRatelimiter.process(event.getAuthor())) {
 
-                        // If a command is running on another node, don't handle (this is an issue due to multiple different Player objects)
-                        try (var jedis = MantaroData.getDefaultJedisPool().getResource()) {
-                            var running = jedis.get("commands-running-" + event.getAuthor().getId());
-                            if (running != null) {
-                                return;
-                            }
+                        // If a command is running, don't handle (this is an issue due to multiple different Player objects)
+                        if (!CommandProcessor.IN_FLIGHT.tryRunAlongside(event.getAuthor().getIdLong(), "experience")) {
+                            return;
                         }
 
                         //Don't run the experience handler on this channel if there's an InteractiveOperation running as there might be issues with
@@ -122,43 +159,8 @@ public class CommandListener implements EventListener {
                             return;
                         }
 
-                        var player = MantaroData.db().getPlayer(event.getAuthor());
-                        var data = player.getData();
-
-                        if (player.isLocked()) {
-                            return;
-                        }
-
-                        //Set level to 1 if level is zero.
-                        if (player.getLevel() == 0) {
-                            player.setLevel(1);
-                        }
-
-                        // Increment player experience by a random number between 1 and 5.
-                        data.setExperience(data.getExperience() + random.nextInt(5));
-                        // Apply some black magic.
-                        var level = player.getLevel();
-                        if (data.getExperience() > (level * Math.log10(player.getLevel()) * 1000) + (50 * level / 2D)) {
-                            player.setLevel(level + 1);
-                            var newLevel = player.getLevel();
-
-                            if (newLevel > 1) {
-                                var dbGuild = MantaroData.db().getGuild(event.getGuild());
-                                var guildData = dbGuild.getData();
-
-                                if (guildData.isEnabledLevelUpMessages()) {
-                                    String levelUpChannel = guildData.getLevelUpChannel();
-                                    String levelUpMessage = guildData.getLevelUpMessage();
-
-                                    //Player has leveled up!
-                                    if (levelUpMessage != null && levelUpChannel != null) {
-                                        processMessage(newLevel, levelUpMessage, levelUpChannel, event);
-                                    }
-                                }
-                            }
-                        }
-
-                        player.saveUpdating();
+                        // Increment player experience by a random number between 1 and 5. It's written on the next flush.
+                        experience.add(event, random.nextInt(5));
                     }
                 } catch (Exception ignored) { }
             }
@@ -209,40 +211,4 @@ public class CommandListener implements EventListener {
             log.error("Error happened with id: {} (Error ID: {})", event.getMessage().getContentRaw(), id, e);
         }
     }
-
-    private void processMessage(long level, String message, String channel, GuildMessageReceivedEvent event) {
-        var tc = event.getGuild().getTextChannelById(channel);
-
-        if (tc == null) {
-            return;
-        }
-
-        if (message.contains("$(")) {
-            message = new DynamicModifiers()
-                    .mapEvent("", "event", event)
-                    .set("level", String.valueOf(level))
-                    .resolve(message);
-        }
-
-        var c = message.indexOf(':');
-        if (c != -1) {
-            var m = message.substring(0, c);
-            var v = message.substring(c + 1);
-
-            if (m.equals("embed")) {
-                EmbedJSON embed;
-                try {
-                    embed = JsonDataManager.fromJson('{' + v + '}', EmbedJSON.class);
-                } catch (Exception ignored) {
-                    tc.sendMessage(EmoteReference.ERROR2 + "The string ``{" + v + "}`` isn't a valid JSON.").queue();
-                    return;
-                }
-
-                tc.sendMessage(embed.gen(event.getMember())).queue();
-                return;
-            }
-        }
-
-        tc.sendMessage(message).queue();
-    }
 }
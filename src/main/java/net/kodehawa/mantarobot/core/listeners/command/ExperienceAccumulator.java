@@ -0,0 +1,214 @@
+/*
+ * Copyright (C) 2016-2020 David Rubio Escares / Kodehawa
+ *
+ *  Mantaro is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  Mantaro is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro.  If not, see http://www.gnu.org/licenses/
+ */
+
+package net.kodehawa.mantarobot.core.listeners.command;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import net.dv8tion.jda.api.events.message.guild.GuildMessageReceivedEvent;
+import net.kodehawa.mantarobot.commands.custom.EmbedJSON;
+import net.kodehawa.mantarobot.commands.custom.legacy.DynamicModifiers;
+import net.kodehawa.mantarobot.data.MantaroData;
+import net.kodehawa.mantarobot.db.entities.Player;
+import net.kodehawa.mantarobot.utils.commands.EmoteReference;
+import net.kodehawa.mantarobot.utils.data.JsonDataManager;
+import net.kodehawa.mantarobot.utils.exporters.Metrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tallies chat experience per player in memory, and periodically adds it to the players in one batched update
+ * instead of loading and saving each player on every message.
+ * <br>Level ups are worked out when flushing, at most one level per player each time (same as it used to be per message),
+ * and the level up message is sent to the guild the player last talked on once the new level is written.
+ */
+public class ExperienceAccumulator {
+    private static final Logger log = LoggerFactory.getLogger(ExperienceAccumulator.class);
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("ExperienceAccumulator Thread-%d").setDaemon(true).build()
+    );
+    //user id -> experience gained since the last flush.
+    private final Map<String, Tally> tallies = new HashMap<>();
+
+    public ExperienceAccumulator(long flushIntervalMs) {
+        executor.scheduleWithFixedDelay(this::flushSafely, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+        Metrics.THREAD_POOL_COLLECTOR.add("experience-accumulator", executor);
+    }
+
+    /**
+     * Adds experience to the author of this message, to be written on the next flush.
+     *
+     * @param event The message that gave the experience.
+     * @param experience How much experience it gave.
+     */
+    public void add(@Nonnull GuildMessageReceivedEvent event, long experience) {
+        synchronized (tallies) {
+            var tally = tallies.computeIfAbsent(event.getAuthor().getId(), id -> new Tally());
+            tally.experience += experience;
+            tally.event = event;
+            Metrics.EXPERIENCE_ACCUMULATOR_SIZE.set(tallies.size());
+        }
+    }
+
+    /**
+     * Writes everything tallied so far. Blocks until it's been written.
+     */
+    public void flush() {
+        Map<String, Tally> flushing;
+        synchronized (tallies) {
+            if (tallies.isEmpty()) {
+                return;
+            }
+
+            flushing = new HashMap<>(tallies);
+            tallies.clear();
+            Metrics.EXPERIENCE_ACCUMULATOR_SIZE.set(0);
+        }
+
+        var db = MantaroData.db();
+        Map<String, Long> experience = new HashMap<>();
+        for (var entry : flushing.entrySet()) {
+            if (entry.getValue().experience > 0) {
+                experience.put(entry.getKey(), entry.getValue().experience);
+            }
+        }
+
+        //Locked players are left out.
+        var updated = db.addPlayerExperience(experience);
+        Map<String, Long> levels = new HashMap<>();
+        //user id -> level up message. Only sent for the levels that actually got written: a level can only go up once.
+        Map<String, Runnable> announcements = new HashMap<>();
+        for (var entry : updated.entrySet()) {
+            var userId = entry.getKey();
+            try {
+                var level = levelUp(entry.getValue());
+                if (level != entry.getValue().getLevel()) {
+                    levels.put(userId, level);
+                    var announcement = announcement(level, entry.getValue().getLevel(), flushing.get(userId).event);
+                    if (announcement != null) {
+                        announcements.put(userId, announcement);
+                    }
+                }
+            } catch (Exception e) {
+                log.warn("Couldn't work out the level of {}", userId, e);
+            }
+        }
+
+        for (var userId : db.raisePlayerLevels(levels)) {
+            var announcement = announcements.get(userId);
+            if (announcement == null) {
+                continue;
+            }
+
+            try {
+                announcement.run();
+            } catch (Exception e) {
+                log.warn("Couldn't send level up message", e);
+            }
+        }
+    }
+
+    private void flushSafely() {
+        try {
+            flush();
+        } catch (Exception e) {
+            log.error("Couldn't flush chat experience", e);
+        }
+    }
+
+    //Works out the level of a player after getting experience.
+    private static long levelUp(Player player) {
+        //Set level to 1 if level is zero.
+        long level = Math.max(1, player.getLevel());
+        // Apply some black magic.
+        if (player.getData().getExperience() > (level * Math.log10(level) * 1000) + (50 * level / 2D)) {
+            level++;
+        }
+
+        return level;
+    }
+
+    //The level up message for going from previous to level, or null if there's none to send.
+    private static Runnable announcement(long level, long previous, GuildMessageReceivedEvent event) {
+        //Going from 0 to 1 isn't a level up, it's just where everyone starts.
+        if (level <= 1 || level <= Math.max(1, previous)) {
+            return null;
+        }
+
+        var guildData = MantaroData.db().getGuild(event.getGuild()).getData();
+        if (!guildData.isEnabledLevelUpMessages()) {
+            return null;
+        }
+
+        String levelUpChannel = guildData.getLevelUpChannel();
+        String levelUpMessage = guildData.getLevelUpMessage();
+        //Player has leveled up!
+        if (levelUpMessage == null || levelUpChannel == null) {
+            return null;
+        }
+
+        return () -> processMessage(level, levelUpMessage, levelUpChannel, event);
+    }
+
+    private static void processMessage(long level, String message, String channel, GuildMessageReceivedEvent event) {
+        var tc = event.getGuild().getTextChannelById(channel);
+
+        if (tc == null) {
+            return;
+        }
+
+        if (message.contains("$(")) {
+            message = new DynamicModifiers()
+                    .mapEvent("", "event", event)
+                    .set("level", String.valueOf(level))
+                    .resolve(message);
+        }
+
+        var c = message.indexOf(':');
+        if (c != -1) {
+            var m = message.substring(0, c);
+            var v = message.substring(c + 1);
+
+            if (m.equals("embed")) {
+                EmbedJSON embed;
+                try {
+                    embed = JsonDataManager.fromJson('{' + v + '}', EmbedJSON.class);
+                } catch (Exception ignored) {
+                    tc.sendMessage(EmoteReference.ERROR2 + "The string ``{" + v + "}`` isn't a valid JSON.").queue();
+                    return;
+                }
+
+                tc.sendMessage(embed.gen(event.getMember())).queue();
+                return;
+            }
+        }
+
+        tc.sendMessage(message).queue();
+    }
+
+    private static class Tally {
+        private long experience;
+        //Last message that gave experience, level up messages are sent as if it triggered them.
+        private GuildMessageReceivedEvent event;
+    }
+}
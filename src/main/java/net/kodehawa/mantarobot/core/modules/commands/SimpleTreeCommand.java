@@ -65,7 +65,7 @@ public abstract class SimpleTreeCommand extends AbstractCommand implements ITree
             return;
         }
 
-        command.run(new Context(context.getEvent(), context.getLanguageContext(), args[1]), commandName + " " + args[0], args[1]);
+        command.run(new Context(context.getEvent(), context.getLanguageContext(), args[1], context.getEntitySession()), commandName + " " + args[0], args[1]);
     }
 
     public void setPredicate(Predicate<Context> predicate) {
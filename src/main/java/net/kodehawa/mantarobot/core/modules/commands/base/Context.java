@@ -28,7 +28,10 @@ import net.kodehawa.mantarobot.commands.music.MantaroAudioManager;
 import net.kodehawa.mantarobot.core.modules.commands.i18n.I18nContext;
 import net.kodehawa.mantarobot.data.Config;
 import net.kodehawa.mantarobot.data.MantaroData;
+import net.kodehawa.mantarobot.db.EntitySession;
 import net.kodehawa.mantarobot.db.ManagedDatabase;
+import net.kodehawa.mantarobot.db.ManagedObject;
+import net.kodehawa.mantarobot.db.RedisClient;
 import net.kodehawa.mantarobot.db.entities.DBGuild;
 import net.kodehawa.mantarobot.db.entities.DBUser;
 import net.kodehawa.mantarobot.db.entities.Marriage;
@@ -36,7 +39,6 @@ import net.kodehawa.mantarobot.db.entities.Player;
 import net.kodehawa.mantarobot.db.entities.helpers.UserData;
 import net.kodehawa.mantarobot.utils.StringUtils;
 import net.kodehawa.mantarobot.utils.commands.CustomFinderUtil;
-import redis.clients.jedis.JedisPool;
 
 import java.util.EnumSet;
 import java.util.List;
@@ -50,11 +52,17 @@ public class Context {
     private final GuildMessageReceivedEvent event;
     private final I18nContext languageContext;
     private final String content;
+    private final EntitySession session;
 
     public Context(GuildMessageReceivedEvent event, I18nContext languageContext, String content) {
+        this(event, languageContext, content, EntitySession.detached(MantaroData.db()));
+    }
+
+    public Context(GuildMessageReceivedEvent event, I18nContext languageContext, String content, EntitySession session) {
         this.event = event;
         this.languageContext = languageContext;
         this.content = content;
+        this.session = session;
     }
 
     public MantaroBot getBot() {
@@ -77,6 +85,10 @@ public class Context {
         return getEvent().getJDA();
     }
 
+    public EntitySession getEntitySession() {
+        return session;
+    }
+
     public I18nContext getLanguageContext() {
         return languageContext;
     }
@@ -134,51 +146,51 @@ public class Context {
     }
 
     public DBGuild getDBGuild() {
-        return managedDatabase.getGuild(getGuild());
+        return session.getGuild(getGuild().getId());
     }
 
     public DBUser getDBUser() {
-        return managedDatabase.getUser(getUser());
+        return session.getUser(getUser().getId());
     }
 
     public DBUser getDBUser(User user) {
-        return managedDatabase.getUser(user);
+        return session.getUser(user.getId());
     }
 
     public DBUser getDBUser(Member member) {
-        return managedDatabase.getUser(member);
+        return session.getUser(member.getId());
     }
 
     public DBUser getDBUser(String id) {
-        return managedDatabase.getUser(id);
+        return session.getUser(id);
     }
 
     public Player getPlayer() {
-        return managedDatabase.getPlayer(getUser());
+        return session.getPlayer(getUser().getId());
     }
 
     public Player getPlayer(User user) {
-        return managedDatabase.getPlayer(user);
+        return session.getPlayer(user.getId());
     }
 
     public Player getPlayer(Member member) {
-        return managedDatabase.getPlayer(member);
+        return session.getPlayer(member.getId());
     }
 
     public Player getPlayer(String id) {
-        return managedDatabase.getPlayer(id);
+        return session.getPlayer(id);
     }
 
     public SeasonPlayer getSeasonPlayer() {
-        return managedDatabase.getPlayerForSeason(event.getAuthor(), getConfig().getCurrentSeason());
+        return session.getPlayerForSeason(event.getAuthor().getId(), getConfig().getCurrentSeason());
     }
 
     public SeasonPlayer getSeasonPlayer(User user) {
-        return managedDatabase.getPlayerForSeason(user, getConfig().getCurrentSeason());
+        return session.getPlayerForSeason(user.getId(), getConfig().getCurrentSeason());
     }
 
     public SeasonPlayer getSeasonPlayer(Member member) {
-        return managedDatabase.getPlayerForSeason(member, getConfig().getCurrentSeason());
+        return session.getPlayerForSeason(member.getId(), getConfig().getCurrentSeason());
     }
 
     public boolean isSeasonal() {
@@ -199,7 +211,17 @@ public class Context {
     }
 
     public Marriage getMarriage(UserData userData) {
-        return MantaroData.db().getMarriage(userData.getMarriageId());
+        return session.getMarriage(userData.getMarriageId());
+    }
+
+    /**
+     * Makes the next lookup of this entity load it again, instead of handing out the copy this command already got.
+     * Only needed if something else might have changed it, saving it from here already takes care of that.
+     *
+     * @param object The entity to refresh.
+     */
+    public void refresh(ManagedObject object) {
+        session.refresh(object);
     }
 
     public void send(Message message) {
@@ -271,7 +293,7 @@ public class Context {
         return member;
     }
 
-    public JedisPool getJedisPool() {
-        return MantaroData.getDefaultJedisPool();
+    public RedisClient getRedis() {
+        return MantaroData.redis();
     }
 }
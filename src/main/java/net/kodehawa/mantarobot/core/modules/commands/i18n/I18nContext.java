@@ -17,43 +17,73 @@
 package net.kodehawa.mantarobot.core.modules.commands.i18n;
 
 import net.kodehawa.mantarobot.data.I18n;
+import net.kodehawa.mantarobot.db.entities.GuildCommandConfig;
 import net.kodehawa.mantarobot.db.entities.helpers.GuildData;
 import net.kodehawa.mantarobot.db.entities.helpers.UserData;
 
+import java.util.Objects;
+
 public class I18nContext {
     private GuildData guildData;
+    private GuildCommandConfig guildConfig;
     private UserData userData;
+    //Resolved on first use, and again only if the language changes (the command that sets it does that).
+    private String resolvedLanguage;
+    private I18n resolved;
 
     public I18nContext(GuildData guildData, UserData userData) {
         this.guildData = guildData;
         this.userData = userData;
     }
 
+    public I18nContext(GuildCommandConfig guildConfig, UserData userData) {
+        this.guildConfig = guildConfig;
+        this.userData = userData;
+    }
+
     public I18nContext() { }
 
 
     public String get(String s) {
-        I18n context = I18n.getForLanguage(getContextLanguage());
-        return context.get(s);
+        return context().get(s);
     }
 
     public String withRoot(String root, String s) {
-        I18n context = I18n.getForLanguage(getContextLanguage());
-        return context.withRoot(root, s);
+        return context().withRoot(root, s);
     }
 
     public String getContextLanguage() {
-        if (guildData == null && userData == null) {
+        if (guildData == null && guildConfig == null && userData == null) {
             return "en_US";
         }
 
-        String lang;
-        if (userData == null)
-            lang = guildData.getLang();
-        else
-            lang = userData.getLang() == null || userData.getLang().isEmpty() ? guildData.getLang() : userData.getLang();
-
+        String lang = getLanguage();
         I18n context = I18n.getForLanguage(lang);
         return context == null ? "en_US" : lang;
     }
+
+    private I18n context() {
+        var lang = getLanguage();
+        if (resolved == null || !Objects.equals(lang, resolvedLanguage)) {
+            resolved = I18n.getForLanguage(getContextLanguage());
+            resolvedLanguage = lang;
+        }
+
+        return resolved;
+    }
+
+    //The language as set, which might not exist.
+    private String getLanguage() {
+        if (userData == null)
+            return getGuildLanguage();
+
+        return userData.getLang() == null || userData.getLang().isEmpty() ? getGuildLanguage() : userData.getLang();
+    }
+
+    private String getGuildLanguage() {
+        if (guildData != null)
+            return guildData.getLang();
+
+        return guildConfig == null ? null : guildConfig.getLang();
+    }
 }
@@ -16,8 +16,6 @@
 
 package net.kodehawa.mantarobot.core.shard;
 
-import com.google.common.cache.Cache;
-import com.google.common.cache.CacheBuilder;
 import net.dv8tion.jda.api.JDA;
 import net.dv8tion.jda.api.entities.Activity;
 import net.dv8tion.jda.api.events.ReadyEvent;
@@ -25,7 +23,7 @@ import net.dv8tion.jda.api.hooks.EventListener;
 import net.dv8tion.jda.api.hooks.ListenerAdapter;
 import net.kodehawa.mantarobot.MantaroBot;
 import net.kodehawa.mantarobot.core.MantaroEventManager;
-import net.kodehawa.mantarobot.core.listeners.entities.CachedMessage;
+import net.kodehawa.mantarobot.core.cache.MessageCache;
 import net.kodehawa.mantarobot.utils.APIUtils;
 import org.json.JSONObject;
 import org.json.JSONTokener;
@@ -38,7 +36,6 @@ import javax.annotation.Nullable;
 import java.time.Month;
 import java.time.OffsetDateTime;
 import java.util.Objects;
-import java.util.Optional;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -47,8 +44,7 @@ import static net.kodehawa.mantarobot.data.MantaroData.config;
 
 public class Shard {
     private static final Logger log = LoggerFactory.getLogger(Shard.class);
-    private final Cache<Long, Optional<CachedMessage>> messageCache =
-            CacheBuilder.newBuilder().concurrencyLevel(5).maximumSize(2500).build();
+    private final MessageCache messageCache = new MessageCache(config().get().getMessageCacheSize());
 
     private final MantaroEventManager manager = new MantaroEventManager();
     private final int id;
@@ -80,7 +76,7 @@ public class Shard {
 
     @Nonnull
     @CheckReturnValue
-    public Cache<Long, Optional<CachedMessage>> getMessageCache() {
+    public MessageCache getMessageCache() {
         return messageCache;
     }
 
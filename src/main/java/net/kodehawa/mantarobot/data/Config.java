@@ -60,7 +60,27 @@ public class Config {
     public long dailyMaxPeriodMilliseconds = TimeUnit.HOURS.toMillis(50);
     public boolean isSelfHost = false;
     public int memberCacheSize = 10_000;
+    public int messageCacheSize = 2500;
     public boolean handleRatelimits = true;
+    public boolean entityCacheEnabled = false;
+    public long entityCacheSize = 50_000;
+    public long entityCacheTtlSeconds = 60;
+    public long writeBehindIntervalMs = 0;
+    public int writeBehindBatchSize = 200;
+    public long slowQueryThresholdMs = 0;
+    public double slowQuerySampleRate = 1;
+    public double queryPayloadSampleRate = 0.01;
+    public int commandWorkers = 64;
+    public int commandQueueSize = 5000;
+    public int guildCommandQueueSize = 100;
+    public int guildCommandConcurrency = 4;
+    public int userCommandsInFlight = 3;
+    public long experienceFlushIntervalMs = 10_000;
+    public int redisPoolSize = 64;
+    public int redisPoolMinIdle = 8;
+    public long redisBorrowTimeoutMs = 2000;
+    public int redisConnectTimeoutMs = 2000;
+    public int redisSocketTimeoutMs = 2000;
 
     public boolean showBanner = true;
 
@@ -233,4 +253,84 @@ public class Config {
     public boolean isShowBanner() {
         return showBanner;
     }
+
+    public boolean isEntityCacheEnabled() {
+        return entityCacheEnabled;
+    }
+
+    public long getEntityCacheSize() {
+        return entityCacheSize;
+    }
+
+    public long getEntityCacheTtlSeconds() {
+        return entityCacheTtlSeconds;
+    }
+
+    public long getWriteBehindIntervalMs() {
+        return writeBehindIntervalMs;
+    }
+
+    public int getWriteBehindBatchSize() {
+        return writeBehindBatchSize;
+    }
+
+    public long getSlowQueryThresholdMs() {
+        return slowQueryThresholdMs;
+    }
+
+    public double getSlowQuerySampleRate() {
+        return slowQuerySampleRate;
+    }
+
+    public double getQueryPayloadSampleRate() {
+        return queryPayloadSampleRate;
+    }
+
+    public int getCommandWorkers() {
+        return commandWorkers;
+    }
+
+    public int getCommandQueueSize() {
+        return commandQueueSize;
+    }
+
+    public int getGuildCommandQueueSize() {
+        return guildCommandQueueSize;
+    }
+
+    public int getGuildCommandConcurrency() {
+        return guildCommandConcurrency;
+    }
+
+    public int getUserCommandsInFlight() {
+        return userCommandsInFlight;
+    }
+
+    public long getExperienceFlushIntervalMs() {
+        return experienceFlushIntervalMs;
+    }
+
+    public int getRedisPoolSize() {
+        return redisPoolSize;
+    }
+
+    public int getRedisPoolMinIdle() {
+        return redisPoolMinIdle;
+    }
+
+    public long getRedisBorrowTimeoutMs() {
+        return redisBorrowTimeoutMs;
+    }
+
+    public int getRedisConnectTimeoutMs() {
+        return redisConnectTimeoutMs;
+    }
+
+    public int getRedisSocketTimeoutMs() {
+        return redisSocketTimeoutMs;
+    }
+
+    public int getMessageCacheSize() {
+        return messageCacheSize;
+    }
 }
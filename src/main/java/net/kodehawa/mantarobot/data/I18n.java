@@ -40,7 +40,7 @@ public class I18n {
     private static final Map<String, I18n> LANGUAGE_MAP;
 
     static {
-        Map<String, I18n> m = new HashMap<>();
+        Map<String, Map<String, Object>> tables = new HashMap<>();
         var mapper = new ObjectMapper();
 
         try (var is = I18n.class.getResourceAsStream("/assets/languages/list.txt")) {
@@ -58,34 +58,46 @@ public class I18n {
                 @SuppressWarnings("unchecked")
                 Map<String, ?> map = (Map<String, ?>) mapper.readValue(is, Map.class);
 
-                var name = lang.replace(".json", "");
-                m.put(name, new I18n(map, lang));
-
-                log.debug("Initialized I18n for: {}", name);
+                Map<String, Object> table = new HashMap<>();
+                flatten(null, map, table);
+                tables.put(lang.replace(".json", ""), table);
             } catch (Exception e) {
                 throw new Error("Unable to initialize I18n", e);
             }
         }
 
+        //Keys missing on a language fall back to en_US, so fill those in right away.
+        var fallback = tables.getOrDefault("en_US", Map.of());
+        Map<String, I18n> m = new HashMap<>();
+        for (var entry : tables.entrySet()) {
+            var table = entry.getValue();
+            if (table != fallback) {
+                for (var key : fallback.entrySet()) {
+                    table.putIfAbsent(key.getKey(), key.getValue());
+                }
+            }
+
+            m.put(entry.getKey(), new I18n(table));
+            log.debug("Initialized I18n for: {}", entry.getKey());
+        }
+
         LANGUAGE_MAP = Collections.unmodifiableMap(m);
     }
 
-    private final Map<String, ?> map;
-    private final String language;
+    //Full key -> String, or String[] for keys with several options to pick from. Already direction-fixed.
+    private final Map<String, Object> table;
 
-    private I18n(Map<String, ?> map, String language) {
-        this.map = map;
-        this.language = language;
+    private I18n(Map<String, Object> table) {
+        this.table = table;
     }
 
+    //Both languages are cached by the database, so these don't go to it unless the guild or user is new to this node.
     public static I18n of(String guildId) {
-        var lang = MantaroData.db().getGuild(guildId).getData().getLang();
-        return getForLanguage(lang);
+        return getForLanguage(MantaroData.db().getGuildLanguage(guildId));
     }
 
     public static I18n ofUser(String userId) {
-        var lang = MantaroData.db().getUser(userId).getData().getLang();
-        return getForLanguage(lang);
+        return getForLanguage(MantaroData.db().getUserLanguage(userId));
     }
 
     public static I18n of(Guild guild) {
@@ -93,7 +105,7 @@ public class I18n {
     }
 
     public static I18n ofUser(User user) {
-        return of(user.getId());
+        return ofUser(user.getId());
     }
 
     public static I18n of(GenericGuildEvent event) {
@@ -117,64 +129,48 @@ public class I18n {
         ROOT.set(newRoot);
     }
 
+    //Turns the nested language file into a single table of full keys, with the values ready to hand out.
     @SuppressWarnings("unchecked")
-    private String get(Map<String, ?> map, String[] parts, boolean recursion) {
-        var index = 0;
-        while (index != parts.length - 1) {
-            Object maybeMap = map.get(parts[index]);
-            if (maybeMap instanceof Map) {
-                map = (Map<String, ?>) maybeMap;
-                index++;
-            } else {
-                if (language.equals("en_US") || recursion) {
-                    throw new LanguageKeyNotFoundException("Missing i18n key " + String.join(".", parts));
+    private static void flatten(String prefix, Map<String, ?> map, Map<String, Object> table) {
+        for (var entry : map.entrySet()) {
+            var key = prefix == null ? entry.getKey() : prefix + "." + entry.getKey();
+            var value = entry.getValue();
+
+            if (value instanceof Map) {
+                flatten(key, (Map<String, ?>) value, table);
+            } else if (value instanceof String) {
+                table.put(key, Utils.fixInlineCodeblockDirection((String) value));
+            } else if (value instanceof Collection) {
+                var values = new ArrayList<String>();
+                for (Object option : (Collection<?>) value) {
+                    values.add(Utils.fixInlineCodeblockDirection(String.valueOf(option)));
                 }
 
-                return get(LANGUAGE_MAP.get("en_US").map, parts, true);
+                table.put(key, values.toArray(new String[0]));
             }
         }
+    }
 
-        Object maybeString = map.get(parts[index]);
-        if (maybeString instanceof String) {
-            return (String) maybeString;
-        }
-
-        if (maybeString instanceof Collection) {
-            Collection<String> c = ((Collection<String>) maybeString);
-            return c.stream()
-                    .skip(ThreadLocalRandom.current().nextInt(c.size()))
-                    .findFirst()
-                    .orElseThrow(AssertionError::new);
+    private String resolve(String key) {
+        var value = table.get(key);
+        if (value instanceof String) {
+            return (String) value;
         }
 
-        if (language.equals("en_US") || recursion) {
-            throw new LanguageKeyNotFoundException("Missing i18n key " + String.join(".", parts));
+        if (value == null) {
+            throw new LanguageKeyNotFoundException("Missing i18n key " + key);
         }
 
-        return get(LANGUAGE_MAP.get("en_US").map, parts, true);
+        var options = (String[]) value;
+        return options[ThreadLocalRandom.current().nextInt(options.length)];
     }
 
     public String get(String query) {
         var root = ROOT.get();
-        String actualQuery;
-
-        if (root == null) {
-            actualQuery = query;
-        } else {
-            actualQuery = root + "." + query;
-        }
-
-        return Utils.fixInlineCodeblockDirection(get(map, actualQuery.split("\\."), false));
+        return resolve(root == null ? query : root + "." + query);
     }
 
     public String withRoot(String root, String query) {
-        var s = ROOT.get();
-        ROOT.set(root);
-
-        try {
-            return get(query);
-        } finally {
-            ROOT.set(s);
-        }
+        return resolve(root + "." + query);
     }
 }
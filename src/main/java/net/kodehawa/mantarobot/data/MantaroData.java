@@ -18,12 +18,15 @@ package net.kodehawa.mantarobot.data;
 
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.rethinkdb.net.Connection;
+import net.kodehawa.mantarobot.db.EntityCache;
+import net.kodehawa.mantarobot.db.InvalidationChannel;
 import net.kodehawa.mantarobot.db.ManagedDatabase;
+import net.kodehawa.mantarobot.db.QueryMetrics;
+import net.kodehawa.mantarobot.db.RedisClient;
 import net.kodehawa.mantarobot.utils.data.JsonDataManager;
 import net.kodehawa.mantarobot.utils.exporters.Metrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import redis.clients.jedis.JedisPool;
 
 import java.util.concurrent.Callable;
 import java.util.concurrent.Executors;
@@ -41,7 +44,7 @@ public class MantaroData {
     private static Connection connection;
     private static ManagedDatabase db;
 
-    private static final JedisPool defaultJedisPool = new JedisPool(config().get().jedisPoolAddress, config().get().jedisPoolPort);
+    private static volatile RedisClient redis;
 
     static {
         Metrics.THREAD_POOL_COLLECTOR.add("mantaro-data", exec);
@@ -82,7 +85,16 @@ public class MantaroData {
 
     public static ManagedDatabase db() {
         if (db == null) {
-            db = new ManagedDatabase(conn());
+            var config = config().get();
+            //Always on: there's more kept per node than the entity cache.
+            var invalidations = new InvalidationChannel(redis());
+            EntityCache cache = null;
+            if (config.isEntityCacheEnabled()) {
+                cache = new EntityCache(invalidations, config.getEntityCacheSize(), config.getEntityCacheTtlSeconds());
+            }
+
+            var metrics = new QueryMetrics(config.getSlowQueryThresholdMs(), config.getSlowQuerySampleRate(), config.getQueryPayloadSampleRate());
+            db = new ManagedDatabase(conn(), invalidations, cache, metrics, config.getWriteBehindIntervalMs(), config.getWriteBehindBatchSize());
         }
 
         return db;
@@ -100,7 +112,19 @@ public class MantaroData {
         getExecutor().submit(runnable);
     }
 
-    public static JedisPool getDefaultJedisPool() {
-        return MantaroData.defaultJedisPool;
+    public static RedisClient redis() {
+        if (redis == null) {
+            synchronized (MantaroData.class) {
+                if (redis == null) {
+                    var config = config().get();
+                    redis = new RedisClient(config.getJedisPoolAddress(), config.getJedisPoolPort(),
+                            config.getRedisPoolSize(), config.getRedisPoolMinIdle(), config.getRedisBorrowTimeoutMs(),
+                            config.getRedisConnectTimeoutMs(), config.getRedisSocketTimeoutMs()
+                    );
+                }
+            }
+        }
+
+        return redis;
     }
 }
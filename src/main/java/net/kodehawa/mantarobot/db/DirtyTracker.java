@@ -0,0 +1,192 @@
+/*
+ * Copyright (C) 2016-2020 David Rubio Escares / Kodehawa
+ *
+ *  Mantaro is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  Mantaro is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro.  If not, see http://www.gnu.org/licenses/
+ */
+
+package net.kodehawa.mantarobot.db;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.rethinkdb.RethinkDB;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import static com.rethinkdb.RethinkDB.r;
+
+/**
+ * Keeps the document each loaded entity came from, so a save can send only what changed.
+ * <br>Entities mutate their collections directly through getters all over the place, so tracking setters isn't an
+ * option: instead, the entity is compared against the document it was loaded from when it's saved, and the
+ * difference is turned into a ReQL update.
+ * <br>Snapshots are held by identity with weak keys, so they go away with the entity.
+ */
+public class DirtyTracker {
+    private static final TypeReference<Map<String, Object>> MAP_TYPE = new TypeReference<>() { };
+
+    private final Cache<Object, Map<String, Object>> snapshots = CacheBuilder.newBuilder()
+            .weakKeys()
+            .build();
+
+    /**
+     * Converts a raw document into an entity and remembers the document as its base.
+     *
+     * @param document The document, as returned from the database.
+     * @param type The class of the entity.
+     * @param <T> The type of the entity.
+     * @return The entity.
+     */
+    @Nonnull
+    public <T> T track(@Nonnull Map<String, Object> document, @Nonnull Class<T> type) {
+        T value = RethinkDB.getResultMapper().convertValue(document, type);
+        snapshots.put(value, document);
+        return value;
+    }
+
+    /**
+     * Computes what changed on this object since it was loaded (or last saved), and takes it as the new base.
+     *
+     * @param object The object that's about to be saved.
+     * @param replace Whether this save replaces the document. If it doesn't, removed fields are left alone, same as
+     *                an updating insert would do.
+     * @return The changes as an update document (empty if nothing changed), or null if this object isn't tracked,
+     * in which case it has to be written whole.
+     */
+    @Nullable
+    public Map<String, Object> changes(@Nonnull ManagedObject object, boolean replace) {
+        return changes(object, RethinkDB.getResultMapper().convertValue(object, MAP_TYPE), replace);
+    }
+
+    /**
+     * Same as {@link #changes(ManagedObject, boolean)}, for when the object has already been converted to a document.
+     *
+     * @param current The object as a document. Taken as the new base, so it mustn't be modified afterwards.
+     */
+    @Nullable
+    public Map<String, Object> changes(@Nonnull ManagedObject object, @Nonnull Map<String, Object> current, boolean replace) {
+        var base = snapshots.getIfPresent(object);
+        if (base == null) {
+            return null;
+        }
+
+        snapshots.put(object, current);
+        return diff(base, current, replace);
+    }
+
+    /**
+     * Forgets the base of this object, so the next save writes it whole.
+     */
+    public void untrack(@Nonnull Object object) {
+        snapshots.invalidate(object);
+    }
+
+    private static Map<String, Object> diff(Map<String, Object> base, Map<String, Object> current, boolean replace) {
+        Map<String, Object> changes = new HashMap<>();
+        for (var entry : current.entrySet()) {
+            var key = entry.getKey();
+            var value = entry.getValue();
+            if (!base.containsKey(key)) {
+                changes.put(key, value);
+                continue;
+            }
+
+            var old = base.get(key);
+            if (same(old, value)) {
+                continue;
+            }
+
+            if (old instanceof Map && value instanceof Map) {
+                @SuppressWarnings("unchecked")
+                var oldMap = (Map<String, Object>) old;
+                @SuppressWarnings("unchecked")
+                var newMap = (Map<String, Object>) value;
+                //update() merges nested objects, so removed keys would stay around: send the whole thing as a literal then.
+                if (!replace || newMap.keySet().containsAll(oldMap.keySet())) {
+                    changes.put(key, diff(oldMap, newMap, replace));
+                } else {
+                    changes.put(key, r.literal(newMap));
+                }
+            } else {
+                //Arrays and scalars are replaced as a whole by update().
+                changes.put(key, value);
+            }
+        }
+
+        if (replace) {
+            for (var key : base.keySet()) {
+                if (!current.containsKey(key)) {
+                    changes.put(key, r.literal());
+                }
+            }
+        }
+
+        return changes;
+    }
+
+    //Like equals, but 1 and 1L are the same number: the driver and Jackson don't always agree on which one to use.
+    private static boolean same(Object a, Object b) {
+        if (a instanceof Number && b instanceof Number) {
+            var x = (Number) a;
+            var y = (Number) b;
+            if (isIntegral(x) && isIntegral(y)) {
+                return x.longValue() == y.longValue();
+            }
+
+            return x.doubleValue() == y.doubleValue();
+        }
+
+        if (a instanceof Map && b instanceof Map) {
+            var x = (Map<?, ?>) a;
+            var y = (Map<?, ?>) b;
+            if (x.size() != y.size()) {
+                return false;
+            }
+
+            for (var entry : x.entrySet()) {
+                if (!y.containsKey(entry.getKey()) || !same(entry.getValue(), y.get(entry.getKey()))) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        if (a instanceof List && b instanceof List) {
+            var x = (List<?>) a;
+            var y = (List<?>) b;
+            if (x.size() != y.size()) {
+                return false;
+            }
+
+            for (int i = 0; i < x.size(); i++) {
+                if (!same(x.get(i), y.get(i))) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        return Objects.equals(a, b);
+    }
+
+    private static boolean isIntegral(Number n) {
+        return n instanceof Long || n instanceof Integer || n instanceof Short || n instanceof Byte;
+    }
+}
@@ -0,0 +1,292 @@
+/*
+ * Copyright (C) 2016-2020 David Rubio Escares / Kodehawa
+ *
+ *  Mantaro is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  Mantaro is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro.  If not, see http://www.gnu.org/licenses/
+ */
+
+package net.kodehawa.mantarobot.db;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.rethinkdb.RethinkDB;
+import net.kodehawa.mantarobot.db.entities.DBGuild;
+import net.kodehawa.mantarobot.db.entities.DBUser;
+import net.kodehawa.mantarobot.db.entities.GuildCommandConfig;
+import net.kodehawa.mantarobot.db.entities.Marriage;
+import net.kodehawa.mantarobot.db.entities.PremiumKey;
+import net.kodehawa.mantarobot.utils.exporters.Metrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Node-local read-through cache for entities that are read a lot more than they're written (guilds, users, marriages
+ * and premium keys).
+ * <br>Entries are the raw documents kept as serialized JSON, so every read hands out its own copy: callers are free to
+ * mutate what they get without affecting other threads. Writes invalidate the local entry and publish the key on the
+ * {@link InvalidationChannel}, so other nodes drop their copy too.
+ * <br>Every invalidation bumps a generation for the key, and loads only keep what they read if the generation didn't
+ * change while they were at it: a load that raced with a write might have read the document from before it.
+ */
+public class EntityCache {
+    private static final Logger log = LoggerFactory.getLogger(EntityCache.class);
+    //Marks an entity we know doesn't exist on the database.
+    private static final byte[] ABSENT = new byte[0];
+    private static final TypeReference<Map<String, Object>> DOCUMENT_TYPE = new TypeReference<>() { };
+    //Only rarely-written entities go here: players change way too often for this to be worth it.
+    private static final Set<String> CACHED_TABLES = Set.of(
+            DBGuild.DB_TABLE, DBUser.DB_TABLE, Marriage.DB_TABLE, PremiumKey.DB_TABLE, GuildCommandConfig.CACHE_TABLE
+    );
+
+    private final Cache<String, byte[]> cache;
+    //Things computed from cached documents, dropped along with them.
+    private final Cache<String, Derived> derived;
+    private final Generations generations = new Generations();
+    private final InvalidationChannel invalidations;
+
+    public EntityCache(@Nonnull InvalidationChannel invalidations, long maximumSize, long ttlSeconds) {
+        this.invalidations = invalidations;
+        this.cache = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+                .build();
+        this.derived = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+                .build();
+
+        invalidations.addListener(new InvalidationChannel.Listener() {
+            @Override
+            public void invalidated(@Nonnull String table, @Nonnull String id) {
+                drop(key(table, id));
+            }
+
+            @Override
+            public void reset() {
+                generations.bumpAll();
+
+                cache.invalidateAll();
+                derived.invalidateAll();
+            }
+        });
+    }
+
+    /**
+     * Gets an entity document from the cache, loading it from the database if it's not there.
+     *
+     * @param table The table this entity lives on.
+     * @param id The id of the entity on said table.
+     * @param loader Loads the raw document from the database. Can return null.
+     * @return A fresh copy of the document, or null if it doesn't exist.
+     */
+    @Nullable
+    public Map<String, Object> get(@Nonnull String table, @Nonnull String id, @Nonnull Supplier<Map<String, Object>> loader) {
+        var key = key(table, id);
+        var cached = cache.getIfPresent(key);
+        if (cached != null) {
+            var value = read(cached);
+            if (value != null || cached == ABSENT) {
+                Metrics.ENTITY_CACHE_REQUESTS.labels(table, "hit").inc();
+                return value;
+            }
+        }
+
+        Metrics.ENTITY_CACHE_REQUESTS.labels(table, "miss").inc();
+        var generation = generations.get(key);
+        var value = loader.get();
+        put(key, generation, write(value));
+        Metrics.ENTITY_CACHE_SIZE.set(cache.size());
+        return value;
+    }
+
+    /**
+     * Gets many entity documents from the cache, loading the ones that aren't there in a single call to the loader.
+     *
+     * @param table The table these entities live on.
+     * @param ids The ids of the entities on said table.
+     * @param loader Loads the missing documents from the database, keyed by id. Ids that don't exist can be left out.
+     * @return Fresh copies of the documents that exist, keyed by id.
+     */
+    @Nonnull
+    public Map<String, Map<String, Object>> getAll(@Nonnull String table, @Nonnull Collection<String> ids,
+                                                   @Nonnull Function<Collection<String>, Map<String, Map<String, Object>>> loader) {
+        Map<String, Map<String, Object>> result = new HashMap<>();
+        List<String> missing = new ArrayList<>();
+        for (var id : ids) {
+            var cached = cache.getIfPresent(key(table, id));
+            var value = cached == null ? null : read(cached);
+            if (value == null && cached != ABSENT) {
+                missing.add(id);
+                continue;
+            }
+
+            Metrics.ENTITY_CACHE_REQUESTS.labels(table, "hit").inc();
+            if (value != null) {
+                result.put(id, value);
+            }
+        }
+
+        if (missing.isEmpty()) {
+            return result;
+        }
+
+        Metrics.ENTITY_CACHE_REQUESTS.labels(table, "miss").inc(missing.size());
+        long[] generation = new long[missing.size()];
+        for (int i = 0; i < generation.length; i++) {
+            generation[i] = generations.get(key(table, missing.get(i)));
+        }
+
+        var loaded = loader.apply(missing);
+        for (int i = 0; i < generation.length; i++) {
+            var id = missing.get(i);
+            var value = loaded.get(id);
+            put(key(table, id), generation[i], write(value));
+            if (value != null) {
+                result.put(id, value);
+            }
+        }
+
+        Metrics.ENTITY_CACHE_SIZE.set(cache.size());
+        return result;
+    }
+
+    /**
+     * Gets something computed from a cached entity, computing it if it's not there. It's dropped whenever the entity
+     * is invalidated, here or on another node, so it never outlives what it was computed from.
+     * <br>Unlike entities, the same instance is handed out to everyone: only use this for immutable values.
+     * <br>Values computed while the entity was invalidated aren't kept, same as loads: compute has to read the entity
+     * itself (through this cache), not use a copy read before calling this.
+     *
+     * @param table The table the entity lives on.
+     * @param id The id of the entity on said table.
+     * @param compute Computes the value.
+     * @return The value.
+     */
+    @Nonnull
+    @SuppressWarnings("unchecked")
+    public <T> T derive(@Nonnull String table, @Nonnull String id, @Nonnull Supplier<T> compute) {
+        var key = key(table, id);
+        var generation = generations.get(key);
+        Derived value;
+        try {
+            //Only one thread computes it, the rest wait for it.
+            value = derived.get(key, () -> new Derived(compute.get(), generation));
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+
+            throw new IllegalStateException(e.getCause());
+        }
+
+        //Computed from something that got invalidated since: don't keep it, and don't trust it either.
+        if (value.generation != generations.get(key)) {
+            derived.asMap().remove(key, value);
+            return compute.get();
+        }
+
+        return (T) value.value;
+    }
+
+    /**
+     * Drops an entity from this node's cache and tells the rest of the nodes to drop it too.
+     *
+     * @param table The table this entity lives on.
+     * @param id The id of the entity on said table.
+     */
+    public void invalidate(@Nonnull String table, @Nonnull String id) {
+        var key = key(table, id);
+        drop(key);
+        invalidations.publish(table, id);
+    }
+
+    public boolean isCached(@Nonnull String table) {
+        return CACHED_TABLES.contains(table);
+    }
+
+    private void drop(String key) {
+        generations.bump(key);
+        cache.invalidate(key);
+        derived.invalidate(key);
+    }
+
+    private void put(String key, long generation, byte[] serialized) {
+        if (serialized == null) {
+            return;
+        }
+
+        generations.keep(cache, key, serialized, key, generation);
+    }
+
+    private static String key(String table, String id) {
+        return table + ":" + id;
+    }
+
+    private static Map<String, Object> read(byte[] bytes) {
+        if (bytes == ABSENT) {
+            return null;
+        }
+
+        try {
+            return mapper().readValue(bytes, DOCUMENT_TYPE);
+        } catch (IOException e) {
+            log.error("Couldn't deserialize cached document", e);
+            return null;
+        }
+    }
+
+    private static byte[] write(Map<String, Object> value) {
+        if (value == null) {
+            return ABSENT;
+        }
+
+        try {
+            return mapper().writeValueAsBytes(value);
+        } catch (IOException e) {
+            log.error("Couldn't serialize document {} for caching", value.get("id"), e);
+            return null;
+        }
+    }
+
+    private static ObjectMapper mapper() {
+        //Same mapper the driver uses to (de)serialize documents, so a cached document looks exactly like a loaded one.
+        return RethinkDB.getResultMapper();
+    }
+
+    private static class Derived {
+        private final Object value;
+        //Generation of the entity when it started being computed.
+        private final long generation;
+
+        private Derived(Object value, long generation) {
+            this.value = value;
+            this.generation = generation;
+        }
+    }
+}
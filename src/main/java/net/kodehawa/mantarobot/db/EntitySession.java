@@ -0,0 +1,259 @@
+/*
+ * Copyright (C) 2016-2020 David Rubio Escares / Kodehawa
+ *
+ *  Mantaro is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  Mantaro is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro.  If not, see http://www.gnu.org/licenses/
+ */
+
+package net.kodehawa.mantarobot.db;
+
+import net.kodehawa.mantarobot.commands.currency.seasons.Season;
+import net.kodehawa.mantarobot.commands.currency.seasons.SeasonPlayer;
+import net.kodehawa.mantarobot.db.entities.DBGuild;
+import net.kodehawa.mantarobot.db.entities.DBUser;
+import net.kodehawa.mantarobot.db.entities.GuildCommandConfig;
+import net.kodehawa.mantarobot.db.entities.GuildCommandGate;
+import net.kodehawa.mantarobot.db.entities.Marriage;
+import net.kodehawa.mantarobot.db.entities.Player;
+import net.kodehawa.mantarobot.utils.exporters.Metrics;
+
+import javax.annotation.CheckReturnValue;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Request-scoped view over {@link ManagedDatabase}.
+ * <br>Every entity requested through a session is loaded at most once while the session is open, so the
+ * processor, the registry and the command contexts all share the same instance for a single message.
+ * <br>Once {@link #close() closed} (or if {@link #detached() detached}), lookups go straight to the database again,
+ * this is so callbacks that outlive the command (operations, for example) never see stale data.
+ * <br>Saving or deleting an entity through the session (which {@link ManagedObject#save()} and friends do, on the
+ * thread that opened it) drops any other copy of it the session had, so the next lookup sees what was written.
+ * {@link #refresh(ManagedObject)} does the same on demand.
+ * <br>Sessions are opened with {@link #open(ManagedDatabase)} and have to be closed on the same thread.
+ */
+public class EntitySession implements AutoCloseable {
+    private static final ThreadLocal<EntitySession> CURRENT = new ThreadLocal<>();
+
+    private final ManagedDatabase db;
+    private final Map<String, Object> entities = new HashMap<>();
+    private volatile boolean open;
+    //Bumped on every eviction, so loads that raced with one don't put back what they read.
+    private long evictions;
+
+    private EntitySession(ManagedDatabase db, boolean open) {
+        this.db = db;
+        this.open = open;
+    }
+
+    /**
+     * Opens a session on this thread, which {@link #current(ManagedDatabase)} hands out until it's closed.
+     *
+     * @param db The database to delegate to.
+     * @return The session. Close it once the work it's for is done.
+     */
+    @Nonnull
+    public static EntitySession open(@Nonnull ManagedDatabase db) {
+        var session = new EntitySession(db, true);
+        CURRENT.set(session);
+        return session;
+    }
+
+    /**
+     * Creates a session that never caches anything. Used by contexts created outside of the command processor.
+     *
+     * @param db The database to delegate to.
+     * @return A session that always hits the database.
+     */
+    public static EntitySession detached(@Nonnull ManagedDatabase db) {
+        return new EntitySession(db, false);
+    }
+
+    /**
+     * Gets the session opened on this thread, for code that doesn't get handed one (entity helpers, for example).
+     *
+     * @param db The database to delegate to if there's no open session.
+     * @return The open session of this thread, or a detached one.
+     */
+    @Nonnull
+    public static EntitySession current(@Nonnull ManagedDatabase db) {
+        var session = CURRENT.get();
+        return session != null && session.open ? session : detached(db);
+    }
+
+    @Nonnull
+    public ManagedDatabase db() {
+        return db;
+    }
+
+    @Nonnull
+    @CheckReturnValue
+    public DBGuild getGuild(@Nonnull String guildId) {
+        return load("guild", DBGuild.DB_TABLE + ":" + guildId, () -> db.getGuild(guildId));
+    }
+
+    /**
+     * Gets the command gating settings of a guild. Cheaper than {@link #getGuild(String)}, use it when that's all
+     * that's needed.
+     */
+    @Nonnull
+    @CheckReturnValue
+    public GuildCommandConfig getGuildCommandConfig(@Nonnull String guildId) {
+        return load("guild_command_config", GuildCommandConfig.CACHE_TABLE + ":" + guildId, () -> db.getGuildCommandConfig(guildId));
+    }
+
+    @Nonnull
+    @CheckReturnValue
+    public GuildCommandGate getGuildCommandGate(@Nonnull String guildId) {
+        return load("guild_command_gate", "gate:" + guildId, () -> db.getGuildCommandGate(guildId, () -> getGuildCommandConfig(guildId)));
+    }
+
+    @Nonnull
+    @CheckReturnValue
+    public DBUser getUser(@Nonnull String userId) {
+        return load("user", DBUser.DB_TABLE + ":" + userId, () -> db.getUser(userId));
+    }
+
+    @Nonnull
+    @CheckReturnValue
+    public Player getPlayer(@Nonnull String userId) {
+        return load("player", Player.DB_TABLE + ":" + userId, () -> db.getPlayer(userId));
+    }
+
+    @Nonnull
+    @CheckReturnValue
+    public SeasonPlayer getPlayerForSeason(@Nonnull String userId, Season season) {
+        return load("season_player", SeasonPlayer.DB_TABLE + ":" + userId + ":" + season, () -> db.getPlayerForSeason(userId, season));
+    }
+
+    @Nullable
+    @CheckReturnValue
+    public Marriage getMarriage(@Nullable String marriageId) {
+        if (marriageId == null) {
+            return null;
+        }
+
+        return load("marriage", Marriage.DB_TABLE + ":" + marriageId, () -> db.getMarriage(marriageId));
+    }
+
+    /**
+     * Saves an entity by replacing it, see {@link ManagedDatabase#save(ManagedObject)}.
+     * Other copies of it this session had are dropped: the saved one is what's on the database now, so it stays.
+     */
+    public void save(@Nonnull ManagedObject object) {
+        db.save(object);
+        evict(object, object);
+    }
+
+    /**
+     * Same as {@link #save(ManagedObject)}, updating instead, see {@link ManagedDatabase#saveUpdating(ManagedObject)}.
+     */
+    public void saveUpdating(@Nonnull ManagedObject object) {
+        db.saveUpdating(object);
+        evict(object, object);
+    }
+
+    /**
+     * Deletes an entity, dropping every copy of it this session had.
+     */
+    public void delete(@Nonnull ManagedObject object) {
+        db.delete(object);
+        evict(object, null);
+    }
+
+    /**
+     * Forgets the copy of this entity the session has (and anything computed from it), so the next lookup loads it again.
+     *
+     * @param object The entity to refresh.
+     */
+    public void refresh(@Nonnull ManagedObject object) {
+        evict(object, null);
+    }
+
+    public boolean isOpen() {
+        return open;
+    }
+
+    /**
+     * Closes this session. Cached entities are dropped, and any further lookup will go to the database.
+     */
+    @Override
+    public void close() {
+        synchronized (entities) {
+            open = false;
+            entities.clear();
+        }
+
+        if (CURRENT.get() == this) {
+            CURRENT.remove();
+        }
+    }
+
+    private void evict(ManagedObject object, Object keep) {
+        if (!open) {
+            return;
+        }
+
+        synchronized (entities) {
+            evictions++;
+            entities.values().removeIf(value -> value != keep && value instanceof ManagedObject &&
+                    ((ManagedObject) value).getTableName().equals(object.getTableName()) &&
+                    ((ManagedObject) value).getId().equals(object.getId())
+            );
+
+            if (object instanceof DBGuild) {
+                entities.remove(GuildCommandConfig.CACHE_TABLE + ":" + object.getId());
+                entities.remove("gate:" + object.getId());
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T load(String type, String key, Supplier<T> loader) {
+        if (!open) {
+            return loader.get();
+        }
+
+        long evictions;
+        synchronized (entities) {
+            // Could've been closed while we waited for the lock.
+            if (!open) {
+                return loader.get();
+            }
+
+            Object cached = entities.get(key);
+            if (cached != null) {
+                Metrics.ENTITY_SESSION_HITS.labels(type).inc();
+                return (T) cached;
+            }
+
+            evictions = this.evictions;
+        }
+
+        //Loaded without holding the lock, so lookups of other entities (or from other threads) don't wait on it.
+        T value = loader.get();
+        Metrics.ENTITY_SESSION_LOADS.labels(type).inc();
+        synchronized (entities) {
+            //Something was written while we were loading, so what we have might be from before it.
+            if (!open || evictions != this.evictions) {
+                return value;
+            }
+
+            //Loaded by someone else in the meantime: hand out theirs, so everyone shares the same instance.
+            Object existing = entities.putIfAbsent(key, value);
+            return existing != null ? (T) existing : value;
+        }
+    }
+}
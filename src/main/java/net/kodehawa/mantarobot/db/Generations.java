@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2016-2020 David Rubio Escares / Kodehawa
+ *
+ *  Mantaro is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  Mantaro is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro.  If not, see http://www.gnu.org/licenses/
+ */
+
+package net.kodehawa.mantarobot.db;
+
+import com.google.common.cache.Cache;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counters bumped whenever an entity is invalidated, so what's kept off a load can be checked against writes that
+ * happened while it was loading: read the generation before loading, and keep the result with
+ * {@link #keep(Cache, Object, Object, String, long)}.
+ * <br>Striped by key so they don't grow with what's kept. Keys sharing a stripe only means some loads don't get kept
+ * after an unrelated invalidation.
+ */
+class Generations {
+    private static final int STRIPES = 4096;
+
+    private final AtomicLongArray generations = new AtomicLongArray(STRIPES);
+
+    long get(String key) {
+        return generations.get(stripe(key));
+    }
+
+    //Has to happen before dropping what's kept: a load putting its value back then either sees the new generation, or
+    //is done before the entry is dropped.
+    void bump(String key) {
+        generations.incrementAndGet(stripe(key));
+    }
+
+    void bumpAll() {
+        for (int i = 0; i < STRIPES; i++) {
+            generations.incrementAndGet(i);
+        }
+    }
+
+    /**
+     * Puts a loaded value on a cache, unless the entity was invalidated while it was being loaded: then it might be from
+     * before the write, so it's taken out again.
+     *
+     * @param key The entity the value was loaded from, as passed to {@link #bump(String)}.
+     * @param generation What {@link #get(String)} returned before loading it.
+     */
+    <K, V> void keep(Cache<K, V> cache, K cacheKey, V value, String key, long generation) {
+        cache.put(cacheKey, value);
+        if (get(key) != generation) {
+            cache.asMap().remove(cacheKey, value);
+        }
+    }
+
+    private static int stripe(String key) {
+        return key.hashCode() & (STRIPES - 1);
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2016-2020 David Rubio Escares / Kodehawa
+ *
+ *  Mantaro is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  Mantaro is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro.  If not, see http://www.gnu.org/licenses/
+ */
+
+package net.kodehawa.mantarobot.db;
+
+import net.kodehawa.mantarobot.data.MantaroData;
+import net.kodehawa.mantarobot.utils.exporters.Metrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import redis.clients.jedis.JedisPubSub;
+
+import javax.annotation.Nonnull;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Redis channel nodes use to tell each other to drop what they keep from an entity, after writing it.
+ * <br>It runs whether the entity cache is enabled or not: there's more kept per node than the cache (premium status,
+ * guild prefixes and languages...), and none of it should outlive a write on another node.
+ */
+public class InvalidationChannel {
+    private static final Logger log = LoggerFactory.getLogger(InvalidationChannel.class);
+    private static final String CHANNEL = "mantaro-entity-invalidation";
+
+    private final String nodeId = UUID.randomUUID().toString();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final RedisClient redis;
+
+    public InvalidationChannel(@Nonnull RedisClient redis) {
+        this.redis = redis;
+
+        var subscriber = new Thread(this::subscribe, "Entity-Invalidation");
+        subscriber.setDaemon(true);
+        subscriber.start();
+    }
+
+    /**
+     * Tells the rest of the nodes to drop what they have of an entity. Doesn't drop anything on this one.
+     *
+     * @param table The table this entity lives on.
+     * @param id The id of the entity on said table.
+     */
+    public void publish(@Nonnull String table, @Nonnull String id) {
+        var key = table + ":" + id;
+        var message = nodeId + "|" + System.currentTimeMillis() + "|" + key;
+        MantaroData.queue(() -> {
+            try {
+                redis.run("entity_invalidation_publish", jedis -> jedis.publish(CHANNEL, message));
+            } catch (Exception e) {
+                log.warn("Couldn't publish invalidation for {}", key, e);
+            }
+        });
+    }
+
+    /**
+     * Adds something to call when another node invalidates an entity.
+     */
+    public void addListener(@Nonnull Listener listener) {
+        listeners.add(listener);
+    }
+
+    private void subscribe() {
+        //subscribe() blocks until the connection dies, so just keep re-subscribing.
+        while (true) {
+            try {
+                redis.subscribe(new PubSub(), CHANNEL);
+            } catch (Exception e) {
+                log.warn("Lost entity invalidation subscription, dropping everything kept locally and retrying", e);
+                //We might have missed invalidations in the meantime.
+                for (var listener : listeners) {
+                    try {
+                        listener.reset();
+                    } catch (Exception ex) {
+                        log.warn("Error resetting after losing the invalidation subscription", ex);
+                    }
+                }
+
+                try {
+                    Thread.sleep(5000);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    public interface Listener {
+        /**
+         * Another node wrote an entity.
+         *
+         * @param table The table the entity lives on.
+         * @param id The id of the entity on said table.
+         */
+        void invalidated(@Nonnull String table, @Nonnull String id);
+
+        /**
+         * Invalidations might have been missed, so nothing kept can be trusted anymore.
+         */
+        void reset();
+    }
+
+    private class PubSub extends JedisPubSub {
+        @Override
+        public void onMessage(String channel, String message) {
+            // nodeId|timestamp|table:id
+            var parts = message.split("\\|", 3);
+            if (parts.length != 3 || parts[0].equals(nodeId)) {
+                return;
+            }
+
+            var separator = parts[2].indexOf(':');
+            if (separator > 0) {
+                var table = parts[2].substring(0, separator);
+                var id = parts[2].substring(separator + 1);
+                for (var listener : listeners) {
+                    try {
+                        listener.invalidated(table, id);
+                    } catch (Exception e) {
+                        log.warn("Error handling remote invalidation of {}", parts[2], e);
+                    }
+                }
+            }
+
+            try {
+                Metrics.ENTITY_CACHE_INVALIDATION_LAG.observe(System.currentTimeMillis() - Long.parseLong(parts[1]));
+            } catch (NumberFormatException ignored) { }
+        }
+    }
+}
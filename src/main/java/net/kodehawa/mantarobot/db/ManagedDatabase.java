@@ -16,6 +16,14 @@
 
 package net.kodehawa.mantarobot.db;
 
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.rethinkdb.RethinkDB;
+import com.rethinkdb.gen.exc.ReqlOpFailedError;
+import com.rethinkdb.gen.ast.ReqlExpr;
+import com.rethinkdb.gen.ast.ReqlFunction1;
+import com.rethinkdb.gen.ast.ReqlFunction3;
 import com.rethinkdb.model.OptArgs;
 import com.rethinkdb.net.Connection;
 import com.rethinkdb.net.Result;
@@ -27,22 +35,120 @@ import net.kodehawa.mantarobot.ExtraRuntimeOptions;
 import net.kodehawa.mantarobot.commands.currency.seasons.Season;
 import net.kodehawa.mantarobot.commands.currency.seasons.SeasonPlayer;
 import net.kodehawa.mantarobot.db.entities.*;
+import net.kodehawa.mantarobot.utils.exporters.Metrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.annotation.CheckReturnValue;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 import static com.rethinkdb.RethinkDB.r;
 
 public class ManagedDatabase {
     private static final Logger log = LoggerFactory.getLogger(ManagedDatabase.class);
+    private static final int STREAM_BATCH_ROWS = 1000;
+    private static final TypeReference<Map<String, Object>> DOCUMENT_TYPE = new TypeReference<>() { };
+    //Fields only written by their own atomic updates, by table. Saves leave them as they are on the database, so a copy
+    //loaded before one of those can't undo it.
+    private static final Map<String, List<String>> ATOMIC_FIELDS = Map.of(Player.DB_TABLE, Player.ATOMIC_FIELDS);
     private final Connection conn;
+    private final InvalidationChannel invalidations;
+    private final EntityCache cache;
+    private final WriteBehindQueue writeQueue;
+    private final DirtyTracker tracker = new DirtyTracker();
+    private final MantaroObjReplica mantaroReplica;
+    private final PremiumResolver premiumResolver = new PremiumResolver(this);
+    private final QueryMetrics metrics;
+    //Prefix, language and log channel of the guilds we've loaded the command config of, keyed by guild id.
+    //Guild saves drop them, here and (through the invalidation channel) on other nodes. The expiry covers running
+    //without one. Loads that raced with a save aren't kept, same as on the entity cache.
+    private final Cache<Long, KnownGuild> knownGuilds = CacheBuilder.newBuilder()
+            .maximumSize(200_000)
+            .expireAfterWrite(5, TimeUnit.MINUTES)
+            .build();
+    //Language users picked for themselves ("" for none), same rules as the guild ones.
+    private final Cache<Long, String> knownUserLanguages = CacheBuilder.newBuilder()
+            .maximumSize(200_000)
+            .expireAfterWrite(5, TimeUnit.MINUTES)
+            .build();
+    private final Generations knownGenerations = new Generations();
 
     public ManagedDatabase(@Nonnull Connection conn) {
+        this(conn, null, null, new QueryMetrics(0, 0, 0), 0, 0);
+    }
+
+    /**
+     * @param conn The RethinkDB connection to use.
+     * @param invalidations Where to tell other nodes about writes (and hear about theirs), or null if this is the only one.
+     * @param cache The entity cache to read through, or null to always go to the database.
+     * @param metrics Where to record query metrics.
+     * @param writeBehindIntervalMs How often queued saves are flushed. 0 or less to save right away.
+     * @param writeBehindBatchSize Max amount of documents per insert when flushing queued saves.
+     */
+    public ManagedDatabase(@Nonnull Connection conn, @Nullable InvalidationChannel invalidations, @Nullable EntityCache cache,
+                           @Nonnull QueryMetrics metrics, long writeBehindIntervalMs, int writeBehindBatchSize) {
         this.conn = conn;
+        this.invalidations = invalidations;
+        this.cache = cache;
+        this.metrics = metrics;
+        this.writeQueue = writeBehindIntervalMs > 0 ? new WriteBehindQueue(this::writeBatch, writeBehindIntervalMs, writeBehindBatchSize) : null;
+        this.mantaroReplica = new MantaroObjReplica(conn, this::getMantaroData);
+        if (invalidations != null) {
+            invalidations.addListener(new InvalidationChannel.Listener() {
+                @Override
+                public void invalidated(@Nonnull String table, @Nonnull String id) {
+                    forgetKnown(table, id);
+                }
+
+                @Override
+                public void reset() {
+                    knownGenerations.bumpAll();
+                    knownGuilds.invalidateAll();
+                    knownUserLanguages.invalidateAll();
+                    premiumResolver.invalidate(PremiumResolver.INVALIDATION_TABLE, "*");
+                }
+            });
+        }
+    }
+
+    /**
+     * Creates the secondary indexes the queries here rely on, if they don't exist yet.
+     * Only blocks the first time, while new indexes are being built. Called once on startup.
+     */
+    public void ensureIndexes() {
+        ensureIndex(CustomCommand.DB_TABLE, "guild", command -> command.g("id").split(":", 1).nth(0));
+        ensureIndex(CustomCommand.DB_TABLE, "name", command -> command.g("id").split(":", 1).nth(1));
+        //Player ids are userId:scope, and "g" is the global scope.
+        ensureIndex(Player.DB_TABLE, "scope", player -> player.g("id").split(":").nth(-1));
+    }
+
+    private void ensureIndex(String table, String index, ReqlFunction1 function) {
+        try {
+            List<?> indexes = r.table(table).indexList().runAtom(conn, List.class);
+            if (indexes.contains(index)) {
+                return;
+            }
+
+            log.info("Creating index {} on table {}", index, table);
+            r.table(table).indexCreate(index, function).runAtom(conn);
+            r.table(table).indexWait(index).runAtom(conn);
+        } catch (Exception e) {
+            log.error("Couldn't create index {} on table {}", index, table, e);
+        }
     }
 
     private static void log(String message, Object... fmtArgs) {
@@ -60,8 +166,11 @@ public class ManagedDatabase {
     @Nullable
     @CheckReturnValue
     public CustomCommand getCustomCommand(@Nonnull String guildId, @Nonnull String name) {
-        log("Requesting custom command {}:{} from rethink", guildId, name);
-        return r.table(CustomCommand.DB_TABLE).get(guildId + ":" + name).runAtom(conn, CustomCommand.class);
+        String id = guildId + ":" + name;
+        return load(CustomCommand.DB_TABLE, id, CustomCommand.class, () -> {
+            log("Requesting custom command {}:{} from rethink", guildId, name);
+            return fetch(CustomCommand.DB_TABLE, id);
+        });
     }
 
     @Nullable
@@ -82,23 +191,20 @@ public class ManagedDatabase {
         return getCustomCommand(event.getGuild(), cmd);
     }
 
-    @Nonnull
-    @CheckReturnValue
-    public List<CustomCommand> getCustomCommands() {
-        log("Requesting all custom commands from rethink");
-        Result<CustomCommand> c = r.table(CustomCommand.DB_TABLE).run(conn, CustomCommand.class);
-        return c.toList();
+    public void forEachCustomCommand(@Nonnull Consumer<? super CustomCommand> consumer) {
+        forEach(CustomCommand.DB_TABLE, CustomCommand.class, consumer);
     }
 
     @Nonnull
     @CheckReturnValue
     public List<CustomCommand> getCustomCommands(@Nonnull String guildId) {
         log("Requesting all custom commands from guild {} from rethink", guildId);
-        Result<CustomCommand> c = r.table(CustomCommand.DB_TABLE)
+        return metrics.read(CustomCommand.DB_TABLE, "getAll", () -> r.table(CustomCommand.DB_TABLE)
                 .getAll(guildId)
                 .optArg("index", "guild")
-                .run(conn, CustomCommand.class);
-        return c.toList();
+                .run(conn, CustomCommand.class)
+                .toList()
+        );
     }
 
     @Nonnull
@@ -113,23 +219,288 @@ public class ManagedDatabase {
         return getCustomCommands(guild.getId());
     }
 
+    @CheckReturnValue
+    public long getCustomCommandCount(@Nonnull String guildId) {
+        log("Requesting custom command count of guild {} from rethink", guildId);
+        return metrics.read(CustomCommand.DB_TABLE, "count", () -> r.table(CustomCommand.DB_TABLE)
+                .getAll(guildId)
+                .optArg("index", "guild")
+                .count()
+                .runAtom(conn, Long.class)
+        );
+    }
+
+    @CheckReturnValue
+    public long getCustomCommandCount(@Nonnull Guild guild) {
+        return getCustomCommandCount(guild.getId());
+    }
+
+    /**
+     * Gets all custom commands with exactly this name, on any guild.
+     */
     @Nonnull
     @CheckReturnValue
     public List<CustomCommand> getCustomCommandsByName(@Nonnull String name) {
         log("Requesting all custom commands named {} from rethink", name);
-        String pattern = ':' + name + '$';
-        Result<CustomCommand> c = r.table(CustomCommand.DB_TABLE).filter(quote -> quote.g("id").match(pattern)).run(conn, CustomCommand.class);
-        return c.toList();
+        return metrics.read(CustomCommand.DB_TABLE, "getAll", () -> r.table(CustomCommand.DB_TABLE)
+                .getAll(name)
+                .optArg("index", "name")
+                .run(conn, CustomCommand.class)
+                .toList()
+        );
+    }
+
+    /**
+     * Gets the custom commands of these guilds whose name matches a pattern.
+     * Only the commands of the given guilds are looked at, so this doesn't depend on the size of the table.
+     *
+     * @param guildIds The guilds to look on.
+     * @param namePattern A regex the whole name has to match.
+     */
+    @Nonnull
+    @CheckReturnValue
+    public List<CustomCommand> getCustomCommandsByName(@Nonnull Collection<String> guildIds, @Nonnull String namePattern) {
+        if (guildIds.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        log("Requesting custom commands matching {} on {} guilds from rethink", namePattern, guildIds.size());
+        String pattern = '^' + namePattern + '$';
+        return metrics.read(CustomCommand.DB_TABLE, "filter", () -> r.table(CustomCommand.DB_TABLE)
+                .getAll(guildIds.toArray())
+                .optArg("index", "guild")
+                .filter(command -> command.g("id").split(":", 1).nth(1).match(pattern))
+                .run(conn, CustomCommand.class)
+                .toList()
+        );
     }
 
     @Nonnull
     @CheckReturnValue
     public DBGuild getGuild(@Nonnull String guildId) {
-        log("Requesting guild {} from rethink", guildId);
-        DBGuild guild = r.table(DBGuild.DB_TABLE).get(guildId).runAtom(conn, DBGuild.class);
+        DBGuild guild = load(DBGuild.DB_TABLE, guildId, DBGuild.class, () -> {
+            log("Requesting guild {} from rethink", guildId);
+            return fetch(DBGuild.DB_TABLE, guildId);
+        });
+
         return guild == null ? DBGuild.of(guildId) : guild;
     }
 
+    /**
+     * Gets the command gating settings of a guild, without loading the whole guild.
+     *
+     * @param guildId The id of the guild.
+     * @return The settings. Guilds that don't exist on the database get the defaults.
+     */
+    @Nonnull
+    @CheckReturnValue
+    @SuppressWarnings("unchecked")
+    public GuildCommandConfig getGuildCommandConfig(@Nonnull String guildId) {
+        long generation = knownGenerations.get(DBGuild.DB_TABLE + ":" + guildId);
+        Map<String, Object> document = null;
+        //Reads always see our own queued saves.
+        if (writeQueue != null) {
+            document = writeQueue.pending(DBGuild.DB_TABLE, guildId);
+        }
+
+        if (document == null) {
+            Supplier<Map<String, Object>> loader = () -> {
+                log("Requesting command config of guild {} from rethink", guildId);
+                return metrics.read(DBGuild.DB_TABLE, "get", () -> r.table(DBGuild.DB_TABLE)
+                        .get(guildId)
+                        .pluck("id", r.hashMap("data", r.array(GuildCommandConfig.DATA_FIELDS.toArray())))
+                        .default_((Object) null)
+                        .runAtom(conn, DOCUMENT_TYPE)
+                );
+            };
+
+            document = cache == null ? loader.get() : cache.get(GuildCommandConfig.CACHE_TABLE, guildId, loader);
+        }
+
+        if (document == null) {
+            rememberGuild(guildId, generation, null, null, null);
+            return new GuildCommandConfig(guildId);
+        }
+
+        //The view is flat, the guild document keeps all of this under data.
+        Map<String, Object> flat = new HashMap<>();
+        if (document.get("data") instanceof Map) {
+            var data = (Map<String, Object>) document.get("data");
+            for (String field : GuildCommandConfig.DATA_FIELDS) {
+                if (data.containsKey(field)) {
+                    flat.put(field, data.get(field));
+                }
+            }
+        }
+
+        flat.put("id", guildId);
+        var config = RethinkDB.getResultMapper().convertValue(flat, GuildCommandConfig.class);
+        rememberGuild(guildId, generation, config.getGuildCustomPrefix(), config.getLang(), config.getGuildLogChannel());
+        return config;
+    }
+
+    /**
+     * Gets the custom prefix of a guild only if this node already knows it, without ever going to the database.
+     * It's known once the command config of the guild has been loaded, so this is cheap enough to call for every message.
+     *
+     * @param guildId The id of the guild.
+     * @return The prefix, an empty string if the guild has none, or null if it isn't known yet.
+     */
+    @Nullable
+    @CheckReturnValue
+    public String peekGuildCustomPrefix(long guildId) {
+        var known = knownGuilds.getIfPresent(guildId);
+        return known == null ? null : known.prefix;
+    }
+
+    /**
+     * Gets the language of a guild only if this node already knows it, same as {@link #peekGuildCustomPrefix(long)}.
+     *
+     * @param guildId The id of the guild.
+     * @return The language, or null if it isn't known yet.
+     */
+    @Nullable
+    @CheckReturnValue
+    public String peekGuildLanguage(long guildId) {
+        var known = knownGuilds.getIfPresent(guildId);
+        return known == null ? null : known.lang;
+    }
+
+    /**
+     * Gets the log channel of a guild only if this node already knows it, same as {@link #peekGuildCustomPrefix(long)}.
+     *
+     * @param guildId The id of the guild.
+     * @return The id of the log channel, an empty string if the guild has none, or null if it isn't known yet.
+     */
+    @Nullable
+    @CheckReturnValue
+    public String peekGuildLogChannel(long guildId) {
+        var known = knownGuilds.getIfPresent(guildId);
+        return known == null ? null : known.logChannel;
+    }
+
+    /**
+     * Gets the language of a guild, loading its command config if this node doesn't know it yet.
+     * <br>Once known, this never goes to the database until the guild is saved or the entry expires, so it's fine to
+     * call from tasks and listeners that only need the language.
+     *
+     * @param guildId The id of the guild.
+     * @return The language. Guilds that don't exist on the database get en_US.
+     */
+    @Nonnull
+    @CheckReturnValue
+    public String getGuildLanguage(@Nonnull String guildId) {
+        try {
+            var lang = peekGuildLanguage(Long.parseLong(guildId));
+            if (lang != null) {
+                return lang;
+            }
+        } catch (NumberFormatException ignored) { }
+
+        var lang = getGuildCommandConfig(guildId).getLang();
+        return lang == null ? "en_US" : lang;
+    }
+
+    /**
+     * Gets the language a user set for themselves, loading only that field of the user if this node doesn't know it yet.
+     * Same caching rules as {@link #getGuildLanguage(String)}.
+     *
+     * @param userId The id of the user.
+     * @return The language, or null if the user hasn't set one.
+     */
+    @Nullable
+    @CheckReturnValue
+    @SuppressWarnings("unchecked")
+    public String getUserLanguage(@Nonnull String userId) {
+        long id;
+        try {
+            id = Long.parseLong(userId);
+        } catch (NumberFormatException e) {
+            return getUser(userId).getData().getLang();
+        }
+
+        var known = knownUserLanguages.getIfPresent(id);
+        if (known != null) {
+            return known.isEmpty() ? null : known;
+        }
+
+        long generation = knownGenerations.get(DBUser.DB_TABLE + ":" + userId);
+        Map<String, Object> document = null;
+        //Reads always see our own queued saves.
+        if (writeQueue != null) {
+            document = writeQueue.pending(DBUser.DB_TABLE, userId);
+        }
+
+        if (document == null) {
+            log("Requesting language of user {} from rethink", userId);
+            document = metrics.read(DBUser.DB_TABLE, "get", () -> r.table(DBUser.DB_TABLE)
+                    .get(userId)
+                    .pluck("id", r.hashMap("data", r.array("lang")))
+                    .default_((Object) null)
+                    .runAtom(conn, DOCUMENT_TYPE)
+            );
+        }
+
+        String lang = null;
+        if (document != null && document.get("data") instanceof Map) {
+            var value = ((Map<String, Object>) document.get("data")).get("lang");
+            if (value instanceof String && !((String) value).isEmpty()) {
+                lang = (String) value;
+            }
+        }
+
+        knownGenerations.keep(knownUserLanguages, id, lang == null ? "" : lang, DBUser.DB_TABLE + ":" + userId, generation);
+        return lang;
+    }
+
+    private void rememberGuild(String guildId, long generation, String prefix, String lang, String logChannel) {
+        try {
+            var known = new KnownGuild(
+                    prefix == null ? "" : prefix, lang == null ? "en_US" : lang, logChannel == null ? "" : logChannel
+            );
+            knownGenerations.keep(knownGuilds, Long.parseLong(guildId), known, DBGuild.DB_TABLE + ":" + guildId, generation);
+        } catch (NumberFormatException ignored) { }
+    }
+
+    //Guild and user writes can change the prefix, language, log channel or premium status: forget them once they're
+    //written (or queued, as reads see queued saves), so nothing loaded in the meantime sticks around.
+    private void forgetKnown(String table, String id) {
+        premiumResolver.invalidate(table, id);
+        knownGenerations.bump(table + ":" + id);
+        try {
+            if (table.equals(DBGuild.DB_TABLE)) {
+                knownGuilds.invalidate(Long.parseLong(id));
+            } else if (table.equals(DBUser.DB_TABLE)) {
+                knownUserLanguages.invalidate(Long.parseLong(id));
+            }
+        } catch (NumberFormatException ignored) { }
+    }
+
+    @Nonnull
+    @CheckReturnValue
+    public GuildCommandGate getGuildCommandGate(@Nonnull String guildId) {
+        return getGuildCommandGate(guildId, () -> getGuildCommandConfig(guildId));
+    }
+
+    /**
+     * Gets the compiled command gate of a guild. With the entity cache enabled it's only compiled again when the guild
+     * changes, otherwise it's compiled from the config every time.
+     *
+     * @param guildId The id of the guild.
+     * @param config Gets the config to compile it from, if it isn't kept. When it is, the config is read again through
+     *               the cache instead, as one read before might be older than the gate.
+     */
+    @Nonnull
+    @CheckReturnValue
+    public GuildCommandGate getGuildCommandGate(@Nonnull String guildId, @Nonnull Supplier<GuildCommandConfig> config) {
+        //Queued saves only invalidate once they're written, so don't keep what we compile off them.
+        if (cache == null || (writeQueue != null && writeQueue.isPending(DBGuild.DB_TABLE, guildId))) {
+            return GuildCommandGate.compile(config.get());
+        }
+
+        return cache.derive(GuildCommandConfig.CACHE_TABLE, guildId, () -> GuildCommandGate.compile(getGuildCommandConfig(guildId)));
+    }
+
     @Nonnull
     @CheckReturnValue
     public DBGuild getGuild(@Nonnull Guild guild) {
@@ -151,16 +522,40 @@ public class ManagedDatabase {
     @Nonnull
     @CheckReturnValue
     public MantaroObj getMantaroData() {
-        log("Requesting MantaroObj from rethink");
-        MantaroObj obj = r.table(MantaroObj.DB_TABLE).get("mantaro").runAtom(conn, MantaroObj.class);
+        MantaroObj obj = load(MantaroObj.DB_TABLE, MantaroObj.id, MantaroObj.class, () -> {
+            log("Requesting MantaroObj from rethink");
+            return fetch(MantaroObj.DB_TABLE, MantaroObj.id);
+        });
         return obj == null ? MantaroObj.create() : obj;
     }
 
+    /**
+     * Gets the local, read-only view of {@link MantaroObj}. Use this instead of {@link #getMantaroData()} when
+     * you only need to check something (blacklists, mutes), it doesn't touch the database.
+     */
+    @Nonnull
+    @CheckReturnValue
+    public MantaroObjReplica getMantaroReplica() {
+        return mantaroReplica;
+    }
+
+    /**
+     * Gets the cache of who's premium. Use this instead of loading keys when you only need to know whether a user or
+     * guild is premium.
+     */
+    @Nonnull
+    @CheckReturnValue
+    public PremiumResolver getPremiumResolver() {
+        return premiumResolver;
+    }
+
     @Nonnull
     @CheckReturnValue
     public Player getPlayer(@Nonnull String userId) {
-        log("Requesting player {} from rethink", userId);
-        Player player = r.table(Player.DB_TABLE).get(userId + ":g").runAtom(conn, Player.class);
+        Player player = load(Player.DB_TABLE, userId + ":g", Player.class, () -> {
+            log("Requesting player {} from rethink", userId);
+            return fetch(Player.DB_TABLE, userId + ":g");
+        });
         return player == null ? Player.of(userId) : player;
     }
 
@@ -179,8 +574,10 @@ public class ManagedDatabase {
     @Nonnull
     @CheckReturnValue
     public SeasonPlayer getPlayerForSeason(@Nonnull String userId, Season season) {
-        log("Requesting player {} (season {}) from rethink", userId, season);
-        SeasonPlayer player = r.table(SeasonPlayer.DB_TABLE).get(userId + ":" + season).runAtom(conn, SeasonPlayer.class);
+        SeasonPlayer player = load(SeasonPlayer.DB_TABLE, userId + ":" + season, SeasonPlayer.class, () -> {
+            log("Requesting player {} (season {}) from rethink", userId, season);
+            return fetch(SeasonPlayer.DB_TABLE, userId + ":" + season);
+        });
         return player == null ? SeasonPlayer.of(userId, season) : player;
     }
 
@@ -198,14 +595,18 @@ public class ManagedDatabase {
 
     @CheckReturnValue
     public long getAmountSeasonalPlayers() {
-        return r.table(SeasonPlayer.DB_TABLE).count().runAtom(conn, OptArgs.of("read_mode", "outdated"), Long.class);
+        return metrics.read(SeasonPlayer.DB_TABLE, "count", () ->
+                r.table(SeasonPlayer.DB_TABLE).count().runAtom(conn, OptArgs.of("read_mode", "outdated"), Long.class)
+        );
     }
 
     @Nonnull
     @CheckReturnValue
     public PlayerStats getPlayerStats(@Nonnull String userId) {
-        log("Requesting player STATS {} from rethink", userId);
-        PlayerStats playerStats = r.table(PlayerStats.DB_TABLE).get(userId).runAtom(conn, PlayerStats.class);
+        PlayerStats playerStats = load(PlayerStats.DB_TABLE, userId, PlayerStats.class, () -> {
+            log("Requesting player STATS {} from rethink", userId);
+            return fetch(PlayerStats.DB_TABLE, userId);
+        });
         return playerStats == null ? PlayerStats.of(userId) : playerStats;
     }
 
@@ -225,9 +626,9 @@ public class ManagedDatabase {
     @CheckReturnValue
     public List<Player> getPlayers() {
         log("Requesting all players from rethink");
-        String pattern = ":g$";
-        Result<Player> c = r.table(Player.DB_TABLE).filter(quote -> quote.g("id").match(pattern)).run(conn, Player.class);
-        return c.toList();
+        return metrics.read(Player.DB_TABLE, "getAll", () ->
+                r.table(Player.DB_TABLE).getAll("g").optArg("index", "scope").run(conn, Player.class).toList()
+        );
     }
 
     //Can be null and it's perfectly valid.
@@ -236,40 +637,67 @@ public class ManagedDatabase {
             return null;
         }
 
-        log("Requesting marriage {} from rethink", marriageId);
-        return r.table(Marriage.DB_TABLE).get(marriageId).runAtom(conn, Marriage.class);
+        return load(Marriage.DB_TABLE, marriageId, Marriage.class, () -> {
+            log("Requesting marriage {} from rethink", marriageId);
+            return fetch(Marriage.DB_TABLE, marriageId);
+        });
     }
 
-    @Nonnull
-    @CheckReturnValue
-    public List<Marriage> getMarriages() {
-        log("Requesting all marriages from rethink");
-        Result<Marriage> c = r.table(Marriage.DB_TABLE).run(conn, Marriage.class);
-        return c.toList();
+    public void forEachMarriage(@Nonnull Consumer<? super Marriage> consumer) {
+        forEach(Marriage.DB_TABLE, Marriage.class, consumer);
     }
 
-    @Nonnull
-    @CheckReturnValue
-    public List<PremiumKey> getPremiumKeys() {
-        log("Requesting all premium keys from rethink");
-        Result<PremiumKey> c = r.table(PremiumKey.DB_TABLE).run(conn, PremiumKey.class);
-        return c.toList();
+    public void forEachPremiumKey(@Nonnull Consumer<? super PremiumKey> consumer) {
+        forEach(PremiumKey.DB_TABLE, PremiumKey.class, consumer);
+    }
+
+    /**
+     * Goes through a whole table one document at a time.
+     * <br>Documents are fetched in batches of {@value #STREAM_BATCH_ROWS} as the consumer gets through them, so memory
+     * use doesn't depend on the size of the table. Reads are done with the outdated read mode, this is meant for
+     * bulk jobs, not for anything that needs to see the latest writes.
+     *
+     * @param table The table to go through.
+     * @param type What to deserialize every document into. Map works when plucking.
+     * @param consumer Gets called with every document.
+     * @param fields If given, only these fields are fetched (same syntax as ReQL's pluck).
+     */
+    public <T> void forEach(@Nonnull String table, @Nonnull Class<T> type, @Nonnull Consumer<? super T> consumer, @Nonnull Object... fields) {
+        log("Streaming all documents from {} from rethink", table);
+        ReqlExpr query = fields.length > 0 ? r.table(table).pluck(fields) : r.table(table);
+        OptArgs options = OptArgs.of("read_mode", "outdated").with("max_batch_rows", STREAM_BATCH_ROWS);
+        //Latency here includes the time spent on the consumer, but it's still useful to see how long bulk jobs take.
+        metrics.read(table, "scan", () -> {
+            //Only fetch the next batch once we're halfway through the current one, instead of buffering everything.
+            try (Result<T> c = query.run(conn, options, Result.FetchMode.PREEMPTIVE_HALF, type)) {
+                for (T value : c) {
+                    consumer.accept(value);
+                }
+            }
+
+            return null;
+        });
     }
 
     //Also tests if the key is valid or not!
     @Nullable
     @CheckReturnValue
     public PremiumKey getPremiumKey(@Nullable String id) {
-        log("Requesting premium key {} from rethink", id);
         if (id == null) return null;
-        return r.table(PremiumKey.DB_TABLE).get(id).runAtom(conn, PremiumKey.class);
+        return load(PremiumKey.DB_TABLE, id, PremiumKey.class, () -> {
+            log("Requesting premium key {} from rethink", id);
+            return fetch(PremiumKey.DB_TABLE, id);
+        });
     }
 
     @Nonnull
     @CheckReturnValue
     public DBUser getUser(@Nonnull String userId) {
-        log("Requesting user {} from rethink", userId);
-        DBUser user = r.table(DBUser.DB_TABLE).get(userId).runAtom(conn, DBUser.class);
+        DBUser user = load(DBUser.DB_TABLE, userId, DBUser.class, () -> {
+            log("Requesting user {} from rethink", userId);
+            return fetch(DBUser.DB_TABLE, userId);
+        });
+
         return user == null ? DBUser.of(userId) : user;
     }
 
@@ -285,30 +713,606 @@ public class ManagedDatabase {
         return getUser(member.getUser());
     }
 
+    /**
+     * Gets many guilds in a single round-trip.
+     *
+     * @param guildIds The ids of the guilds to get.
+     * @return The guilds, keyed by id. Guilds that don't exist on the database are filled in with defaults.
+     */
+    @Nonnull
+    @CheckReturnValue
+    public Map<String, DBGuild> getGuilds(@Nonnull Collection<String> guildIds) {
+        Map<String, DBGuild> guilds = loadAll(DBGuild.DB_TABLE, guildIds, DBGuild.class);
+        for (String id : guildIds) {
+            guilds.computeIfAbsent(id, DBGuild::of);
+        }
+
+        return guilds;
+    }
+
+    /**
+     * Gets many users in a single round-trip.
+     *
+     * @param userIds The ids of the users to get.
+     * @return The users, keyed by id. Users that don't exist on the database are filled in with defaults.
+     */
+    @Nonnull
+    @CheckReturnValue
+    public Map<String, DBUser> getUsers(@Nonnull Collection<String> userIds) {
+        Map<String, DBUser> users = loadAll(DBUser.DB_TABLE, userIds, DBUser.class);
+        for (String id : userIds) {
+            users.computeIfAbsent(id, DBUser::of);
+        }
+
+        return users;
+    }
+
+    /**
+     * Gets many (global) players in a single round-trip.
+     *
+     * @param userIds The ids of the users to get the players of.
+     * @return The players, keyed by <b>user</b> id. Players that don't exist on the database are filled in with defaults.
+     */
+    @Nonnull
+    @CheckReturnValue
+    public Map<String, Player> getPlayers(@Nonnull Collection<String> userIds) {
+        List<String> playerIds = new ArrayList<>(userIds.size());
+        for (String id : userIds) {
+            playerIds.add(id + ":g");
+        }
+
+        Map<String, Player> players = new HashMap<>();
+        for (Player player : loadAll(Player.DB_TABLE, playerIds, Player.class).values()) {
+            players.put(player.getUserId(), player);
+        }
+
+        for (String id : userIds) {
+            if (!players.containsKey(id)) {
+                players.put(id, Player.of(id));
+            }
+        }
+
+        return players;
+    }
+
+    /**
+     * Adds experience to many players with a single atomic write, without loading them first. Players that don't exist
+     * yet are created with it.
+     * <br>This is the only way experience gets added: saving a player leaves it as it is on the database, see
+     * {@link Player#ATOMIC_FIELDS}. Locked players don't get any, and are left out of the result.
+     *
+     * @param experience How much experience to add, keyed by <b>user</b> id.
+     * @return The updated players, keyed by user id.
+     */
+    @Nonnull
+    @SuppressWarnings("unchecked")
+    public Map<String, Player> addPlayerExperience(@Nonnull Map<String, Long> experience) {
+        Map<String, Player> players = new HashMap<>();
+        if (experience.isEmpty()) {
+            return players;
+        }
+
+        List<Map<String, Object>> documents = new ArrayList<>(experience.size());
+        for (var entry : experience.entrySet()) {
+            var player = Player.of(entry.getKey());
+            player.getData().setExperience(entry.getValue());
+            documents.add(RethinkDB.getResultMapper().convertValue(player, DOCUMENT_TYPE));
+        }
+
+        log("Adding experience to {} players on rethink", documents.size());
+        var now = System.currentTimeMillis();
+        var result = write(Player.DB_TABLE, "update-experience", experience, r.table(Player.DB_TABLE)
+                .insert(documents)
+                .optArg("conflict", (ReqlFunction3) (id, old, player) -> r.branch(
+                        old.g("data").g("lockedUntil").default_(0).gt(now),
+                        old,
+                        old.merge(r.hashMap("data", r.hashMap("experience",
+                                old.g("data").g("experience").default_(0).add(player.g("data").g("experience"))
+                        )))
+                ))
+                .optArg("return_changes", true)
+        );
+
+        var changes = (List<Map<String, Object>>) result.getOrDefault("changes", List.of());
+        for (var change : changes) {
+            var newValue = change.get("new_val");
+            if (newValue != null) {
+                var player = RethinkDB.getResultMapper().convertValue(newValue, Player.class);
+                players.put(player.getUserId(), player);
+                refreshQueued(Player.DB_TABLE, (Map<String, Object>) newValue);
+            }
+        }
+
+        return players;
+    }
+
+    /**
+     * Sets the level and experience of a player, for when they have to be moved or reset. Saving the player won't do
+     * it, see {@link Player#ATOMIC_FIELDS}.
+     *
+     * @param userId The id of the user.
+     * @param level The new level.
+     * @param experience The new experience.
+     */
+    public void setPlayerProgress(@Nonnull String userId, long level, long experience) {
+        log("Setting the level and experience of player {} on rethink", userId);
+        Map<String, Object> document = Map.of("id", userId + ":g", "level", level, "data", Map.of("experience", experience));
+        //An insert, so it works even if the player's own save is still queued: that one keeps what this writes.
+        write(Player.DB_TABLE, "update-progress", document, r.table(Player.DB_TABLE)
+                .insert(document)
+                .optArg("conflict", "update")
+        );
+        refreshQueued(Player.DB_TABLE, document);
+    }
+
+    /**
+     * Raises the level of many players with a single atomic update, without touching anything else on them.
+     * <br>Levels only go up here: players that are already at the given level (or past it) are left alone, so a level
+     * up worked out twice is only written, and reported, once. Saving a player doesn't write its level either, see
+     * {@link Player#ATOMIC_FIELDS}. Blocks until the database acknowledged it.
+     *
+     * @param levels The new levels, keyed by <b>user</b> id.
+     * @return The ids of the users whose level went up.
+     */
+    @Nonnull
+    @SuppressWarnings("unchecked")
+    public Set<String> raisePlayerLevels(@Nonnull Map<String, Long> levels) {
+        Set<String> raised = new HashSet<>();
+        if (levels.isEmpty()) {
+            return raised;
+        }
+
+        Map<String, Long> byId = new HashMap<>();
+        for (var entry : levels.entrySet()) {
+            byId.put(entry.getKey() + ":g", entry.getValue());
+        }
+
+        log("Raising the level of {} players on rethink", byId.size());
+        var result = write(Player.DB_TABLE, "update-level", byId, r.table(Player.DB_TABLE)
+                .getAll(byId.keySet().toArray())
+                .update(player -> r.branch(
+                        player.g("level").default_(0).lt(r.expr(byId).g(player.g("id"))),
+                        r.hashMap("level", r.expr(byId).g(player.g("id"))),
+                        r.hashMap()
+                ))
+                .optArg("return_changes", true)
+        );
+
+        var changes = (List<Map<String, Object>>) result.getOrDefault("changes", List.of());
+        for (var change : changes) {
+            var newValue = (Map<String, Object>) change.get("new_val");
+            if (newValue != null) {
+                raised.add(RethinkDB.getResultMapper().convertValue(newValue, Player.class).getUserId());
+                refreshQueued(Player.DB_TABLE, newValue);
+            }
+        }
+
+        return raised;
+    }
+
+    @Nonnull
+    @CheckReturnValue
+    public Map<String, Marriage> getMarriages(@Nonnull Collection<String> marriageIds) {
+        List<String> ids = new ArrayList<>(marriageIds.size());
+        for (String id : marriageIds) {
+            if (id != null) {
+                ids.add(id);
+            }
+        }
+
+        return loadAll(Marriage.DB_TABLE, ids, Marriage.class);
+    }
+
     public void save(@Nonnull ManagedObject object) {
         log("Saving {} {}:{} to rethink (replacing)", object.getClass().getSimpleName(), object.getTableName(), object.getDatabaseId());
-
-        r.table(object.getTableName())
-                .insert(object)
-                .optArg("conflict", "replace")
-                .runNoReply(conn);
+        save(object, true);
     }
 
     public void saveUpdating(@Nonnull ManagedObject object) {
         log("Saving {} {}:{} to rethink (updating)", object.getClass().getSimpleName(), object.getTableName(), object.getDatabaseId());
+        save(object, false);
+    }
 
-        r.table(object.getTableName())
-                .insert(object)
-                .optArg("conflict", "update")
-                .runNoReply(conn);
+    //Writes to tables something is kept from are acknowledged before it's dropped: dropping it earlier lets a read
+    //(here, or on another node getting the invalidation) load the old document again and keep it until it expires.
+    //Everything else is sent without waiting, see send().
+    private void save(ManagedObject object, boolean replace) {
+        if (writeQueue != null) {
+            //Queued saves are retried until they're written, so the replica can have it already.
+            if (object instanceof MantaroObj) {
+                mantaroReplica.update((MantaroObj) object);
+            }
+
+            enqueue(object, replace);
+            return;
+        }
+
+        if (!writeChanges(object, replace)) {
+            send(object.getTableName(), replace ? "insert-replace" : "insert-update", object, r.table(object.getTableName())
+                    .insert(object)
+                    .optArg("conflict", conflict(object.getTableName(), replace))
+            );
+        }
+
+        if (object instanceof MantaroObj) {
+            mantaroReplica.update((MantaroObj) object);
+        }
+
+        invalidate(object.getTableName(), object.getId());
     }
 
     public void delete(@Nonnull ManagedObject object) {
         log("Deleting {} {}:{} from rethink", object.getClass().getSimpleName(), object.getTableName(), object.getDatabaseId());
+        if (writeQueue != null) {
+            writeQueue.cancel(object.getTableName(), object.getId());
+        }
+
+        tracker.untrack(object);
 
-        r.table(object.getTableName())
+        send(object.getTableName(), "delete", null, r.table(object.getTableName())
                 .get(object.getId())
                 .delete()
-                .runNoReply(conn);
+        );
+
+        invalidate(object.getTableName(), object.getId());
+    }
+
+    /**
+     * Writes all saves that are still queued. Blocks until the database acknowledged them.
+     */
+    public void flush() {
+        if (writeQueue != null) {
+            writeQueue.flush();
+        }
+    }
+
+    //Queues what changed on the object, same as writeChanges would send it (or the whole thing if it isn't tracked).
+    private void enqueue(ManagedObject object, boolean replace) {
+        Map<String, Object> document = RethinkDB.getResultMapper().convertValue(object, DOCUMENT_TYPE);
+        var changes = withoutAtomicFields(object.getTableName(), tracker.changes(object, document, replace));
+        if (changes != null && changes.isEmpty()) {
+            log("Nothing changed on {}:{}, skipping write", object.getTableName(), object.getDatabaseId());
+            Metrics.ENTITY_WRITES.labels(object.getTableName(), "skipped").inc();
+            return;
+        }
+
+        Metrics.ENTITY_WRITES.labels(object.getTableName(), changes == null ? "full" : "partial").inc();
+        writeQueue.enqueue(object.getTableName(), object.getId(), document, changes, replace);
+        forgetKnown(object.getTableName(), object.getId());
+    }
+
+    //Whole documents go out as one insert per conflict mode, changes as one write per document (they're different for
+    //each one). Returns the writes that failed, which the queue keeps for the next flush.
+    private List<WriteBehindQueue.PendingWrite> writeBatch(String table, List<WriteBehindQueue.PendingWrite> writes) {
+        log("Saving {} queued documents to {}", writes.size(), table);
+        Map<Boolean, List<WriteBehindQueue.PendingWrite>> inserts = new HashMap<>();
+        List<WriteBehindQueue.PendingWrite> updates = new ArrayList<>();
+        for (var write : writes) {
+            if (write.getChanges() == null) {
+                inserts.computeIfAbsent(write.isReplace(), replace -> new ArrayList<>()).add(write);
+            } else {
+                updates.add(write);
+            }
+        }
+
+        List<WriteBehindQueue.PendingWrite> written = new ArrayList<>();
+        List<WriteBehindQueue.PendingWrite> failed = new ArrayList<>();
+        if (!updates.isEmpty()) {
+            List<Map<String, Object>> changes = new ArrayList<>(updates.size());
+            for (var write : updates) {
+                changes.add(write.getChanges());
+            }
+
+            metrics.write(table, "update", changes, () -> {
+                //All of them are sent before waiting on any.
+                List<CompletableFuture<Map<String, Object>>> results = new ArrayList<>(updates.size());
+                for (var write : updates) {
+                    results.add(applyChanges(table, write.getId(), write.getDocument(), write.getChanges())
+                            .runAtomAsync(conn, DOCUMENT_TYPE));
+                }
+
+                for (int i = 0; i < updates.size(); i++) {
+                    var write = updates.get(i);
+                    try {
+                        checkWrite(results.get(i).join());
+                        written.add(write);
+                    } catch (RuntimeException e) {
+                        log.error("Couldn't write queued changes to {}:{}", table, write.getId(), e);
+                        failed.add(write);
+                    }
+                }
+
+                return null;
+            });
+        }
+
+        for (var batch : inserts.entrySet()) {
+            List<Map<String, Object>> documents = new ArrayList<>(batch.getValue().size());
+            for (var write : batch.getValue()) {
+                documents.add(write.getDocument());
+            }
+
+            boolean replace = batch.getKey();
+            try {
+                write(table, replace ? "insert-replace" : "insert-update", documents, r.table(table)
+                        .insert(documents)
+                        .optArg("conflict", conflict(table, replace))
+                );
+                written.addAll(batch.getValue());
+            } catch (RuntimeException e) {
+                //Doesn't say which ones failed, but writing whole documents again is harmless.
+                log.error("Couldn't write {} queued documents to {}", documents.size(), table, e);
+                failed.addAll(batch.getValue());
+            }
+        }
+
+        for (var write : written) {
+            invalidate(table, write.getId());
+        }
+
+        return failed;
+    }
+
+    //Sends only what changed since the object was loaded. Returns false if it has to be written whole instead.
+    private boolean writeChanges(ManagedObject object, boolean replace) {
+        Map<String, Object> document = RethinkDB.getResultMapper().convertValue(object, DOCUMENT_TYPE);
+        var changes = withoutAtomicFields(object.getTableName(), tracker.changes(object, document, replace));
+        if (changes == null) {
+            Metrics.ENTITY_WRITES.labels(object.getTableName(), "full").inc();
+            return false;
+        }
+
+        if (changes.isEmpty()) {
+            log("Nothing changed on {}:{}, skipping write", object.getTableName(), object.getDatabaseId());
+            Metrics.ENTITY_WRITES.labels(object.getTableName(), "skipped").inc();
+            return true;
+        }
+
+        send(object.getTableName(), "update", changes, applyChanges(object.getTableName(), object.getId(), document, changes));
+        Metrics.ENTITY_WRITES.labels(object.getTableName(), "partial").inc();
+        return true;
+    }
+
+    //Merges the changes into the document, or writes it whole if it was deleted since it was loaded (update() would
+    //do nothing then). One query either way, so it doesn't need to look at the result.
+    private static ReqlExpr applyChanges(String table, String id, Map<String, Object> document, Map<String, Object> changes) {
+        return r.table(table).get(id).replace(old -> r.branch(old.eq(null), document, old.merge(changes)));
+    }
+
+    //Conflict mode of whole document writes. Atomic fields keep the values on the database, if it has them.
+    private static Object conflict(String table, boolean replace) {
+        var fields = ATOMIC_FIELDS.get(table);
+        if (fields == null) {
+            return replace ? "replace" : "update";
+        }
+
+        return (ReqlFunction3) (id, old, document) -> (replace ? document : old.merge(document)).merge(
+                keepAtomicFields(old, document, fields)
+        );
+    }
+
+    //The atomic fields as they are on old (or document, if old doesn't have them), as something to merge in.
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> keepAtomicFields(ReqlExpr old, ReqlExpr document, List<String> fields) {
+        Map<String, Object> kept = new HashMap<>();
+        for (var field : fields) {
+            var path = field.split("\\.");
+            var parent = kept;
+            var oldValue = old;
+            var newValue = document;
+            for (int i = 0; i < path.length - 1; i++) {
+                parent = (Map<String, Object>) parent.computeIfAbsent(path[i], key -> new HashMap<String, Object>());
+                oldValue = oldValue.g(path[i]);
+                newValue = newValue.g(path[i]);
+            }
+
+            var last = path[path.length - 1];
+            parent.put(last, oldValue.g(last).default_(newValue.g(last).default_(0)));
+        }
+
+        return kept;
+    }
+
+    //Leaves the atomic fields out of a partial save. Returns null if one of them is under something that's replaced
+    //whole, so the document is written whole instead (through conflict()).
+    private static Map<String, Object> withoutAtomicFields(String table, Map<String, Object> changes) {
+        var fields = ATOMIC_FIELDS.get(table);
+        if (changes == null || fields == null) {
+            return changes;
+        }
+
+        for (var field : fields) {
+            changes = without(changes, field.split("\\."), 0);
+            if (changes == null) {
+                return null;
+            }
+        }
+
+        return changes;
+    }
+
+    //Copy of changes without path[from..]. The same map if it isn't there, or null if a literal is in the way.
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> without(Map<String, Object> changes, String[] path, int from) {
+        var key = path[from];
+        if (!changes.containsKey(key)) {
+            return changes;
+        }
+
+        Map<String, Object> result = new HashMap<>(changes);
+        if (from == path.length - 1) {
+            result.remove(key);
+            return result;
+        }
+
+        var value = changes.get(key);
+        if (!(value instanceof Map)) {
+            return null;
+        }
+
+        var inner = without((Map<String, Object>) value, path, from + 1);
+        if (inner == null) {
+            return null;
+        }
+
+        if (inner == value) {
+            return changes;
+        }
+
+        if (inner.isEmpty()) {
+            result.remove(key);
+        } else {
+            result.put(key, inner);
+        }
+
+        return result;
+    }
+
+    //Atomic updates don't go through the write queue, so a save of the same document still queued would keep handing
+    //out the old values until it's written. Copies the new ones over.
+    @SuppressWarnings("unchecked")
+    private void refreshQueued(String table, Map<String, Object> document) {
+        var fields = ATOMIC_FIELDS.get(table);
+        if (writeQueue == null || fields == null) {
+            return;
+        }
+
+        Map<String, Object> values = new HashMap<>();
+        for (var field : fields) {
+            var path = field.split("\\.");
+            Map<String, Object> source = document;
+            var target = values;
+            for (int i = 0; i < path.length - 1 && source != null; i++) {
+                source = source.get(path[i]) instanceof Map ? (Map<String, Object>) source.get(path[i]) : null;
+                target = (Map<String, Object>) target.computeIfAbsent(path[i], key -> new HashMap<String, Object>());
+            }
+
+            var last = path[path.length - 1];
+            if (source != null && source.containsKey(last)) {
+                target.put(last, source.get(last));
+            }
+        }
+
+        writeQueue.patch(table, String.valueOf(document.get("id")), values);
+    }
+
+    //Whether something is kept from this table that has to be dropped after it's written: cached documents, guild and
+    //user lookups (including premium) and the MantaroObj replica.
+    private boolean hasInvalidationTargets(String table) {
+        return (cache != null && cache.isCached(table)) || table.equals(DBGuild.DB_TABLE) || table.equals(DBUser.DB_TABLE)
+                || table.equals(MantaroObj.DB_TABLE);
+    }
+
+    //Runs a write, only waiting for the database to apply it if something has to be invalidated after it. Otherwise
+    //it's sent noreply, same as before anything was cached: nobody would see the difference, besides the wait.
+    private void send(String table, String operation, Object payload, ReqlExpr query) {
+        if (hasInvalidationTargets(table)) {
+            write(table, operation, payload, query);
+        } else {
+            metrics.dispatch(table, operation, payload, () -> query.runNoReply(conn));
+        }
+    }
+
+    //Runs a write and waits for the database to apply it, failing if it didn't.
+    private Map<String, Object> write(String table, String operation, Object payload, ReqlExpr query) {
+        return metrics.write(table, operation, payload, () -> checkWrite(query.runAtom(conn, DOCUMENT_TYPE)));
+    }
+
+    //Write errors don't throw on their own, they're only counted on the result.
+    private static Map<String, Object> checkWrite(Map<String, Object> result) {
+        var errors = result.get("errors");
+        if (errors instanceof Number && ((Number) errors).longValue() > 0) {
+            throw new ReqlOpFailedError("Write failed: " + result.get("first_error"));
+        }
+
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> fetch(String table, String id) {
+        return metrics.read(table, "get", () -> (Map<String, Object>) r.table(table).get(id).runAtom(conn));
+    }
+
+    private <T> T load(String table, String id, Class<T> type, Supplier<Map<String, Object>> loader) {
+        //Reads always see our own queued saves.
+        var pending = writeQueue == null ? null : writeQueue.pending(table, id);
+        if (pending != null) {
+            return tracker.track(pending, type);
+        }
+
+        Map<String, Object> document = cache == null || !cache.isCached(table) ? loader.get() : cache.get(table, id, loader);
+        return document == null ? null : tracker.track(document, type);
+    }
+
+    private <T> Map<String, T> loadAll(String table, Collection<String> ids, Class<T> type) {
+        Map<String, T> result = new HashMap<>();
+        List<String> missing = new ArrayList<>();
+        for (String id : new LinkedHashSet<>(ids)) {
+            var pending = writeQueue == null ? null : writeQueue.pending(table, id);
+            if (pending != null) {
+                result.put(id, tracker.track(pending, type));
+            } else {
+                missing.add(id);
+            }
+        }
+
+        if (missing.isEmpty()) {
+            return result;
+        }
+
+        Function<Collection<String>, Map<String, Map<String, Object>>> loader = toLoad -> {
+            log("Requesting {} documents from {} from rethink", toLoad.size(), table);
+            return metrics.read(table, "getAll", () -> {
+                Map<String, Map<String, Object>> loaded = new HashMap<>();
+                try (Result<Object> c = r.table(table).getAll(toLoad.toArray()).run(conn)) {
+                    for (Object value : c) {
+                        @SuppressWarnings("unchecked")
+                        var document = (Map<String, Object>) value;
+                        loaded.put(String.valueOf(document.get("id")), document);
+                    }
+                }
+
+                return loaded;
+            });
+        };
+
+        var documents = cache == null || !cache.isCached(table) ? loader.apply(missing) : cache.getAll(table, missing, loader);
+        for (var document : documents.entrySet()) {
+            result.put(document.getKey(), tracker.track(document.getValue(), type));
+        }
+
+        return result;
+    }
+
+    //Tells other nodes to drop something kept outside of the entity cache, they'll get it on forgetKnown.
+    void publishInvalidation(String table, String id) {
+        if (invalidations != null) {
+            invalidations.publish(table, id);
+        }
+    }
+
+    private void invalidate(String table, String id) {
+        forgetKnown(table, id);
+        if (cache != null && cache.isCached(table)) {
+            //Publishes it too, other nodes forget what they know of it when they get it.
+            cache.invalidate(table, id);
+            if (table.equals(DBGuild.DB_TABLE)) {
+                cache.invalidate(GuildCommandConfig.CACHE_TABLE, id);
+            }
+        } else if (table.equals(DBGuild.DB_TABLE) || table.equals(DBUser.DB_TABLE)) {
+            publishInvalidation(table, id);
+        }
+    }
+
+    private static class KnownGuild {
+        private final String prefix;
+        private final String lang;
+        private final String logChannel;
+
+        private KnownGuild(String prefix, String lang, String logChannel) {
+            this.prefix = prefix;
+            this.lang = lang;
+            this.logChannel = logChannel;
+        }
     }
 }
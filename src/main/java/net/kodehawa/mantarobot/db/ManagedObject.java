@@ -35,8 +35,9 @@ public interface ManagedObject {
         return getId();
     }
 
+    //These go through the session open on this thread (if any), so it drops the copies it had.
     default void delete() {
-        MantaroData.db().delete(this);
+        EntitySession.current(MantaroData.db()).delete(this);
     }
 
     /**
@@ -45,7 +46,7 @@ public interface ManagedObject {
      * Useful sometimes.
      */
     default void save() {
-        MantaroData.db().save(this);
+        EntitySession.current(MantaroData.db()).save(this);
     }
 
     /**
@@ -54,7 +55,7 @@ public interface ManagedObject {
      * Useful sometimes.
      */
     default void saveUpdating() {
-        MantaroData.db().saveUpdating(this);
+        EntitySession.current(MantaroData.db()).saveUpdating(this);
     }
 
     default void deleteAsync() {
@@ -0,0 +1,188 @@
+/*
+ * Copyright (C) 2016-2020 David Rubio Escares / Kodehawa
+ *
+ *  Mantaro is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  Mantaro is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro.  If not, see http://www.gnu.org/licenses/
+ */
+
+package net.kodehawa.mantarobot.db;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.rethinkdb.RethinkDB;
+import com.rethinkdb.net.Connection;
+import com.rethinkdb.net.Result;
+import net.kodehawa.mantarobot.db.entities.MantaroObj;
+import net.kodehawa.mantarobot.utils.Pair;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static com.rethinkdb.RethinkDB.r;
+
+/**
+ * Read-only local copy of the global {@link MantaroObj}, kept current by a changefeed on its document.
+ * <br>Use this for lookups (blacklists, mute checks). Anything that changes the object still has to load it through
+ * {@link ManagedDatabase#getMantaroData()} and save it, the save will make its way back here.
+ * <br>Saves on this node show up here right away. Until the feed sends them back, whatever it sends is from before
+ * them and is held back, unless it takes long enough that someone else must have written in the meantime.
+ */
+public class MantaroObjReplica {
+    private static final Logger log = LoggerFactory.getLogger(MantaroObjReplica.class);
+    private static final TypeReference<Map<String, Object>> DOCUMENT_TYPE = new TypeReference<>() { };
+    private static final long LOCAL_WRITE_TIMEOUT_MS = TimeUnit.SECONDS.toMillis(30);
+
+    private final Connection conn;
+    private final Supplier<MantaroObj> loader;
+    private volatile Snapshot snapshot;
+    //Our last save as a document, until the feed sends it back (or the timeout runs out).
+    private Map<String, Object> expected;
+    private long expectedUntil;
+    //The last thing the feed sent while waiting for it.
+    private volatile MantaroObj heldBack;
+    //The last thing the feed sent, to tell whether a save already came back before we got to show it.
+    private Map<String, Object> lastSeen;
+
+    MantaroObjReplica(@Nonnull Connection conn, @Nonnull Supplier<MantaroObj> loader) {
+        this.conn = conn;
+        this.loader = loader;
+
+        var follower = new Thread(this::follow, "MantaroObj-Changefeed");
+        follower.setDaemon(true);
+        follower.start();
+    }
+
+    public boolean isBlackListedUser(@Nonnull String userId) {
+        return snapshot().blackListedUsers.contains(userId);
+    }
+
+    public boolean isBlackListedGuild(@Nonnull String guildId) {
+        return snapshot().blackListedGuilds.contains(guildId);
+    }
+
+    /**
+     * @return The current mutes, as a read-only map.
+     */
+    @Nonnull
+    public Map<Long, Pair<String, Long>> getMutes() {
+        return snapshot().mutes;
+    }
+
+    /**
+     * Swaps in a version of the object saved on this node, so our own writes are visible straight away.
+     */
+    synchronized void update(@Nonnull MantaroObj obj) {
+        var document = document(obj);
+        snapshot = new Snapshot(obj);
+        heldBack = null;
+        if (document.equals(lastSeen)) {
+            expected = null;
+            return;
+        }
+
+        expected = document;
+        expectedUntil = System.currentTimeMillis() + LOCAL_WRITE_TIMEOUT_MS;
+    }
+
+    //What the changefeed sends.
+    private synchronized void apply(MantaroObj obj) {
+        var document = document(obj);
+        lastSeen = document;
+        if (expected != null && System.currentTimeMillis() < expectedUntil && !expected.equals(document)) {
+            heldBack = obj;
+            return;
+        }
+
+        expected = null;
+        heldBack = null;
+        snapshot = new Snapshot(obj);
+    }
+
+    private Snapshot snapshot() {
+        if (heldBack != null) {
+            //Never got our save back: take the last thing we got instead.
+            synchronized (this) {
+                if (heldBack != null && System.currentTimeMillis() >= expectedUntil) {
+                    apply(heldBack);
+                }
+            }
+        }
+
+        var current = snapshot;
+        if (current == null) {
+            //Changefeed hasn't sent the initial value yet: don't let anyone through a blacklist because of that.
+            synchronized (this) {
+                current = snapshot;
+                if (current == null) {
+                    current = new Snapshot(loader.get());
+                    snapshot = current;
+                }
+            }
+        }
+
+        return current;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void follow() {
+        //The feed only ends if the connection dies, so keep re-opening it.
+        while (true) {
+            try (Result<Object> feed = r.table(MantaroObj.DB_TABLE)
+                    .get(MantaroObj.id)
+                    .changes()
+                    .optArg("include_initial", true)
+                    .run(conn)) {
+                for (Object change : feed) {
+                    var newValue = ((Map<String, Object>) change).get("new_val");
+                    apply(newValue == null ? MantaroObj.create() : RethinkDB.getResultMapper().convertValue(newValue, MantaroObj.class));
+                }
+            } catch (Exception e) {
+                log.warn("Lost MantaroObj changefeed, retrying", e);
+            }
+
+            try {
+                Thread.sleep(5000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    //Both sides go through the same mapping, so numbers and missing fields compare the same.
+    private static Map<String, Object> document(MantaroObj obj) {
+        return RethinkDB.getResultMapper().convertValue(obj, DOCUMENT_TYPE);
+    }
+
+    private static class Snapshot {
+        private final Set<String> blackListedUsers;
+        private final Set<String> blackListedGuilds;
+        private final Map<Long, Pair<String, Long>> mutes;
+
+        private Snapshot(MantaroObj obj) {
+            this.blackListedUsers = toSet(obj.getBlackListedUsers());
+            this.blackListedGuilds = toSet(obj.getBlackListedGuilds());
+            this.mutes = obj.getMutes() == null ? Map.of() : Collections.unmodifiableMap(new HashMap<>(obj.getMutes()));
+        }
+
+        private static Set<String> toSet(Collection<String> list) {
+            return list == null ? Set.of() : Set.copyOf(list);
+        }
+    }
+}
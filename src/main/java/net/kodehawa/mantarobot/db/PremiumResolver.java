@@ -0,0 +1,227 @@
+/*
+ * Copyright (C) 2016-2020 David Rubio Escares / Kodehawa
+ *
+ *  Mantaro is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  Mantaro is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro.  If not, see http://www.gnu.org/licenses/
+ */
+
+package net.kodehawa.mantarobot.db;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import net.kodehawa.mantarobot.data.MantaroData;
+import net.kodehawa.mantarobot.db.entities.DBGuild;
+import net.kodehawa.mantarobot.db.entities.DBUser;
+import net.kodehawa.mantarobot.db.entities.PremiumKey;
+
+import javax.annotation.CheckReturnValue;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Node-local cache of who's premium, so rate limiters and the command registry don't have to load premium keys
+ * (and ask Patreon about them) on every command.
+ * <br>Results are kept until the key they depend on expires, for an hour at most (so Patreon changes are noticed),
+ * or five minutes for users and guilds that aren't premium. Saving the user or guild drops them once it's written,
+ * and so should anything that changes a key without saving its holder.
+ * <br>Both go through the {@link InvalidationChannel}, which runs whether the entity cache is enabled or not, so every
+ * node drops them, not just this one.
+ */
+public class PremiumResolver {
+    private static final long PREMIUM_TTL_MS = TimeUnit.HOURS.toMillis(1);
+    private static final long NOT_PREMIUM_TTL_MS = TimeUnit.MINUTES.toMillis(5);
+    //Not a real table, only used to tell other nodes to drop what they have.
+    static final String INVALIDATION_TABLE = "premium";
+
+    private final ManagedDatabase db;
+    private final Cache<String, Entitlement> users = CacheBuilder.newBuilder()
+            .maximumSize(200_000)
+            .expireAfterWrite(PREMIUM_TTL_MS, TimeUnit.MILLISECONDS)
+            .build();
+    private final Cache<String, Entitlement> guilds = CacheBuilder.newBuilder()
+            .maximumSize(200_000)
+            .expireAfterWrite(PREMIUM_TTL_MS, TimeUnit.MILLISECONDS)
+            .build();
+
+    PremiumResolver(@Nonnull ManagedDatabase db) {
+        this.db = db;
+    }
+
+    @CheckReturnValue
+    public boolean isUserPremium(@Nonnull String userId) {
+        //Return true if this is running in MP, as all users are considered Premium on it.
+        if (MantaroData.config().get().isPremiumBot())
+            return true;
+
+        return getUser(userId).isPremium();
+    }
+
+    @CheckReturnValue
+    public boolean isGuildPremium(@Nonnull String guildId) {
+        return getGuild(guildId).isPremium();
+    }
+
+    /**
+     * @param userId The id of the user.
+     * @return Whether the user is premium, and the key they have.
+     */
+    @Nonnull
+    @CheckReturnValue
+    public Entitlement getUser(@Nonnull String userId) {
+        return get(users, userId, () -> resolve(db.getUser(userId)));
+    }
+
+    /**
+     * Same as {@link #getUser(String)}, working it out from this instance if it isn't cached.
+     */
+    @Nonnull
+    @CheckReturnValue
+    public Entitlement getUser(@Nonnull DBUser user) {
+        return get(users, user.getId(), () -> resolve(user));
+    }
+
+    /**
+     * @param guildId The id of the guild.
+     * @return Whether the guild is premium, and the key it has.
+     */
+    @Nonnull
+    @CheckReturnValue
+    public Entitlement getGuild(@Nonnull String guildId) {
+        return get(guilds, guildId, () -> resolve(db.getGuild(guildId)));
+    }
+
+    /**
+     * Same as {@link #getGuild(String)}, working it out from this instance if it isn't cached.
+     */
+    @Nonnull
+    @CheckReturnValue
+    public Entitlement getGuild(@Nonnull DBGuild guild) {
+        return get(guilds, guild.getId(), () -> resolve(guild));
+    }
+
+    public void invalidateUser(@Nonnull String userId) {
+        users.invalidate(userId);
+        db.publishInvalidation(INVALIDATION_TABLE, "user:" + userId);
+    }
+
+    public void invalidateGuild(@Nonnull String guildId) {
+        guilds.invalidate(guildId);
+        db.publishInvalidation(INVALIDATION_TABLE, "guild:" + guildId);
+    }
+
+    /**
+     * Drops everything. For when a key changes and there's no telling who has it.
+     */
+    public void invalidateAll() {
+        users.invalidateAll();
+        guilds.invalidateAll();
+        db.publishInvalidation(INVALIDATION_TABLE, "*");
+    }
+
+    //Drops what a write (or an invalidation from another node) affects, on this node only.
+    void invalidate(String table, String id) {
+        if (table.equals(DBUser.DB_TABLE)) {
+            users.invalidate(id);
+        } else if (table.equals(DBGuild.DB_TABLE)) {
+            guilds.invalidate(id);
+        } else if (table.equals(INVALIDATION_TABLE)) {
+            if (id.equals("*")) {
+                users.invalidateAll();
+                guilds.invalidateAll();
+            } else if (id.startsWith("user:")) {
+                users.invalidate(id.substring(5));
+            } else if (id.startsWith("guild:")) {
+                guilds.invalidate(id.substring(6));
+            }
+        }
+    }
+
+    private Entitlement resolve(DBUser user) {
+        boolean premium = user.resolvePremium();
+        //Checking can remove the key, so look at it after.
+        return entitlement(premium, db.getPremiumKey(user.getData().getPremiumKey()), 0);
+    }
+
+    private Entitlement resolve(DBGuild guild) {
+        boolean premium = guild.resolvePremium();
+        return entitlement(premium, db.getPremiumKey(guild.getData().getPremiumKey()), guild.getPremiumUntil());
+    }
+
+    private static Entitlement entitlement(boolean premium, PremiumKey key, long premiumUntil) {
+        long now = System.currentTimeMillis();
+        long validUntil = now + (premium ? PREMIUM_TTL_MS : NOT_PREMIUM_TTL_MS);
+        if (premium) {
+            //Whatever it's premium through, check again once it runs out.
+            long end = Math.max(premiumUntil, key == null ? 0 : key.getExpiration());
+            if (end > now) {
+                validUntil = Math.min(validUntil, end);
+            }
+        }
+
+        return new Entitlement(premium, key == null ? null : key.getId(), key == null ? 0 : key.getExpiration(), validUntil);
+    }
+
+    private static Entitlement get(Cache<String, Entitlement> cache, String id, Callable<Entitlement> loader) {
+        try {
+            var entitlement = cache.get(id, loader);
+            if (entitlement.validUntil <= System.currentTimeMillis()) {
+                cache.asMap().remove(id, entitlement);
+                entitlement = cache.get(id, loader);
+            }
+
+            return entitlement;
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    public static class Entitlement {
+        private final boolean premium;
+        private final String keyId;
+        private final long keyExpiration;
+        private final long validUntil;
+
+        private Entitlement(boolean premium, String keyId, long keyExpiration, long validUntil) {
+            this.premium = premium;
+            this.keyId = keyId;
+            this.keyExpiration = keyExpiration;
+            this.validUntil = validUntil;
+        }
+
+        public boolean isPremium() {
+            return premium;
+        }
+
+        /**
+         * @return The id of the key they have, active or not, or null if there's none.
+         */
+        @Nullable
+        public String getKeyId() {
+            return keyId;
+        }
+
+        /**
+         * @return Days until the key expires (same as {@link PremiumKey#validFor()}), or -1 if there's no key.
+         */
+        public long keyValidFor() {
+            return keyId == null ? -1 : TimeUnit.MILLISECONDS.toDays(keyExpiration - System.currentTimeMillis());
+        }
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2016-2020 David Rubio Escares / Kodehawa
+ *
+ *  Mantaro is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  Mantaro is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro.  If not, see http://www.gnu.org/licenses/
+ */
+
+package net.kodehawa.mantarobot.db;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.rethinkdb.RethinkDB;
+import net.kodehawa.mantarobot.utils.exporters.Metrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+/**
+ * Records latency, payload size and errors of the queries {@link ManagedDatabase} runs, per table and operation.
+ * <br>Payload sizes are only measured on a sample of queries, as it means serializing the payload again.
+ * Queries slower than the threshold are logged (also sampled), along with the command that ran them if there's one.
+ */
+public class QueryMetrics {
+    private static final Logger log = LoggerFactory.getLogger(QueryMetrics.class);
+    private static final ThreadLocal<String> COMMAND = new ThreadLocal<>();
+
+    private final long slowQueryThresholdMs;
+    private final double slowQuerySampleRate;
+    private final double payloadSampleRate;
+
+    /**
+     * @param slowQueryThresholdMs Queries that take at least this long are logged. 0 or less to disable.
+     * @param slowQuerySampleRate Chance of a slow query being logged (0 to 1).
+     * @param payloadSampleRate Chance of a query having its payload size measured (0 to 1).
+     */
+    public QueryMetrics(long slowQueryThresholdMs, double slowQuerySampleRate, double payloadSampleRate) {
+        this.slowQueryThresholdMs = slowQueryThresholdMs;
+        this.slowQuerySampleRate = slowQuerySampleRate;
+        this.payloadSampleRate = payloadSampleRate;
+    }
+
+    /**
+     * Marks queries ran from this thread as coming from this command, until {@link #clearCommand()} is called.
+     */
+    public static void setCommand(@Nullable String command) {
+        COMMAND.set(command);
+    }
+
+    public static void clearCommand() {
+        COMMAND.remove();
+    }
+
+    /**
+     * Runs a read, recording how long it took and (sampled) how big the result was.
+     *
+     * @param table The table being read.
+     * @param operation What kind of read this is (get, getAll, filter, count, scan...).
+     * @param query The query. Has to fully consume the result before returning.
+     * @return Whatever the query returned.
+     */
+    public <T> T read(@Nonnull String table, @Nonnull String operation, @Nonnull Supplier<T> query) {
+        long start = System.nanoTime();
+        T result;
+        try {
+            result = query.get();
+        } catch (RuntimeException e) {
+            Metrics.DB_QUERY_ERRORS.labels(table, operation).inc();
+            throw e;
+        }
+
+        finish(table, operation, start, result);
+        return result;
+    }
+
+    /**
+     * Runs a write, recording how long it took and (sampled) how big the payload was.
+     * <br>Only for writes that wait for the database to acknowledge them: timing a noreply write only measures how long
+     * it took to send it.
+     *
+     * @param table The table being written.
+     * @param operation What kind of write this is (insert-replace, insert-update, update, delete...).
+     * @param payload What's being sent, or null if nothing is.
+     * @param query The query. Has to wait for the result before returning.
+     * @return Whatever the query returned.
+     */
+    public <T> T write(@Nonnull String table, @Nonnull String operation, @Nullable Object payload, @Nonnull Supplier<T> query) {
+        long start = System.nanoTime();
+        T result;
+        try {
+            result = query.get();
+        } catch (RuntimeException e) {
+            Metrics.DB_QUERY_ERRORS.labels(table, operation).inc();
+            throw e;
+        }
+
+        finish(table, operation, start, payload);
+        return result;
+    }
+
+    /**
+     * Sends a noreply write, recording (sampled) how big the payload was. It isn't timed, see {@link #write}.
+     *
+     * @param table The table being written.
+     * @param operation What kind of write this is (insert-replace, insert-update, update, delete...).
+     * @param payload What's being sent, or null if nothing is.
+     * @param query The query. Only sends it.
+     */
+    public void dispatch(@Nonnull String table, @Nonnull String operation, @Nullable Object payload, @Nonnull Runnable query) {
+        try {
+            query.run();
+        } catch (RuntimeException e) {
+            Metrics.DB_QUERY_ERRORS.labels(table, operation).inc();
+            throw e;
+        }
+
+        samplePayload(table, operation, payload);
+    }
+
+    private void finish(String table, String operation, long start, Object payload) {
+        long tookMs = (System.nanoTime() - start) / 1_000_000;
+        Metrics.DB_QUERY_LATENCY.labels(table, operation).observe(tookMs);
+        samplePayload(table, operation, payload);
+
+        if (slowQueryThresholdMs > 0 && tookMs >= slowQueryThresholdMs && ThreadLocalRandom.current().nextDouble() < slowQuerySampleRate) {
+            var command = COMMAND.get();
+            log.warn("Slow query: {} on {} took {}ms (command: {}, thread: {})",
+                    operation, table, tookMs, command == null ? "none" : command, Thread.currentThread().getName()
+            );
+        }
+    }
+
+    private void samplePayload(String table, String operation, Object payload) {
+        if (payload != null && !(payload instanceof Number) && ThreadLocalRandom.current().nextDouble() < payloadSampleRate) {
+            try {
+                Metrics.DB_QUERY_PAYLOAD_SIZE.labels(table, operation)
+                        .observe(RethinkDB.getResultMapper().writeValueAsBytes(payload).length);
+            } catch (JsonProcessingException ignored) { }
+        }
+    }
+}
@@ -0,0 +1,212 @@
+/*
+ * Copyright (C) 2016-2020 David Rubio Escares / Kodehawa
+ *
+ *  Mantaro is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  Mantaro is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro.  If not, see http://www.gnu.org/licenses/
+ */
+
+package net.kodehawa.mantarobot.db;
+
+import io.prometheus.client.Collector;
+import io.prometheus.client.GaugeMetricFamily;
+import net.kodehawa.mantarobot.utils.exporters.Metrics;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPoolConfig;
+import redis.clients.jedis.JedisPubSub;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Protocol;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.jedis.exceptions.JedisExhaustedPoolException;
+
+import javax.annotation.Nonnull;
+import java.net.SocketTimeoutException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * The one way to talk to Redis. Wraps a sized pool with timeouts everywhere (getting a connection, connecting and
+ * waiting for replies), so a Redis stall shows up as an exception on the caller instead of a thread stuck forever.
+ * <br>Everything runs under a name for what it's doing, which is what latency and errors get recorded by.
+ * Don't hold on to the connection handed to {@link #call(String, Function)} while doing anything that isn't Redis
+ * (like asking Discord for something), as no one else can use it until it's given back.
+ */
+public class RedisClient {
+    private final JedisPool pool;
+
+    /**
+     * @param host Where Redis is.
+     * @param port The port Redis is listening on.
+     * @param poolSize Max amount of open connections.
+     * @param minIdle Connections to keep open even when there's nothing to do.
+     * @param borrowTimeoutMs How long to wait for a connection when they're all in use.
+     * @param connectTimeoutMs How long to wait when opening a connection.
+     * @param socketTimeoutMs How long to wait for a reply.
+     */
+    public RedisClient(@Nonnull String host, int port, int poolSize, int minIdle,
+                       long borrowTimeoutMs, int connectTimeoutMs, int socketTimeoutMs) {
+        var config = new JedisPoolConfig();
+        config.setMaxTotal(poolSize);
+        config.setMaxIdle(poolSize);
+        config.setMinIdle(Math.min(minIdle, poolSize));
+        config.setBlockWhenExhausted(true);
+        config.setMaxWaitMillis(borrowTimeoutMs);
+
+        this.pool = new JedisPool(config, host, port, connectTimeoutMs, socketTimeoutMs,
+                (String) null, Protocol.DEFAULT_DATABASE, "mantaro");
+        new PoolCollector(pool).register();
+    }
+
+    /**
+     * Runs something on a pooled connection.
+     *
+     * @param operation What this is, for metrics (shard_stats_write, reminders_due...).
+     * @param action What to do with the connection. Only Redis in here.
+     * @return Whatever the action returned.
+     */
+    public <T> T call(@Nonnull String operation, @Nonnull Function<Jedis, T> action) {
+        long start = System.nanoTime();
+        try (var jedis = pool.getResource()) {
+            long borrowed = System.nanoTime();
+            Metrics.REDIS_POOL_WAIT.observe((borrowed - start) / 1_000_000D);
+
+            var result = action.apply(jedis);
+            Metrics.REDIS_OPERATION_LATENCY.labels(operation).observe((System.nanoTime() - borrowed) / 1_000_000D);
+            return result;
+        } catch (RuntimeException e) {
+            Metrics.REDIS_OPERATION_ERRORS.labels(operation, errorType(e)).inc();
+            throw e;
+        }
+    }
+
+    /**
+     * Same as {@link #call(String, Function)}, for when there's nothing to return.
+     */
+    public void run(@Nonnull String operation, @Nonnull Consumer<Jedis> action) {
+        call(operation, jedis -> {
+            action.accept(jedis);
+            return null;
+        });
+    }
+
+    /**
+     * Sends a bunch of commands in a single round-trip.
+     *
+     * @param operation What this is, for metrics.
+     * @param commands Queues the commands on the pipeline. Responses aren't there until this returns.
+     * @return The reply to every command, in the order they were queued.
+     */
+    public List<Object> pipelined(@Nonnull String operation, @Nonnull Consumer<Pipeline> commands) {
+        return call(operation, jedis -> {
+            var pipeline = jedis.pipelined();
+            commands.accept(pipeline);
+            return pipeline.syncAndReturnAll();
+        });
+    }
+
+    /**
+     * Gets a bunch of keys in one go.
+     *
+     * @return The values, in the same order as the keys (null for the ones that don't exist).
+     */
+    public List<String> mget(@Nonnull String operation, @Nonnull List<String> keys) {
+        if (keys.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        return call(operation, jedis -> jedis.mget(keys.toArray(String[]::new)));
+    }
+
+    /**
+     * Gets a bunch of fields of a hash in one go.
+     *
+     * @return The values, in the same order as the fields (null for the ones that don't exist).
+     */
+    public List<String> hmget(@Nonnull String operation, @Nonnull String key, @Nonnull List<String> fields) {
+        if (fields.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        return call(operation, jedis -> jedis.hmget(key, fields.toArray(String[]::new)));
+    }
+
+    public Map<String, String> hgetAll(@Nonnull String operation, @Nonnull String key) {
+        return call(operation, jedis -> jedis.hgetAll(key));
+    }
+
+    /**
+     * Sets a bunch of fields of a hash in one go.
+     */
+    public void hset(@Nonnull String operation, @Nonnull String key, @Nonnull Map<String, String> fields) {
+        if (fields.isEmpty()) {
+            return;
+        }
+
+        run(operation, jedis -> jedis.hset(key, fields));
+    }
+
+    /**
+     * Listens on the channels until the connection drops, which is when this returns (by throwing).
+     * Not recorded, as it's not supposed to end. Keeps a connection from the pool for as long as it runs.
+     */
+    public void subscribe(@Nonnull JedisPubSub listener, @Nonnull String... channels) {
+        try (var jedis = pool.getResource()) {
+            jedis.subscribe(listener, channels);
+        }
+    }
+
+    public void close() {
+        pool.close();
+    }
+
+    private static String errorType(RuntimeException e) {
+        if (e instanceof JedisExhaustedPoolException) {
+            return "pool_exhausted";
+        }
+
+        if (e instanceof JedisConnectionException) {
+            return e.getCause() instanceof SocketTimeoutException ? "timeout" : "connection";
+        }
+
+        if (e instanceof JedisDataException) {
+            return "reply";
+        }
+
+        return "other";
+    }
+
+    private static class PoolCollector extends Collector {
+        private final JedisPool pool;
+
+        private PoolCollector(JedisPool pool) {
+            this.pool = pool;
+        }
+
+        @Override
+        public List<MetricFamilySamples> collect() {
+            var connections = new GaugeMetricFamily(
+                    "redis_pool_connections",
+                    "Redis connections, by whether they're in use (active), open but free (idle), or being waited for (waiters)",
+                    Collections.singletonList("state")
+            );
+
+            connections.addMetric(Collections.singletonList("active"), pool.getNumActive());
+            connections.addMetric(Collections.singletonList("idle"), pool.getNumIdle());
+            connections.addMetric(Collections.singletonList("waiters"), pool.getNumWaiters());
+            return Collections.singletonList(connections);
+        }
+    }
+}
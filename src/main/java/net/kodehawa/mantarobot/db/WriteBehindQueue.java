@@ -0,0 +1,381 @@
+/*
+ * Copyright (C) 2016-2020 David Rubio Escares / Kodehawa
+ *
+ *  Mantaro is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  Mantaro is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro.  If not, see http://www.gnu.org/licenses/
+ */
+
+package net.kodehawa.mantarobot.db;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.rethinkdb.RethinkDB;
+import com.rethinkdb.ast.ReqlAst;
+import net.kodehawa.mantarobot.utils.exporters.Metrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static com.rethinkdb.RethinkDB.r;
+
+/**
+ * Write-behind stage for {@link ManagedDatabase#save(ManagedObject)} and {@link ManagedDatabase#saveUpdating(ManagedObject)}.
+ * <br>Saves are queued as what changed on the entity (or as the whole document, for entities that weren't loaded from
+ * the database), repeated saves of the same document inside the flush window are merged into one, and everything
+ * pending for a table is written in a single batch.
+ * <br>While a document is pending, {@link #pending(String, String)} hands out a copy of it as this node last saved it,
+ * so reads on this node always see the last save. It stays that way until the database acknowledged the write, and
+ * writes that fail go back to the queue.
+ */
+public class WriteBehindQueue {
+    private static final Logger log = LoggerFactory.getLogger(WriteBehindQueue.class);
+    private static final TypeReference<Map<String, Object>> MAP_TYPE = new TypeReference<>() { };
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("WriteBehindQueue Thread-%d").setDaemon(true).build()
+    );
+    // table:id -> pending write. Insertion order is kept so batches go out roughly in the order they were saved.
+    private final Map<String, PendingWrite> pending = new LinkedHashMap<>();
+    // What the current flush is sending. Still served to readers until the database acknowledged it.
+    private final Map<String, PendingWrite> inflight = new HashMap<>();
+    private final BatchWriter writer;
+    private final int maxBatchSize;
+
+    public WriteBehindQueue(@Nonnull BatchWriter writer, long flushIntervalMs, int maxBatchSize) {
+        this.writer = writer;
+        this.maxBatchSize = maxBatchSize;
+
+        executor.scheduleWithFixedDelay(this::flushSafely, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+        Metrics.THREAD_POOL_COLLECTOR.add("write-behind", executor);
+    }
+
+    /**
+     * Queues a save. Nothing passed here is modified afterwards.
+     *
+     * @param table The table the document lives on.
+     * @param id The id of the document.
+     * @param document The whole document, as it is after this save.
+     * @param changes What changed since it was loaded (as built by {@link DirtyTracker}), or null to write the whole document.
+     * @param replace Whether to replace the document (save) or merge it (saveUpdating).
+     */
+    public void enqueue(@Nonnull String table, @Nonnull String id, @Nonnull Map<String, Object> document,
+                        @Nullable Map<String, Object> changes, boolean replace) {
+        var key = key(table, id);
+        int size;
+
+        synchronized (pending) {
+            var previous = pending.remove(key);
+            if (previous != null) {
+                Metrics.WRITE_BEHIND_COALESCED.inc();
+            }
+
+            // What reads got before this save: the entity might have been loaded before it, so build on top of that.
+            var base = previous != null ? previous : inflight.get(key);
+            Map<String, Object> served;
+            if (base == null || (changes == null && replace)) {
+                served = document;
+            } else {
+                served = apply(base.document, changes == null ? document : changes, document);
+            }
+
+            pending.put(key, combine(previous, new PendingWrite(table, id, served, changes, replace)));
+            size = pending.size();
+        }
+
+        Metrics.WRITE_BEHIND_QUEUE_DEPTH.set(size);
+        if (size >= maxBatchSize) {
+            executor.execute(this::flushSafely);
+        }
+    }
+
+    /**
+     * Drops any pending save for this document. Used when it's deleted, as a late write would bring it back.
+     */
+    public void cancel(@Nonnull String table, @Nonnull String id) {
+        synchronized (pending) {
+            pending.remove(key(table, id));
+            inflight.remove(key(table, id));
+        }
+    }
+
+    /**
+     * @return Whether there's a save of this document that hasn't been written yet.
+     */
+    public boolean isPending(@Nonnull String table, @Nonnull String id) {
+        var key = key(table, id);
+        synchronized (pending) {
+            return pending.containsKey(key) || inflight.containsKey(key);
+        }
+    }
+
+    /**
+     * Gets a copy of a document that hasn't been written yet.
+     *
+     * @return The pending document, or null if there's nothing pending for it.
+     */
+    @Nullable
+    public Map<String, Object> pending(@Nonnull String table, @Nonnull String id) {
+        PendingWrite write;
+        synchronized (pending) {
+            var key = key(table, id);
+            write = pending.get(key);
+            if (write == null) {
+                write = inflight.get(key);
+            }
+        }
+
+        if (write == null) {
+            return null;
+        }
+
+        return RethinkDB.getResultMapper().convertValue(write.document, MAP_TYPE);
+    }
+
+    /**
+     * Sets fields on the document handed out for a pending save, for when they were written to the database some
+     * other way in the meantime. It doesn't change what the save writes.
+     *
+     * @param values The fields to set. Nested objects are merged, same as an update.
+     */
+    public void patch(@Nonnull String table, @Nonnull String id, @Nonnull Map<String, Object> values) {
+        var key = key(table, id);
+        synchronized (pending) {
+            for (var write : new PendingWrite[] { pending.get(key), inflight.get(key) }) {
+                if (write != null) {
+                    write.document = apply(write.document, values, null);
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes everything that's pending right now, blocking until the database acknowledged it.
+     * Call this before shutting down.
+     */
+    public synchronized void flush() {
+        List<PendingWrite> writes;
+        synchronized (pending) {
+            if (pending.isEmpty()) {
+                return;
+            }
+
+            writes = new ArrayList<>(pending.values());
+            inflight.putAll(pending);
+            pending.clear();
+        }
+
+        Metrics.WRITE_BEHIND_QUEUE_DEPTH.set(0);
+        long start = System.currentTimeMillis();
+
+        Map<String, List<PendingWrite>> batches = new HashMap<>();
+        for (var write : writes) {
+            batches.computeIfAbsent(write.table, t -> new ArrayList<>()).add(write);
+        }
+
+        for (var batch : batches.entrySet()) {
+            var documents = batch.getValue();
+            for (int i = 0; i < documents.size(); i += maxBatchSize) {
+                var chunk = documents.subList(i, Math.min(documents.size(), i + maxBatchSize));
+                List<PendingWrite> failed;
+                try {
+                    failed = writer.write(batch.getKey(), chunk);
+                    Metrics.WRITE_BEHIND_BATCH_SIZE.observe(chunk.size());
+                } catch (Exception e) {
+                    log.error("Couldn't write batch of {} documents to {}, queueing them again", chunk.size(), batch.getKey(), e);
+                    failed = chunk;
+                }
+
+                done(chunk, failed);
+            }
+        }
+
+        Metrics.WRITE_BEHIND_FLUSH_LATENCY.observe(System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Flushes everything and stops the flushing thread.
+     */
+    public void shutdown() {
+        executor.shutdown();
+        flush();
+    }
+
+    // Written ones stop being served, failed ones go back to the queue (under anything saved since).
+    private void done(List<PendingWrite> chunk, List<PendingWrite> failed) {
+        int size;
+        synchronized (pending) {
+            for (var write : chunk) {
+                var key = key(write.table, write.id);
+                // Deleted while it was being written.
+                if (!inflight.remove(key, write)) {
+                    continue;
+                }
+
+                if (failed.contains(write)) {
+                    Metrics.WRITE_BEHIND_RETRIED.inc();
+                    var newer = pending.get(key);
+                    if (newer == null) {
+                        pending.put(key, write);
+                    } else {
+                        pending.put(key, combine(write, newer));
+                    }
+                }
+            }
+
+            size = pending.size();
+        }
+
+        Metrics.WRITE_BEHIND_QUEUE_DEPTH.set(size);
+    }
+
+    private void flushSafely() {
+        try {
+            flush();
+        } catch (Exception e) {
+            log.error("Error flushing write-behind queue", e);
+        }
+    }
+
+    private static String key(String table, String id) {
+        return table + ":" + id;
+    }
+
+    // One write doing what older and then newer would. The served document of newer already includes older.
+    private static PendingWrite combine(@Nullable PendingWrite older, PendingWrite newer) {
+        if (older == null) {
+            return newer;
+        }
+
+        // A replace followed by an update still has to replace: the update alone wouldn't drop removed fields.
+        var replace = older.replace || newer.replace;
+        if (older.changes == null || newer.changes == null) {
+            return new PendingWrite(newer.table, newer.id, newer.document, null, replace);
+        }
+
+        return new PendingWrite(newer.table, newer.id, newer.document, merge(older.changes, newer.changes, newer.document), replace);
+    }
+
+    // Two updates as one. Where newer only changes part of something older replaced whole, the whole thing is sent as
+    // it is on the document.
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> merge(Map<String, Object> older, Map<String, Object> newer, @Nullable Map<String, Object> document) {
+        Map<String, Object> merged = new HashMap<>(older);
+        for (var entry : newer.entrySet()) {
+            var key = entry.getKey();
+            var value = entry.getValue();
+            var old = merged.get(key);
+            var current = document == null ? null : document.get(key);
+            if (old instanceof Map && value instanceof Map) {
+                merged.put(key, merge((Map<String, Object>) old, (Map<String, Object>) value, current instanceof Map ? (Map<String, Object>) current : null));
+            } else if (old instanceof ReqlAst && value instanceof Map && current instanceof Map) {
+                merged.put(key, r.literal(current));
+            } else {
+                merged.put(key, value);
+            }
+        }
+
+        return merged;
+    }
+
+    // The document after an update, same as the database would do it. Literals (whole replacements or removals) are
+    // taken from the document they were computed from. Never modifies what it's given.
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> apply(Map<String, Object> document, Map<String, Object> changes, @Nullable Map<String, Object> current) {
+        Map<String, Object> result = new HashMap<>(document);
+        for (var entry : changes.entrySet()) {
+            var key = entry.getKey();
+            var value = entry.getValue();
+            var old = result.get(key);
+            if (value instanceof ReqlAst) {
+                if (current != null && current.containsKey(key)) {
+                    result.put(key, current.get(key));
+                } else {
+                    result.remove(key);
+                }
+            } else if (value instanceof Map && old instanceof Map) {
+                var inner = current == null ? null : current.get(key);
+                result.put(key, apply((Map<String, Object>) old, (Map<String, Object>) value, inner instanceof Map ? (Map<String, Object>) inner : null));
+            } else {
+                result.put(key, value);
+            }
+        }
+
+        return result;
+    }
+
+    public static class PendingWrite {
+        private final String table;
+        private final String id;
+        // Only replaced by patch(), never modified.
+        private volatile Map<String, Object> document;
+        private final Map<String, Object> changes;
+        private final boolean replace;
+
+        private PendingWrite(String table, String id, Map<String, Object> document, Map<String, Object> changes, boolean replace) {
+            this.table = table;
+            this.id = id;
+            this.document = document;
+            this.changes = changes;
+            this.replace = replace;
+        }
+
+        public String getTable() {
+            return table;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        /**
+         * @return The whole document, as it is after this write.
+         */
+        public Map<String, Object> getDocument() {
+            return document;
+        }
+
+        /**
+         * @return What to update on the document, or null if it has to be written whole.
+         */
+        @Nullable
+        public Map<String, Object> getChanges() {
+            return changes;
+        }
+
+        /**
+         * @return Whether a whole document write replaces the stored one, or is merged into it.
+         */
+        public boolean isReplace() {
+            return replace;
+        }
+    }
+
+    @FunctionalInterface
+    public interface BatchWriter {
+        /**
+         * Writes a batch of documents of the same table, waiting until the database acknowledged them.
+         *
+         * @return The writes that failed, to be queued again. Throwing means all of them did.
+         */
+        List<PendingWrite> write(String table, List<PendingWrite> writes);
+    }
+}
@@ -84,8 +84,22 @@ public class DBGuild implements ManagedObject {
         }
     }
 
+    /**
+     * Whether this guild is premium. This is cached, so it's fine to call it on every command.
+     *
+     * @see net.kodehawa.mantarobot.db.PremiumResolver
+     */
     @JsonIgnore
     public boolean isPremium() {
+        return MantaroData.db().getPremiumResolver().getGuild(this).isPremium();
+    }
+
+    /**
+     * Works out whether this guild is premium, looking up its key and asking Patreon about it, and cleaning up expired keys.
+     * Use {@link #isPremium()} unless you need a fresh answer.
+     */
+    @JsonIgnore
+    public boolean resolvePremium() {
         PremiumKey key = MantaroData.db().getPremiumKey(data.getPremiumKey());
         //Key validation check (is it still active? delete otherwise)
         if (key != null) {
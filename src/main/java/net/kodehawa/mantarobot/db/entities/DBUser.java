@@ -85,13 +85,31 @@ public class DBUser implements ManagedObject {
         return this;
     }
 
+    /**
+     * Whether this user is premium. This is cached, so it's fine to call it on every command.
+     *
+     * @see net.kodehawa.mantarobot.db.PremiumResolver
+     */
     @JsonIgnore
-    //Slowly convert old key system to new key system (link old accounts).
     public boolean isPremium() {
         //Return true if this is running in MP, as all users are considered Premium on it.
         if (config.isPremiumBot())
             return true;
 
+        return MantaroData.db().getPremiumResolver().getUser(this).isPremium();
+    }
+
+    /**
+     * Works out whether this user is premium, looking up their key and asking Patreon about it, and cleaning up expired keys.
+     * Use {@link #isPremium()} unless you need a fresh answer.
+     */
+    @JsonIgnore
+    //Slowly convert old key system to new key system (link old accounts).
+    public boolean resolvePremium() {
+        //Return true if this is running in MP, as all users are considered Premium on it.
+        if (config.isPremiumBot())
+            return true;
+
         PremiumKey key = MantaroData.db().getPremiumKey(data.getPremiumKey());
         boolean isActive = false;
 
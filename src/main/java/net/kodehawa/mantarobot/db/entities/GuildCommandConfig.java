@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2016-2020 David Rubio Escares / Kodehawa
+ *
+ *  Mantaro is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  Mantaro is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro.  If not, see http://www.gnu.org/licenses/
+ */
+
+package net.kodehawa.mantarobot.db.entities;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import net.kodehawa.mantarobot.core.modules.commands.base.CommandCategory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Read-only view of the parts of a guild's {@link net.kodehawa.mantarobot.db.entities.helpers.GuildData} the command
+ * processor needs to decide if a command can run (prefix, disabled commands, categories, channels, roles and users,
+ * language and premium key), plus the log channel, so message listeners know whether a guild logs without loading it.
+ * <br>It's loaded with a projection of the guild document, so it's a lot cheaper than the whole {@link DBGuild}.
+ * It isn't a managed object: it can't be saved, change the guild itself for that.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class GuildCommandConfig {
+    //Key used for it on the entity cache, kept apart from the full guild.
+    public static final String CACHE_TABLE = "guilds-command-config";
+    //Fields of GuildData this is made of.
+    public static final List<String> DATA_FIELDS = List.of(
+            "disabledCommands", "channelSpecificDisabledCommands", "disabledUsers", "disabledChannels",
+            "disabledCategories", "channelSpecificDisabledCategories", "whitelistedRole", "disabledRoles",
+            "roleSpecificDisabledCommands", "roleSpecificDisabledCategories", "guildCustomPrefix", "lang",
+            "premiumKey", "commandWarningDisplay", "guildLogChannel"
+    );
+
+    @JsonProperty
+    private String id;
+    @JsonProperty
+    private Set<String> disabledCommands = new HashSet<>();
+    @JsonProperty
+    private Map<String, List<String>> channelSpecificDisabledCommands = new HashMap<>();
+    @JsonProperty
+    private List<String> disabledUsers = new ArrayList<>();
+    @JsonProperty
+    private Set<String> disabledChannels = new HashSet<>();
+    @JsonProperty
+    private Set<CommandCategory> disabledCategories = new HashSet<>();
+    @JsonProperty
+    private Map<String, List<CommandCategory>> channelSpecificDisabledCategories = new HashMap<>();
+    @JsonProperty
+    private String whitelistedRole = null;
+    @JsonProperty
+    private Set<String> disabledRoles = new HashSet<>();
+    @JsonProperty
+    private Map<String, List<String>> roleSpecificDisabledCommands = new HashMap<>();
+    @JsonProperty
+    private Map<String, List<CommandCategory>> roleSpecificDisabledCategories = new HashMap<>();
+    @JsonProperty
+    private String guildCustomPrefix = null;
+    @JsonProperty
+    private String lang = "en_US";
+    @JsonProperty
+    private String premiumKey;
+    @JsonProperty
+    private boolean commandWarningDisplay = false;
+    @JsonProperty
+    private String guildLogChannel = null;
+
+    public GuildCommandConfig() { }
+
+    public GuildCommandConfig(String id) {
+        this.id = id;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public Set<String> getDisabledCommands() {
+        return disabledCommands;
+    }
+
+    public Map<String, List<String>> getChannelSpecificDisabledCommands() {
+        return channelSpecificDisabledCommands;
+    }
+
+    public List<String> getDisabledUsers() {
+        return disabledUsers;
+    }
+
+    public Set<String> getDisabledChannels() {
+        return disabledChannels;
+    }
+
+    public Set<CommandCategory> getDisabledCategories() {
+        return disabledCategories;
+    }
+
+    public Map<String, List<CommandCategory>> getChannelSpecificDisabledCategories() {
+        return channelSpecificDisabledCategories;
+    }
+
+    public String getWhitelistedRole() {
+        return whitelistedRole;
+    }
+
+    public Set<String> getDisabledRoles() {
+        return disabledRoles;
+    }
+
+    public Map<String, List<String>> getRoleSpecificDisabledCommands() {
+        return roleSpecificDisabledCommands;
+    }
+
+    public Map<String, List<CommandCategory>> getRoleSpecificDisabledCategories() {
+        return roleSpecificDisabledCategories;
+    }
+
+    public String getGuildCustomPrefix() {
+        return guildCustomPrefix;
+    }
+
+    public String getLang() {
+        return lang;
+    }
+
+    public String getPremiumKey() {
+        return premiumKey;
+    }
+
+    public boolean isCommandWarningDisplay() {
+        return commandWarningDisplay;
+    }
+
+    public String getGuildLogChannel() {
+        return guildLogChannel;
+    }
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright (C) 2016-2020 David Rubio Escares / Kodehawa
+ *
+ *  Mantaro is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  Mantaro is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro.  If not, see http://www.gnu.org/licenses/
+ */
+
+package net.kodehawa.mantarobot.db.entities;
+
+import net.dv8tion.jda.api.entities.Member;
+import net.dv8tion.jda.api.entities.Role;
+import net.kodehawa.mantarobot.core.modules.commands.base.CommandCategory;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable, precompiled form of a guild's {@link GuildCommandConfig}, used to decide whether a command can run.
+ * <br>Every lookup is a hash or enum-set check by command name, category, channel, user or role id, so they cost the
+ * same no matter how much the guild has disabled. Compile it once per config change, not per command.
+ */
+public class GuildCommandGate {
+    private final Set<String> disabledCommands;
+    private final Map<String, Set<String>> channelDisabledCommands;
+    private final Set<String> disabledUsers;
+    private final Set<String> disabledChannels;
+    private final Set<CommandCategory> disabledCategories;
+    private final Map<String, Set<CommandCategory>> channelDisabledCategories;
+    private final String whitelistedRole;
+    private final Set<String> disabledRoles;
+    private final Map<String, Set<String>> roleDisabledCommands;
+    private final Map<String, Set<CommandCategory>> roleDisabledCategories;
+    private final boolean commandWarningDisplay;
+
+    private GuildCommandGate(GuildCommandConfig config) {
+        this.disabledCommands = names(config.getDisabledCommands());
+        this.channelDisabledCommands = compileNames(config.getChannelSpecificDisabledCommands());
+        this.disabledUsers = names(config.getDisabledUsers());
+        this.disabledChannels = names(config.getDisabledChannels());
+        this.disabledCategories = categories(config.getDisabledCategories());
+        this.channelDisabledCategories = compileCategories(config.getChannelSpecificDisabledCategories());
+        this.whitelistedRole = config.getWhitelistedRole();
+        this.disabledRoles = names(config.getDisabledRoles());
+        this.roleDisabledCommands = compileNames(config.getRoleSpecificDisabledCommands());
+        this.roleDisabledCategories = compileCategories(config.getRoleSpecificDisabledCategories());
+        this.commandWarningDisplay = config.isCommandWarningDisplay();
+    }
+
+    @Nonnull
+    public static GuildCommandGate compile(@Nonnull GuildCommandConfig config) {
+        return new GuildCommandGate(config);
+    }
+
+    public boolean isCommandDisabled(@Nonnull String command) {
+        return disabledCommands.contains(command);
+    }
+
+    public boolean isCommandDisabledIn(@Nonnull String channelId, @Nonnull String command) {
+        var commands = channelDisabledCommands.get(channelId);
+        return commands != null && commands.contains(command);
+    }
+
+    public boolean isUserDisabled(@Nonnull String userId) {
+        return disabledUsers.contains(userId);
+    }
+
+    public boolean isChannelDisabled(@Nonnull String channelId) {
+        return disabledChannels.contains(channelId);
+    }
+
+    public boolean isCategoryDisabled(@Nullable CommandCategory category) {
+        return category != null && disabledCategories.contains(category);
+    }
+
+    public boolean isCategoryDisabledIn(@Nonnull String channelId, @Nullable CommandCategory category) {
+        var categories = channelDisabledCategories.get(channelId);
+        return category != null && categories != null && categories.contains(category);
+    }
+
+    /**
+     * @return Whether the member lacks the whitelisted role, if the guild has one set (and it still exists).
+     */
+    public boolean isMissingWhitelistedRole(@Nonnull Member member) {
+        if (whitelistedRole == null || member.getGuild().getRoleById(whitelistedRole) == null) {
+            return false;
+        }
+
+        for (Role role : member.getRoles()) {
+            if (role.getId().equals(whitelistedRole)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    public boolean hasDisabledRole(@Nonnull Member member) {
+        if (disabledRoles.isEmpty()) {
+            return false;
+        }
+
+        for (Role role : member.getRoles()) {
+            if (disabledRoles.contains(role.getId())) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    public boolean isCommandDisabledFor(@Nonnull Member member, @Nonnull String command) {
+        if (roleDisabledCommands.isEmpty()) {
+            return false;
+        }
+
+        for (Role role : member.getRoles()) {
+            var commands = roleDisabledCommands.get(role.getId());
+            if (commands != null && commands.contains(command)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    public boolean isCategoryDisabledFor(@Nonnull Member member, @Nullable CommandCategory category) {
+        if (category == null || roleDisabledCategories.isEmpty()) {
+            return false;
+        }
+
+        for (Role role : member.getRoles()) {
+            var categories = roleDisabledCategories.get(role.getId());
+            if (categories != null && categories.contains(category)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    public boolean isCommandWarningDisplay() {
+        return commandWarningDisplay;
+    }
+
+    private static <T> Collection<T> orEmpty(Collection<T> collection) {
+        return collection == null ? Collections.emptySet() : collection;
+    }
+
+    private static Set<String> names(Collection<String> names) {
+        var set = new HashSet<String>();
+        for (var name : orEmpty(names)) {
+            if (name != null) {
+                set.add(name);
+            }
+        }
+
+        return Collections.unmodifiableSet(set);
+    }
+
+    private static Set<CommandCategory> categories(Collection<CommandCategory> categories) {
+        var set = EnumSet.noneOf(CommandCategory.class);
+        for (var category : orEmpty(categories)) {
+            //Unknown categories on old configs come through as null.
+            if (category != null) {
+                set.add(category);
+            }
+        }
+
+        return Collections.unmodifiableSet(set);
+    }
+
+    //Empty entries are dropped, so members with no matching roles skip the lookups altogether.
+    private static Map<String, Set<String>> compileNames(Map<String, ? extends Collection<String>> map) {
+        Map<String, Set<String>> compiled = new HashMap<>();
+        if (map != null) {
+            for (var entry : map.entrySet()) {
+                if (entry.getValue() != null && !entry.getValue().isEmpty()) {
+                    compiled.put(entry.getKey(), names(entry.getValue()));
+                }
+            }
+        }
+
+        return Collections.unmodifiableMap(compiled);
+    }
+
+    private static Map<String, Set<CommandCategory>> compileCategories(Map<String, ? extends Collection<CommandCategory>> map) {
+        Map<String, Set<CommandCategory>> compiled = new HashMap<>();
+        if (map != null) {
+            for (var entry : map.entrySet()) {
+                var categories = categories(entry.getValue());
+                if (!categories.isEmpty()) {
+                    compiled.put(entry.getKey(), categories);
+                }
+            }
+        }
+
+        return Collections.unmodifiableMap(compiled);
+    }
+}
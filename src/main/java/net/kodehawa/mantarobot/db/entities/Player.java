@@ -31,6 +31,7 @@ import net.kodehawa.mantarobot.db.entities.helpers.PlayerData;
 import javax.annotation.Nonnull;
 import java.beans.ConstructorProperties;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import static net.kodehawa.mantarobot.db.entities.helpers.Inventory.Resolver.serialize;
@@ -40,6 +41,13 @@ import static net.kodehawa.mantarobot.db.entities.helpers.Inventory.Resolver.uns
 public class Player implements ManagedObject {
     private static final Config config = MantaroData.config().get();
     public static final String DB_TABLE = "players";
+    /**
+     * Fields saving a player doesn't write: they're only changed by atomic updates (experience gained from chatting and
+     * the level ups it brings), and a save of a copy loaded before one of those would undo it.
+     * To set them anyway, use {@link net.kodehawa.mantarobot.db.ManagedDatabase#setPlayerProgress(String, long, long)}.
+     * Nested fields are separated by dots.
+     */
+    public static final List<String> ATOMIC_FIELDS = List.of("level", "data.experience");
     @JsonProperty("data")
     private final PlayerData data;
     @JsonProperty("id")
@@ -217,6 +225,9 @@ public class Player implements ManagedObject {
         return this.level;
     }
 
+    /**
+     * Only changes this copy: saving it won't write the level, see {@link #ATOMIC_FIELDS}.
+     */
     public void setLevel(long level) {
         this.level = level;
     }
@@ -122,6 +122,10 @@ public class PlayerData {
         return this.experience;
     }
 
+    /**
+     * Only changes this copy: saving the player won't write the experience, see
+     * {@link net.kodehawa.mantarobot.db.entities.Player#ATOMIC_FIELDS}.
+     */
     public void setExperience(long experience) {
         this.experience = experience;
     }
@@ -20,6 +20,7 @@ import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import net.kodehawa.mantarobot.commands.currency.item.PlayerEquipment;
 import net.kodehawa.mantarobot.data.MantaroData;
+import net.kodehawa.mantarobot.db.EntitySession;
 import net.kodehawa.mantarobot.db.entities.Marriage;
 
 import java.util.ArrayList;
@@ -69,8 +70,8 @@ public class UserData {
 
     @JsonIgnore
     public Marriage getMarriage() {
-        //we're going full round trip here
-        return MantaroData.db().getMarriage(marriageId);
+        //Shared with the rest of the command if there's one running on this thread, otherwise it's a full round trip.
+        return EntitySession.current(MantaroData.db()).getMarriage(marriageId);
     }
 
     @JsonIgnore
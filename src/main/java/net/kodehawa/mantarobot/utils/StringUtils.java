@@ -168,6 +168,22 @@ public class StringUtils {
         return normalizeArray(raw, expectedArgs);
     }
 
+    /**
+     * Same as {@code splitArgs(args.substring(offset), 2)}, without copying anything but the two resulting strings.
+     *
+     * @param args   the {@link String} to be split.
+     * @param offset where to start splitting from.
+     * @return the first word after the offset, and everything after the whitespace that follows it.
+     */
+    public static String[] splitFirst(String args, int offset) {
+        var matcher = SPLIT_PATTERN.matcher(args).region(offset, args.length());
+        if (!matcher.find()) {
+            return new String[] { args.substring(offset), "" };
+        }
+
+        return new String[] { args.substring(offset, matcher.start()), args.substring(matcher.end()) };
+    }
+
     // Basically removes escape characters.
     private static String advancedSplitArgsUnbox(String s) {
         return s.replace("\\n", "\n")
@@ -16,52 +16,48 @@
 
 package net.kodehawa.mantarobot.utils.commands.ratelimit;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import net.dv8tion.jda.api.entities.User;
 import net.kodehawa.mantarobot.data.MantaroData;
-import org.apache.commons.io.IOUtils;
-import redis.clients.jedis.Jedis;
-import redis.clients.jedis.JedisPool;
-import redis.clients.jedis.exceptions.JedisNoScriptException;
-
-import java.io.IOException;
-import java.nio.charset.StandardCharsets;
-import java.time.Instant;
-import java.util.Arrays;
-import java.util.Collections;
-import java.util.List;
+import net.kodehawa.mantarobot.db.RedisClient;
+import net.kodehawa.mantarobot.utils.exporters.Metrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 
 public class IncreasingRateLimiter {
-    private static final String SCRIPT;
+    private static final Logger log = LoggerFactory.getLogger(IncreasingRateLimiter.class);
+    //Sends the calls near caches answered locally. One task per limiter, not per call.
+    private static final ScheduledExecutorService syncExecutor = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("Mantaro Ratelimit Sync").setDaemon(true).build()
+    );
 
     static {
-        try {
-            // We actually ratelimit using a lua script :p
-            SCRIPT = IOUtils.toString(
-                    IncreasingRateLimiter.class.getResourceAsStream("/ratelimiter.lua"), StandardCharsets.UTF_8
-            );
-        } catch (IOException e) {
-            throw new ExceptionInInitializerError(e);
-        }
+        Metrics.THREAD_POOL_COLLECTOR.add("ratelimit-sync", syncExecutor);
     }
 
-    private final JedisPool pool;
+    private final RateLimitStore store;
+    private final RateLimitNearCache nearCache;
     private final String prefix;
     private final int limit;
     private final int cooldown;
     private final int spamBeforeCooldownIncrease;
     private final int cooldownIncrease;
     private final int maxCooldown;
-    private String scriptSha;
     private final boolean randomIncrement;
     private final boolean premiumAware;
     private final int incrementDivider;
 
-    private IncreasingRateLimiter(JedisPool pool, String prefix, int limit, int cooldown,
-                                  int spamBeforeCooldownIncrease, int cooldownIncrease, int maxCooldown,
+    private IncreasingRateLimiter(RateLimitStore store, boolean nearCache, long syncInterval, String prefix,
+                                  int limit, int cooldown, int spamBeforeCooldownIncrease, int cooldownIncrease, int maxCooldown,
                                   boolean randomIncrement, boolean premiumAware, int incrementDivider) {
-        this.pool = pool;
+        this.store = store;
+        this.nearCache = nearCache ? new RateLimitNearCache(store) : null;
         this.prefix = prefix;
         this.limit = limit;
         this.cooldown = cooldown;
@@ -71,65 +67,87 @@ public class IncreasingRateLimiter {
         this.randomIncrement = randomIncrement;
         this.premiumAware = premiumAware;
         this.incrementDivider = incrementDivider;
+
+        if (this.nearCache != null) {
+            syncExecutor.scheduleWithFixedDelay(this::sync, syncInterval, syncInterval, TimeUnit.MILLISECONDS);
+        }
     }
 
-    @SuppressWarnings("unchecked")
-    private RateLimit limit0(String key) {
-        try (Jedis j = pool.getResource()) {
-            if (scriptSha == null) {
-                scriptSha = j.scriptLoad(SCRIPT);
+    private RateLimit limit0(String key, boolean premiumAwareness) {
+        long start = System.currentTimeMillis();
+        int cd = cooldown + (randomIncrement && !premiumAwareness ?
+                ThreadLocalRandom.current().nextInt(cooldown / incrementDivider) : 0);
+
+        var call = new RateLimitStore.Call(
+                key, limit, start,
+                premiumAwareness ? cd - ThreadLocalRandom.current().nextInt(cooldown / 4) : cd,
+                spamBeforeCooldownIncrease, cooldownIncrease, maxCooldown
+        );
+
+        long[] result = null;
+        if (nearCache != null) {
+            result = nearCache.tryLocal(call);
+        }
+
+        if (result != null) {
+            Metrics.RATELIMIT_CALLS.labels(result[0] < limit ? "local_allowed" : "local_blocked").inc();
+        } else {
+            //Anything answered locally for this bucket has to get there first.
+            var calls = new ArrayList<RateLimitStore.Call>();
+            if (nearCache != null) {
+                calls.addAll(nearCache.drain(key));
             }
 
-            long start = Instant.now().toEpochMilli();
-            List<Long> result;
-            boolean premiumAwareness = premiumAware && MantaroData.db().getUser(key).isPremium();
-            try {
-                int cd = cooldown + (randomIncrement && !premiumAwareness ?
-                        ThreadLocalRandom.current().nextInt(cooldown / incrementDivider) : 0);
-
-                result = (List<Long>) j.evalsha(scriptSha,
-                        Collections.singletonList(key),
-                        Arrays.asList(
-                                String.valueOf(limit),
-                                String.valueOf(start),
-                                String.valueOf(premiumAwareness ? cd - ThreadLocalRandom.current().nextInt(cooldown / 4) : cd),
-                                String.valueOf(spamBeforeCooldownIncrease),
-                                String.valueOf(cooldownIncrease),
-                                String.valueOf(maxCooldown)
-                        )
-                );
-            } catch (JedisNoScriptException e) {
-                //script not in cache. force load it and try again.
-                scriptSha = j.scriptLoad(SCRIPT);
-                return limit0(key);
+            calls.add(call);
+            var results = store.run(calls);
+            result = results.get(results.size() - 1);
+            if (nearCache != null) {
+                nearCache.update(call, result, start);
             }
 
-            return new RateLimit(
-                    start,
-                    (int) (limit - result.get(0)),
-                    result.get(1) - start,
-                    result.get(2).intValue()
-            );
+            Metrics.RATELIMIT_CALLS.labels("redis").inc();
         }
+
+        return new RateLimit(
+                start,
+                (int) (limit - result[0]),
+                result[1] - start,
+                (int) result[2]
+        );
     }
 
     public RateLimit limit(String key) {
-        return limit0(prefix + key);
+        //Premium goes by the user id, not the prefixed bucket key.
+        return limit0(prefix + key, premiumAware && MantaroData.db().getPremiumResolver().isUserPremium(key));
     }
 
     public long getRemaniningCooldown(User user) {
-        try (Jedis j = pool.getResource()) {
-            String resetAt = j.hget(prefix + user.getId(), "reset");
-            if (resetAt == null) {
-                return 0;
-            }
+        var key = prefix + user.getId();
+        //Calls answered locally might not have made it to Redis yet.
+        long resetAt = Math.max(store.reset(key), nearCache == null ? 0 : nearCache.reset(key));
+        if (resetAt == 0) {
+            return 0;
+        }
+
+        return resetAt - System.currentTimeMillis();
+    }
 
-            return Long.parseLong(resetAt) - System.currentTimeMillis();
+    //Sends what was answered locally to Redis. Runs on its own every sync interval.
+    void sync() {
+        try {
+            nearCache.flush();
+        } catch (Exception e) {
+            //Don't let it kill the scheduled task.
+            Metrics.RATELIMIT_SYNC_ERRORS.inc();
+            log.warn("Couldn't sync rate limit calls to Redis", e);
         }
     }
 
     public static class Builder {
-        private JedisPool pool;
+        private RedisClient redis;
+        private RateLimitStore store;
+        private boolean nearCache = true;
+        private long syncInterval = 250;
         private String prefix = "";
         private int limit = -1;
         private int cooldown = -1;
@@ -140,8 +158,37 @@ public class IncreasingRateLimiter {
         private boolean premiumAware = false;
         private int incrementDivider = 4;
 
-        public Builder pool(JedisPool pool) {
-            this.pool = pool;
+        public Builder redis(RedisClient redis) {
+            this.redis = redis;
+            return this;
+        }
+
+        //Somewhere else to keep the buckets, instead of Redis.
+        Builder store(RateLimitStore store) {
+            this.store = store;
+            return this;
+        }
+
+        /**
+         * Whether to answer calls whose result is already clear without going to Redis (default true).
+         * See {@link RateLimitNearCache}.
+         */
+        public Builder nearCache(boolean nearCache) {
+            this.nearCache = nearCache;
+            return this;
+        }
+
+        /**
+         * How often calls answered by the near cache are sent to Redis (default 250ms).
+         */
+        public Builder syncInterval(int amount, TimeUnit unit) {
+            long inMillis = unit.toMillis(amount);
+
+            if (inMillis < 1) {
+                throw new IllegalArgumentException("Must be at least one millisecond!");
+            }
+
+            this.syncInterval = inMillis;
             return this;
         }
 
@@ -218,8 +265,8 @@ public class IncreasingRateLimiter {
         }
 
         public IncreasingRateLimiter build() {
-            if (pool == null) {
-                throw new IllegalStateException("Pool must be set");
+            if (redis == null && store == null) {
+                throw new IllegalStateException("Redis must be set");
             }
 
             if (limit < 0) {
@@ -231,7 +278,8 @@ public class IncreasingRateLimiter {
             }
 
             return new IncreasingRateLimiter(
-                    pool, prefix, limit, cooldown, spamTolerance,
+                    store == null ? new JedisRateLimitStore(redis) : store, nearCache, syncInterval,
+                    prefix, limit, cooldown, spamTolerance,
                     cooldownPenaltyIncrease, maxCooldown,
                     randomIncrement, premiumAware, incrementDivider
             );
@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2016-2020 David Rubio Escares / Kodehawa
+ *
+ *  Mantaro is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  Mantaro is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro.  If not, see http://www.gnu.org/licenses/
+ */
+
+package net.kodehawa.mantarobot.utils.commands.ratelimit;
+
+import net.kodehawa.mantarobot.db.RedisClient;
+import org.apache.commons.io.IOUtils;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.exceptions.JedisNoScriptException;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Runs ratelimiter.lua on Redis, pipelining batches of calls.
+ */
+class JedisRateLimitStore implements RateLimitStore {
+    private static final String SCRIPT;
+
+    static {
+        try {
+            // We actually ratelimit using a lua script :p
+            SCRIPT = IOUtils.toString(
+                    JedisRateLimitStore.class.getResourceAsStream("/ratelimiter.lua"), StandardCharsets.UTF_8
+            );
+        } catch (IOException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final RedisClient redis;
+    private volatile String scriptSha;
+
+    JedisRateLimitStore(RedisClient redis) {
+        this.redis = redis;
+    }
+
+    @Override
+    public List<long[]> run(List<Call> calls) {
+        return redis.call(calls.size() == 1 ? "ratelimit" : "ratelimit_batch", j -> {
+            if (scriptSha == null) {
+                scriptSha = j.scriptLoad(SCRIPT);
+            }
+
+            var results = new long[calls.size()][];
+            var all = new ArrayList<Integer>(calls.size());
+            for (int i = 0; i < calls.size(); i++) {
+                all.add(i);
+            }
+
+            var failed = send(j, calls, all, results);
+            if (!failed.isEmpty()) {
+                //Script not in cache (Redis restarted or got flushed), so those didn't run. Force load it and send them again.
+                scriptSha = j.scriptLoad(SCRIPT);
+                if (!send(j, calls, failed, results).isEmpty()) {
+                    throw new IllegalStateException("Rate limit script still isn't there after loading it");
+                }
+            }
+
+            return Arrays.asList(results);
+        });
+    }
+
+    @Override
+    public long reset(String key) {
+        String resetAt = redis.call("ratelimit_reset", j -> j.hget(key, "reset"));
+        return resetAt == null ? 0 : Long.parseLong(resetAt);
+    }
+
+    @SuppressWarnings("unchecked")
+    private ArrayList<Integer> send(Jedis j, List<Call> calls, List<Integer> indexes, long[][] results) {
+        var failed = new ArrayList<Integer>();
+        if (indexes.size() == 1) {
+            //Not worth a pipeline.
+            int index = indexes.get(0);
+            try {
+                results[index] = toArray((List<Long>) j.evalsha(scriptSha, Collections.singletonList(calls.get(index).key), args(calls.get(index))));
+            } catch (JedisNoScriptException e) {
+                failed.add(index);
+            }
+
+            return failed;
+        }
+
+        var pipeline = j.pipelined();
+        var responses = new ArrayList<Response<Object>>(indexes.size());
+        for (int index : indexes) {
+            var call = calls.get(index);
+            responses.add(pipeline.evalsha(scriptSha, Collections.singletonList(call.key), args(call)));
+        }
+
+        pipeline.sync();
+        for (int i = 0; i < indexes.size(); i++) {
+            try {
+                results[indexes.get(i)] = toArray((List<Long>) responses.get(i).get());
+            } catch (JedisNoScriptException e) {
+                failed.add(indexes.get(i));
+            }
+        }
+
+        return failed;
+    }
+
+    private static List<String> args(Call call) {
+        return Arrays.asList(
+                String.valueOf(call.limit),
+                String.valueOf(call.now),
+                String.valueOf(call.cooldown),
+                String.valueOf(call.spamTolerance),
+                String.valueOf(call.cooldownIncrease),
+                String.valueOf(call.maxCooldown)
+        );
+    }
+
+    private static long[] toArray(List<Long> result) {
+        return new long[] { result.get(0), result.get(1), result.get(2) };
+    }
+}
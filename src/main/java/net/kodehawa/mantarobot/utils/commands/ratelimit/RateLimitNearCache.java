@@ -0,0 +1,228 @@
+/*
+ * Copyright (C) 2016-2020 David Rubio Escares / Kodehawa
+ *
+ *  Mantaro is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  Mantaro is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro.  If not, see http://www.gnu.org/licenses/
+ */
+
+package net.kodehawa.mantarobot.utils.commands.ratelimit;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import net.kodehawa.mantarobot.utils.exporters.Metrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Local copy of the buckets of an {@link IncreasingRateLimiter}, as of the last time Redis told us about them.
+ * <br>Calls whose answer can't change no matter what other nodes did in the meantime are answered from here, and
+ * sent to Redis later on, in batches. That's calls on a bucket that's already over the limit (only its cooldown can
+ * grow until it's over), and calls that leave at least one use left on a bucket we've heard of very recently.
+ * Everything else, like the last use or a cooldown that's about to end, goes to Redis right away.
+ * <br>Calls are sent along with the time they happened, so Redis ends up exactly where it would've been.
+ */
+class RateLimitNearCache {
+    private static final Logger log = LoggerFactory.getLogger(RateLimitNearCache.class);
+    //Cooldowns ending this soon go to Redis: another node could start a new one before our calls get there.
+    static final long RESET_MARGIN_MS = 1000;
+    //Only let calls through locally if we've heard from Redis about the bucket this recently.
+    static final long ALLOW_MAX_AGE_MS = 2000;
+
+    private final RateLimitStore store;
+    private final Cache<String, Bucket> buckets = CacheBuilder.newBuilder()
+            .maximumSize(100_000)
+            .expireAfterAccess(10, TimeUnit.MINUTES)
+            .build();
+    //Buckets with calls Redis hasn't seen yet.
+    private final Set<Bucket> dirty = ConcurrentHashMap.newKeySet();
+
+    RateLimitNearCache(RateLimitStore store) {
+        this.store = store;
+    }
+
+    /**
+     * Answers the call locally if it can, queueing it to be sent later.
+     *
+     * @return What the script would've returned, or null if this one has to go to Redis now.
+     */
+    long[] tryLocal(RateLimitStore.Call call) {
+        var bucket = buckets.getIfPresent(call.key);
+        if (bucket == null) {
+            return null;
+        }
+
+        synchronized (bucket) {
+            if (bucket.reset - call.now < RESET_MARGIN_MS) {
+                return null;
+            }
+
+            boolean blocked = bucket.count >= call.limit;
+            boolean plentyLeft = bucket.count + 1 < call.limit && call.now - bucket.seenAt <= ALLOW_MAX_AGE_MS;
+            if (!blocked && !plentyLeft) {
+                return null;
+            }
+
+            var result = bucket.apply(call);
+            bucket.pending.add(call);
+            dirty.add(bucket);
+            return result;
+        }
+    }
+
+    /**
+     * @return The calls on this bucket that haven't been sent yet, which have to go before a new one. Clears them.
+     */
+    List<RateLimitStore.Call> drain(String key) {
+        var bucket = buckets.getIfPresent(key);
+        if (bucket == null) {
+            return List.of();
+        }
+
+        synchronized (bucket) {
+            var calls = new ArrayList<>(bucket.pending);
+            bucket.pending.clear();
+            return calls;
+        }
+    }
+
+    /**
+     * Takes what Redis said about a call as the bucket's current state.
+     */
+    void update(RateLimitStore.Call call, long[] result, long seenAt) {
+        var bucket = buckets.asMap().computeIfAbsent(call.key, k -> new Bucket());
+        synchronized (bucket) {
+            //Calls answered locally after this one was sent are already counted on the local copy.
+            if (bucket.pending.isEmpty() && seenAt >= bucket.seenAt) {
+                bucket.set(call, result, seenAt);
+            }
+        }
+    }
+
+    /**
+     * @return When the local copy of the bucket's cooldown is over, or 0 if we don't have one.
+     */
+    long reset(String key) {
+        var bucket = buckets.getIfPresent(key);
+        if (bucket == null) {
+            return 0;
+        }
+
+        synchronized (bucket) {
+            return bucket.reset;
+        }
+    }
+
+    /**
+     * Sends everything that was answered locally to Redis, in a single batch.
+     */
+    void flush() {
+        //A call that goes to Redis right now could get there before these. That only happens if it came in while
+        //we were taking them out, and it can only make that one call a bit more lenient.
+        List<RateLimitStore.Call> calls = new ArrayList<>();
+        for (var bucket : dirty) {
+            dirty.remove(bucket);
+            synchronized (bucket) {
+                calls.addAll(bucket.pending);
+                bucket.pending.clear();
+            }
+        }
+
+        if (calls.isEmpty()) {
+            return;
+        }
+
+        Metrics.RATELIMIT_SYNC_BATCH_SIZE.observe(calls.size());
+        long seenAt = System.currentTimeMillis();
+        List<long[]> results;
+        try {
+            results = store.run(calls);
+        } catch (RuntimeException e) {
+            //They were already answered, all we lose is Redis hearing about them.
+            Metrics.RATELIMIT_SYNC_ERRORS.inc();
+            log.warn("Couldn't send {} rate limit calls to Redis", calls.size(), e);
+            return;
+        }
+
+        for (int i = 0; i < calls.size(); i++) {
+            update(calls.get(i), results.get(i), seenAt);
+        }
+    }
+
+    int size() {
+        return (int) buckets.size();
+    }
+
+    /**
+     * Does what ratelimiter.lua does to a bucket, and returns what it would.
+     */
+    static long[] apply(long[] state, RateLimitStore.Call call) {
+        long count = state[0];
+        long reset = state[1];
+        long spam = state[2];
+        long maxCooldown = Math.max(call.cooldown, call.maxCooldown);
+        long increase = Math.max(0, call.cooldownIncrease);
+
+        if (reset < call.now) {
+            reset = call.now + call.cooldown;
+            if (count == call.limit) {
+                count = 0;
+            }
+        }
+
+        if (count >= call.limit) {
+            if (spam + 1 > call.spamTolerance) {
+                reset = Math.min(reset + (increase * (spam - call.spamTolerance)), call.now + maxCooldown);
+            }
+
+            state[0] = count;
+            state[1] = reset;
+            state[2] = spam + 1;
+            return new long[] { count, reset, spam };
+        }
+
+        state[0] = count + 1;
+        state[1] = reset;
+        state[2] = 0;
+        return new long[] { count, reset, 0 };
+    }
+
+    private static class Bucket {
+        private final List<RateLimitStore.Call> pending = new ArrayList<>();
+        private long count;
+        private long reset;
+        private long spam;
+        private long seenAt = Long.MIN_VALUE;
+
+        private long[] apply(RateLimitStore.Call call) {
+            var state = new long[] { count, reset, spam };
+            var result = RateLimitNearCache.apply(state, call);
+            count = state[0];
+            reset = state[1];
+            spam = state[2];
+            return result;
+        }
+
+        //The script hands back the bucket as it was before the call, so work out what it left behind.
+        private void set(RateLimitStore.Call call, long[] result, long seenAt) {
+            count = result[0] < call.limit ? result[0] + 1 : result[0];
+            reset = result[1];
+            spam = result[0] < call.limit ? 0 : result[2] + 1;
+            this.seenAt = seenAt;
+        }
+    }
+}
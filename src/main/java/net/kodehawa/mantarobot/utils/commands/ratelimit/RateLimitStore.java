@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2016-2020 David Rubio Escares / Kodehawa
+ *
+ *  Mantaro is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  Mantaro is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro.  If not, see http://www.gnu.org/licenses/
+ */
+
+package net.kodehawa.mantarobot.utils.commands.ratelimit;
+
+import java.util.List;
+
+/**
+ * Where {@link IncreasingRateLimiter} keeps its buckets. Every call runs ratelimiter.lua (or something that behaves
+ * exactly like it) against one bucket.
+ */
+interface RateLimitStore {
+    /**
+     * Runs the calls in order, in as few round-trips as possible.
+     *
+     * @return What the script returned for each call ({count, reset, spam}), in the same order.
+     */
+    List<long[]> run(List<Call> calls);
+
+    /**
+     * @return When the bucket's cooldown is over, or 0 if there's no bucket.
+     */
+    long reset(String key);
+
+    /**
+     * One call to the script. Everything it needs goes in here, including the time, so it can be sent late and
+     * still be decided as of when it happened.
+     */
+    final class Call {
+        final String key;
+        final long limit;
+        final long now;
+        final long cooldown;
+        final long spamTolerance;
+        final long cooldownIncrease;
+        final long maxCooldown;
+
+        Call(String key, long limit, long now, long cooldown, long spamTolerance, long cooldownIncrease, long maxCooldown) {
+            this.key = key;
+            this.limit = limit;
+            this.now = now;
+            this.cooldown = cooldown;
+            this.spamTolerance = spamTolerance;
+            this.cooldownIncrease = cooldownIncrease;
+            this.maxCooldown = maxCooldown;
+        }
+    }
+}
@@ -19,13 +19,10 @@ package net.kodehawa.mantarobot.utils.commands.ratelimit;
 import net.dv8tion.jda.api.entities.Member;
 import net.dv8tion.jda.api.entities.User;
 import net.kodehawa.mantarobot.data.MantaroData;
-import net.kodehawa.mantarobot.utils.exporters.Metrics;
 
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * This class defines the x ratelimit that will be taken into account when x user inputs a command.
@@ -40,15 +37,19 @@ import java.util.concurrent.atomic.AtomicInteger;
  * @since 01-06-2017
  */
 public class RateLimiter {
-    private static final ScheduledExecutorService ses = Executors.newScheduledThreadPool(1);
-
-    static {
-        Metrics.THREAD_POOL_COLLECTOR.add("rate-limiter", ses);
-    }
+    //Marks a bucket the sweep has removed, so a call that grabbed it right before knows to get a new one.
+    private static final long REMOVED = Long.MIN_VALUE;
+    //Idle keys are swept every timeout, but never further apart than the max. Over MAX_KEYS, as often as the min allows.
+    private static final long MAX_SWEEP_INTERVAL = TimeUnit.MINUTES.toMillis(10);
+    private static final long MIN_SWEEP_INTERVAL = TimeUnit.SECONDS.toMillis(1);
+    private static final int MAX_KEYS = 100_000;
 
     private final long max;
     private final long timeout;
-    private final ConcurrentHashMap<String, Pair<AtomicInteger, Long>> usersRateLimited = new ConcurrentHashMap<>();
+    //Key -> theoretical arrival time: when the key's budget is completely back, in epoch millis.
+    //Once that's passed the key is idle and the bucket can go, a fresh one is exactly the same.
+    private final ConcurrentHashMap<String, AtomicLong> buckets = new ConcurrentHashMap<>();
+    private final AtomicLong lastSweep = new AtomicLong(System.currentTimeMillis());
     private boolean isPremiumAware = false;
 
     /**
@@ -57,8 +58,7 @@ public class RateLimiter {
      * @param timeout How much time until the ratelimit gets lifted
      */
     public RateLimiter(TimeUnit timeUnit, int timeout) {
-        this.max = 1;
-        this.timeout = timeUnit.toMillis(timeout);
+        this(timeUnit, 1, timeout);
     }
 
     /**
@@ -68,9 +68,8 @@ public class RateLimiter {
      * @param timeout How much time until the ratelimit gets lifted
      */
     public RateLimiter(TimeUnit timeUnit, int timeout, boolean isPremiumAware) {
-        this.max = 1;
+        this(timeUnit, 1, timeout);
         this.isPremiumAware = isPremiumAware;
-        this.timeout = timeUnit.toMillis(timeout);
     }
 
     /**
@@ -84,39 +83,47 @@ public class RateLimiter {
     }
 
     //Basically where you get b1nzy'd.
+    //Every key gets max uses, and one of them back every timeout / max (a token bucket, worked out on access).
+    //With a max of 1 this is just "once every timeout".
     public boolean process(String key) {
-        boolean isPremium = isPremiumAware && MantaroData.db().getUser(key).isPremium();
-        Pair<AtomicInteger, Long> p = usersRateLimited.get(key);
-
-        // Put the user on the RL map if they aren't here already, but we already let them pass.
-        if (p == null) {
-            usersRateLimited.put(key, p = new Pair<>());
-            p.first = new AtomicInteger();
-        }
-
-        AtomicInteger a = p.first;
-        long i = a.get();
-        if (i >= max) return false;
+        boolean isPremium = isPremiumAware && MantaroData.db().getPremiumResolver().isUserPremium(key);
+        long timeout = isPremium ? (long) (this.timeout * 0.75) : this.timeout;
+        long interval = Math.max(timeout / max, 1);
 
-        a.incrementAndGet();
         long now = System.currentTimeMillis();
-
-        Long tryAgain = p.second;
-        if (tryAgain == null || tryAgain < now) {
-            p.second = now + (isPremium ? (long) (timeout * 0.75) : timeout);
+        sweepIfDue(now);
+
+        var bucket = bucket(key);
+        while (true) {
+            long arrival = bucket.get();
+            if (arrival == REMOVED) {
+                buckets.remove(key, bucket);
+                bucket = bucket(key);
+                continue;
+            }
+
+            long next = Math.max(arrival, now) + interval;
+            //Would go over the budget: don't take anything.
+            if (next - now > timeout) {
+                return false;
+            }
+
+            if (bucket.compareAndSet(arrival, next)) {
+                return true;
+            }
         }
-
-        ses.schedule(a::decrementAndGet, isPremium ? (long) (timeout * 0.75) : timeout, TimeUnit.MILLISECONDS);
-        return true;
     }
 
     //Method overload.
+    //Time until the key can be processed again. Premium users get it a bit earlier when max is over 1.
     public long tryAgainIn(String key) {
-        Pair<AtomicInteger, Long> p = usersRateLimited.get(key);
-        if (p == null || p.second == null)
+        var bucket = buckets.get(key);
+        long arrival = bucket == null ? REMOVED : bucket.get();
+        if (arrival == REMOVED)
             return 0;
 
-        return Math.max(p.second - System.currentTimeMillis(), 0);
+        long tolerance = timeout - Math.max(timeout / max, 1);
+        return Math.max(arrival - tolerance - System.currentTimeMillis(), 0);
     }
 
     public long tryAgainIn(Member key) {
@@ -135,12 +142,40 @@ public class RateLimiter {
         return process(member.getUser());
     }
 
-    public ConcurrentHashMap<String, Pair<AtomicInteger, Long>> getUsersRateLimited() {
-        return this.usersRateLimited;
+    /**
+     * @return How many keys are being tracked right now. Idle ones count until the next sweep.
+     */
+    public int size() {
+        return buckets.size();
+    }
+
+    private AtomicLong bucket(String key) {
+        var bucket = buckets.get(key);
+        return bucket == null ? buckets.computeIfAbsent(key, k -> new AtomicLong()) : bucket;
+    }
+
+    //Idle keys are dropped by whoever comes in once the sweep is due, instead of scheduling anything per call.
+    private void sweepIfDue(long now) {
+        long last = lastSweep.get();
+        long elapsed = now - last;
+        if (elapsed < MIN_SWEEP_INTERVAL || (elapsed < sweepInterval() && buckets.size() <= MAX_KEYS)) {
+            return;
+        }
+
+        if (!lastSweep.compareAndSet(last, now)) {
+            return;
+        }
+
+        for (var entry : buckets.entrySet()) {
+            var bucket = entry.getValue();
+            long arrival = bucket.get();
+            if (arrival != REMOVED && arrival <= now && bucket.compareAndSet(arrival, REMOVED)) {
+                buckets.remove(entry.getKey(), bucket);
+            }
+        }
     }
 
-    private static class Pair<F, S> {
-        F first;
-        S second;
+    private long sweepInterval() {
+        return Math.min(Math.max(timeout, MIN_SWEEP_INTERVAL), MAX_SWEEP_INTERVAL);
     }
 }
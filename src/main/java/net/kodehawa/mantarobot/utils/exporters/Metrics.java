@@ -68,4 +68,150 @@ public class Metrics {
             .name("patrons")
             .help("New patrons")
             .register();
+    public static final Counter ENTITY_SESSION_HITS = Counter.build()
+            .name("entity_session_hits")
+            .help("Entity lookups served by a message session (saved database round-trips)")
+            .labelNames("type")
+            .register();
+    public static final Counter ENTITY_SESSION_LOADS = Counter.build()
+            .name("entity_session_loads")
+            .help("Entity lookups that had to go to the database inside a message session")
+            .labelNames("type")
+            .register();
+    public static final Counter ENTITY_CACHE_REQUESTS = Counter.build()
+            .name("entity_cache_requests")
+            .help("Entity cache lookups by table and result (hit/miss)")
+            .labelNames("table", "result")
+            .register();
+    public static final Gauge ENTITY_CACHE_SIZE = Gauge.build()
+            .name("entity_cache_size")
+            .help("Entities held on the local entity cache")
+            .register();
+    public static final Histogram ENTITY_CACHE_INVALIDATION_LAG = Histogram.build()
+            .name("entity_cache_invalidation_lag")
+            .help("Time between a remote node invalidating an entity and this node receiving it (ms)")
+            .buckets(1, 5, 10, 25, 50, 100, 250, 500, 1000, 5000)
+            .register();
+    public static final Gauge WRITE_BEHIND_QUEUE_DEPTH = Gauge.build()
+            .name("write_behind_queue_depth")
+            .help("Documents waiting to be written by the write-behind queue")
+            .register();
+    public static final Counter WRITE_BEHIND_COALESCED = Counter.build()
+            .name("write_behind_coalesced")
+            .help("Saves merged into an already queued save of the same document")
+            .register();
+    public static final Histogram WRITE_BEHIND_BATCH_SIZE = Histogram.build()
+            .name("write_behind_batch_size")
+            .help("Documents per multi-document insert sent by the write-behind queue")
+            .buckets(1, 2, 5, 10, 25, 50, 100, 200, 500)
+            .register();
+    public static final Histogram WRITE_BEHIND_FLUSH_LATENCY = Histogram.build()
+            .name("write_behind_flush_latency")
+            .help("Time it takes to flush the write-behind queue (ms)")
+            .buckets(1, 5, 10, 25, 50, 100, 250, 500, 1000)
+            .register();
+    public static final Counter WRITE_BEHIND_RETRIED = Counter.build()
+            .name("write_behind_retried")
+            .help("Queued saves that couldn't be written and went back to the queue")
+            .register();
+    public static final Counter ENTITY_WRITES = Counter.build()
+            .name("entity_writes")
+            .help("Entity saves, by whether only the changed fields were sent (partial), nothing changed (skipped) or the whole document was written (full)")
+            .labelNames("table", "type")
+            .register();
+    public static final Histogram DB_QUERY_LATENCY = Histogram.build()
+            .name("db_query_latency")
+            .help("Time it takes for a database query to run (ms)")
+            .labelNames("table", "operation")
+            .buckets(1, 2, 5, 10, 25, 50, 100, 250, 500, 1000, 5000)
+            .register();
+    public static final Histogram DB_QUERY_PAYLOAD_SIZE = Histogram.build()
+            .name("db_query_payload_size")
+            .help("Size of what a database query sent or got back (bytes, sampled)")
+            .labelNames("table", "operation")
+            .exponentialBuckets(64, 4, 10)
+            .register();
+    public static final Counter DB_QUERY_ERRORS = Counter.build()
+            .name("db_query_errors")
+            .help("Database queries that failed")
+            .labelNames("table", "operation")
+            .register();
+    public static final Histogram GUILD_EXECUTOR_QUEUE_WAIT = Histogram.build()
+            .name("guild_executor_queue_wait")
+            .help("Time a guild task waited on queue before a worker picked it up (ms)")
+            .buckets(1, 5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000)
+            .register();
+    public static final Counter GUILD_EXECUTOR_REJECTIONS = Counter.build()
+            .name("guild_executor_rejections")
+            .help("Guild tasks rejected for being over the queue limits, by which limit (busy/guild_busy/user_busy), or for shutting down")
+            .labelNames("reason")
+            .register();
+    public static final Gauge GUILD_EXECUTOR_ACTIVE = Gauge.build()
+            .name("guild_executor_active")
+            .help("Guild tasks running right now, by shard")
+            .labelNames("shard")
+            .register();
+    public static final Counter IN_FLIGHT_REJECTIONS = Counter.build()
+            .name("in_flight_rejections")
+            .help("Work that didn't run because its user had a command running, by what it was")
+            .labelNames("type")
+            .register();
+    public static final Gauge EXPERIENCE_ACCUMULATOR_SIZE = Gauge.build()
+            .name("experience_accumulator_size")
+            .help("Players with chat experience waiting to be written")
+            .register();
+    public static final Counter RATELIMIT_CALLS = Counter.build()
+            .name("ratelimit_calls")
+            .help("Increasing rate limiter calls, by whether they were answered locally (local_allowed/local_blocked) or went to redis")
+            .labelNames("path")
+            .register();
+    public static final Histogram RATELIMIT_SYNC_BATCH_SIZE = Histogram.build()
+            .name("ratelimit_sync_batch_size")
+            .help("Locally answered rate limiter calls sent to redis per pipelined batch")
+            .buckets(1, 2, 5, 10, 25, 50, 100, 250, 500)
+            .register();
+    public static final Counter RATELIMIT_SYNC_ERRORS = Counter.build()
+            .name("ratelimit_sync_errors")
+            .help("Batches of locally answered rate limiter calls that couldn't be sent to redis")
+            .register();
+    public static final Histogram REDIS_OPERATION_LATENCY = Histogram.build()
+            .name("redis_operation_latency")
+            .help("Time a redis operation took once it had a connection (ms)")
+            .labelNames("operation")
+            .buckets(0.25, 0.5, 1, 2, 5, 10, 25, 50, 100, 250, 500, 1000, 2500)
+            .register();
+    public static final Histogram REDIS_POOL_WAIT = Histogram.build()
+            .name("redis_pool_wait")
+            .help("Time spent waiting for a redis connection from the pool (ms)")
+            .buckets(0.1, 0.5, 1, 5, 10, 25, 50, 100, 250, 500, 1000, 2500)
+            .register();
+    public static final Counter REDIS_OPERATION_ERRORS = Counter.build()
+            .name("redis_operation_errors")
+            .help("Redis operations that failed, by why (pool_exhausted/timeout/connection/reply/other)")
+            .labelNames("operation", "type")
+            .register();
+    public static final Counter MEMBER_CACHE_REQUESTS = Counter.build()
+            .name("member_cache_requests")
+            .help("Members going through the cache policy, by whether they were already tracked (hit) or not (miss)")
+            .labelNames("result")
+            .register();
+    public static final Counter MEMBER_CACHE_EVICTIONS = Counter.build()
+            .name("member_cache_evictions")
+            .help("Members evicted from the cache to make room for others")
+            .register();
+    public static final Gauge MEMBER_CACHE_SIZE = Gauge.build()
+            .name("member_cache_size")
+            .help("Members tracked by the cache policy, by shard")
+            .labelNames("shard")
+            .register();
+    public static final Gauge MEMBER_CACHE_CAPACITY = Gauge.build()
+            .name("member_cache_capacity")
+            .help("Members the cache policy keeps before evicting (memberCacheSize), by shard")
+            .labelNames("shard")
+            .register();
+    public static final Counter MESSAGE_CACHE_REQUESTS = Counter.build()
+            .name("message_cache_requests")
+            .help("Message cache lookups for edit/delete logs, by whether the message was there (hit) or not (miss)")
+            .labelNames("result")
+            .register();
 }
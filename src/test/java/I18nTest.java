@@ -14,12 +14,23 @@
  * along with Mantaro.  If not, see http://www.gnu.org/licenses/
  */
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import net.kodehawa.mantarobot.core.modules.commands.i18n.I18nContext;
+import net.kodehawa.mantarobot.data.I18n;
 import net.kodehawa.mantarobot.db.entities.helpers.GuildData;
 import net.kodehawa.mantarobot.utils.LanguageKeyNotFoundException;
+import net.kodehawa.mantarobot.utils.Utils;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
 public class I18nTest {
     @Test
     public void testI18n() throws LanguageKeyNotFoundException {
@@ -31,4 +42,72 @@ public class I18nTest {
         Assertions.assertNotNull(localized);
         Assertions.assertEquals("owo", localized);
     }
+
+    //The flattened tables have to resolve every key the same way walking the language files used to.
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testFlattenedParity() throws IOException {
+        var mapper = new ObjectMapper();
+        Map<String, Map<String, ?>> files = new HashMap<>();
+        for (String file : I18n.LANGUAGES) {
+            try (var is = I18nTest.class.getResourceAsStream("/assets/languages/" + file)) {
+                files.put(file.replace(".json", ""), mapper.readValue(is, Map.class));
+            }
+        }
+
+        Set<String> keys = new HashSet<>();
+        for (var file : files.values()) {
+            collectKeys(null, file, keys);
+        }
+
+        var fallback = files.get("en_US");
+        for (var language : files.entrySet()) {
+            var i18n = I18n.getForLanguage(language.getKey());
+            for (var key : keys) {
+                var expected = walk(language.getValue(), key);
+                if (!(expected instanceof String) && !(expected instanceof Collection)) {
+                    expected = walk(fallback, key);
+                }
+
+                if (expected instanceof String) {
+                    Assertions.assertEquals(Utils.fixInlineCodeblockDirection((String) expected), i18n.get(key), language.getKey() + ": " + key);
+                } else if (expected instanceof Collection) {
+                    var options = ((Collection<String>) expected).stream()
+                            .map(Utils::fixInlineCodeblockDirection)
+                            .collect(Collectors.toSet());
+                    Assertions.assertTrue(options.contains(i18n.get(key)), language.getKey() + ": " + key);
+                } else {
+                    Assertions.assertThrows(LanguageKeyNotFoundException.class, () -> i18n.get(key), language.getKey() + ": " + key);
+                }
+            }
+        }
+    }
+
+    //How I18n used to resolve keys: splitting them and walking the nested maps.
+    @SuppressWarnings("unchecked")
+    private static Object walk(Map<String, ?> map, String key) {
+        var parts = key.split("\\.");
+        for (int i = 0; i < parts.length - 1; i++) {
+            var next = map.get(parts[i]);
+            if (!(next instanceof Map)) {
+                return null;
+            }
+
+            map = (Map<String, ?>) next;
+        }
+
+        return map.get(parts[parts.length - 1]);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void collectKeys(String prefix, Map<String, ?> map, Set<String> keys) {
+        for (var entry : map.entrySet()) {
+            var key = prefix == null ? entry.getKey() : prefix + "." + entry.getKey();
+            if (entry.getValue() instanceof Map) {
+                collectKeys(key, (Map<String, ?>) entry.getValue(), keys);
+            } else {
+                keys.add(key);
+            }
+        }
+    }
 }
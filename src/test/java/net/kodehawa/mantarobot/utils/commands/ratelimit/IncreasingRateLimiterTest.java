@@ -0,0 +1,245 @@
+/*
+ * Copyright (C) 2016-2020 David Rubio Escares / Kodehawa
+ *
+ *  Mantaro is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  Mantaro is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro.  If not, see http://www.gnu.org/licenses/
+ */
+
+package net.kodehawa.mantarobot.utils.commands.ratelimit;
+
+import net.kodehawa.mantarobot.utils.exporters.Metrics;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+public class IncreasingRateLimiterTest {
+    @Test
+    public void testScriptPort() {
+        //limit 1, 10s cooldown, 2 free spam attempts, +1s per attempt after that, 60s max.
+        var state = new long[3];
+        var first = RateLimitNearCache.apply(state, call(1000));
+        Assertions.assertArrayEquals(new long[] { 0, 11_000, 0 }, first);
+        Assertions.assertArrayEquals(new long[] { 1, 11_000, 0 }, state);
+
+        //Blocked: spam goes up, and once it's over the tolerance the cooldown grows by the increase per extra attempt.
+        RateLimitNearCache.apply(state, call(2000));
+        RateLimitNearCache.apply(state, call(3000));
+        Assertions.assertArrayEquals(new long[] { 1, 11_000, 2 }, state);
+        var penalized = RateLimitNearCache.apply(state, call(4000));
+        Assertions.assertArrayEquals(new long[] { 1, 11_000, 2 }, penalized);
+        Assertions.assertArrayEquals(new long[] { 1, 11_000, 3 }, state);
+        RateLimitNearCache.apply(state, call(5000));
+        Assertions.assertArrayEquals(new long[] { 1, 12_000, 4 }, state);
+
+        //Cooldown over: a new one starts and the count goes back to 0, as it was at the limit.
+        var after = RateLimitNearCache.apply(state, call(13_000));
+        Assertions.assertArrayEquals(new long[] { 0, 23_000, 0 }, after);
+    }
+
+    @Test
+    public void testBlockedCallsSkipRedis() {
+        var store = new FakeStore();
+        var limiter = limiter(store, 1, true);
+        double local = Metrics.RATELIMIT_CALLS.labels("local_blocked").get();
+
+        Assertions.assertEquals(1, limiter.limit("1").getTriesLeft());
+        for (int i = 0; i < 5; i++) {
+            Assertions.assertEquals(0, limiter.limit("1").getTriesLeft());
+        }
+
+        Assertions.assertEquals(5, Metrics.RATELIMIT_CALLS.labels("local_blocked").get() - local);
+        Assertions.assertEquals(1, store.roundTrips);
+
+        //Once synced, Redis has seen all of them.
+        limiter.sync();
+        Assertions.assertEquals(6, store.calls);
+        Assertions.assertEquals(1, store.state("test:1")[0]);
+        Assertions.assertEquals(5, store.state("test:1")[2]);
+    }
+
+    @Test
+    public void testMatchesStrictLimiter() {
+        var strictStore = new FakeStore();
+        var cachedStore = new FakeStore();
+        var strict = limiter(strictStore, 3, false);
+        var cached = limiter(cachedStore, 3, true);
+
+        for (int i = 0; i < 12; i++) {
+            var expected = strict.limit("2");
+            var actual = cached.limit("2");
+            Assertions.assertEquals(expected.getTriesLeft(), actual.getTriesLeft(), "tries left on call " + i);
+            Assertions.assertEquals(expected.getSpamAttempts(), actual.getSpamAttempts(), "spam attempts on call " + i);
+        }
+
+        cached.sync();
+        Assertions.assertEquals(strictStore.calls, cachedStore.calls);
+        Assertions.assertEquals(strictStore.state("test:2")[0], cachedStore.state("test:2")[0]);
+        Assertions.assertEquals(strictStore.state("test:2")[2], cachedStore.state("test:2")[2]);
+        //Sync included.
+        Assertions.assertTrue(cachedStore.roundTrips < strictStore.roundTrips);
+    }
+
+    @Test
+    public void testLastUseGoesToRedis() {
+        var store = new FakeStore();
+        var limiter = limiter(store, 2, true);
+
+        limiter.limit("3");
+        int before = store.roundTrips;
+        //Second of two: it's the last one, so someone else might have taken it.
+        Assertions.assertEquals(1, limiter.limit("3").getTriesLeft());
+        Assertions.assertEquals(before + 1, store.roundTrips);
+    }
+
+    @Test
+    public void testEndingCooldownGoesToRedis() {
+        var store = new FakeStore();
+        var limiter = new IncreasingRateLimiter.Builder()
+                .store(store)
+                .prefix("test")
+                .limit(1)
+                .cooldown((int) RateLimitNearCache.RESET_MARGIN_MS / 2, TimeUnit.MILLISECONDS)
+                .randomIncrement(false)
+                //Only sync when the test says so.
+                .syncInterval(1, TimeUnit.HOURS)
+                .build();
+
+        for (int i = 0; i < 5; i++) {
+            limiter.limit("4");
+        }
+
+        Assertions.assertEquals(5, store.roundTrips);
+    }
+
+    @Test
+    public void testSyncFailureIsContained() {
+        var store = new FakeStore();
+        var limiter = limiter(store, 1, true);
+        limiter.limit("5");
+        limiter.limit("5");
+
+        double errors = Metrics.RATELIMIT_SYNC_ERRORS.get();
+        store.failing = true;
+
+        limiter.sync();
+        Assertions.assertEquals(1, Metrics.RATELIMIT_SYNC_ERRORS.get() - errors);
+
+        //Still blocked locally.
+        Assertions.assertEquals(0, limiter.limit("5").getTriesLeft());
+    }
+
+    private static IncreasingRateLimiter limiter(FakeStore store, int limit, boolean nearCache) {
+        return new IncreasingRateLimiter.Builder()
+                .store(store)
+                .nearCache(nearCache)
+                .prefix("test")
+                .limit(limit)
+                .spamTolerance(2)
+                .cooldown(10, TimeUnit.MINUTES)
+                .cooldownPenaltyIncrease(1, TimeUnit.SECONDS)
+                .maxCooldown(1, TimeUnit.HOURS)
+                .randomIncrement(false)
+                //Only sync when the test says so.
+                .syncInterval(1, TimeUnit.HOURS)
+                .build();
+    }
+
+    private static RateLimitStore.Call call(long now) {
+        return new RateLimitStore.Call("key", 1, now, 10_000, 2, 1000, 60_000);
+    }
+
+    //Stand-in for Redis running ratelimiter.lua. Written off the script itself, line by line, and not off the port in
+    //RateLimitNearCache, so the tests above actually compare the port against the script.
+    private static class FakeStore implements RateLimitStore {
+        private final Map<String, Map<String, Long>> hashes = new HashMap<>();
+        private int calls;
+        private int roundTrips;
+        private boolean failing;
+
+        @Override
+        public synchronized List<long[]> run(List<Call> calls) {
+            if (failing) {
+                throw new IllegalStateException("Redis is down");
+            }
+
+            roundTrips++;
+            var results = new ArrayList<long[]>();
+            for (var call : calls) {
+                this.calls++;
+                results.add(script(call));
+            }
+
+            return results;
+        }
+
+        private long[] script(Call call) {
+            //HGETALL, missing fields are nil.
+            var data = hashes.getOrDefault(call.key, Map.of());
+            long count = data.getOrDefault("count", 0L);
+            long reset = data.getOrDefault("reset", 0L);
+
+            long limit = call.limit;
+            long now = call.now;
+            long initialCooldown = call.cooldown;
+            long allowedSpam = call.spamTolerance;
+            long incr = Math.max(0, call.cooldownIncrease);
+            long maxCooldown = Math.max(initialCooldown, call.maxCooldown);
+
+            if (limit < 1 || initialCooldown < 1) {
+                throw new IllegalArgumentException("ERR limit and initial cooldown must be at least 1");
+            }
+
+            if (reset < now) {
+                reset = now + initialCooldown;
+                if (count == limit) {
+                    count = 0;
+                }
+            }
+
+            if (count >= limit) {
+                long spam = data.getOrDefault("spam", 0L);
+                if (spam + 1 > allowedSpam) {
+                    reset = Math.min(reset + (incr * (spam - allowedSpam)), now + maxCooldown);
+                }
+
+                hmset(call.key, count, reset, spam + 1);
+                return new long[] { count, reset, spam };
+            } else {
+                hmset(call.key, count + 1, reset, 0);
+                return new long[] { count, reset, 0 };
+            }
+        }
+
+        private void hmset(String key, long count, long reset, long spam) {
+            var hash = hashes.computeIfAbsent(key, k -> new HashMap<>());
+            hash.put("count", count);
+            hash.put("reset", reset);
+            hash.put("spam", spam);
+        }
+
+        @Override
+        public synchronized long reset(String key) {
+            var hash = hashes.get(key);
+            return hash == null ? 0 : hash.getOrDefault("reset", 0L);
+        }
+
+        synchronized long[] state(String key) {
+            var hash = hashes.get(key);
+            return new long[] { hash.get("count"), hash.get("reset"), hash.get("spam") };
+        }
+    }
+}